@@ -32,6 +32,8 @@ import com.google.ar.sceneform.ux.ArFragment;
  */
 public class CloudAnchorFragment extends ArFragment {
 
+    private GestureRouter gestureRouter;
+
     @Override
     protected Config getSessionConfiguration(Session session) {
         Config config = super.getSessionConfiguration(session);
@@ -49,7 +51,19 @@ public class CloudAnchorFragment extends ArFragment {
     public View onCreateView(
             LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
 
-        return super.onCreateView(inflater, container, savedInstanceState);
+        View view = super.onCreateView(inflater, container, savedInstanceState);
+
+        // registered after the listener of ArFragment, so the router sees the gestures it has recognized
+        gestureRouter = new GestureRouter(getTransformationSystem());
+        getArSceneView().getScene().addOnPeekTouchListener(gestureRouter);
+
+        return view;
+    }
 
+    /**
+     * Reports the gestures that transform nodes of the scene. Available once the view is created.
+     */
+    public GestureRouter getGestureRouter() {
+        return gestureRouter;
     }
 }
@@ -0,0 +1,118 @@
+package com.android.vrproject;
+
+import android.view.MotionEvent;
+
+import com.google.ar.sceneform.HitTestResult;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.ux.BaseTransformableNode;
+import com.google.ar.sceneform.ux.TransformationSystem;
+
+/*
+Watches all touches of the scene and tells when a gesture transforms the selected node, and when it is done.
+
+The TransformationSystem of the fragment recognizes drags, pinches and twists and applies them to the
+selected node. This router only follows the touch sequences: a gesture lasts from the first finger down
+to the last finger up. If the selected node was transformed during it, the listener gets one
+onTransformStarted when that is first seen and one onTransformCommitted when the last finger is lifted,
+however many fingers and recognizers took part. Taps that do not transform anything are not reported.
+
+Has to be registered as peek touch listener after the fragment's own one, so it sees the state of the
+TransformationSystem after each event, see CloudAnchorFragment. Does not allocate per event.
+ */
+public class GestureRouter implements Scene.OnPeekTouchListener {
+
+    /*
+    receives the gestures on transformable nodes, on the main thread
+     */
+    public interface Listener {
+        void onTransformStarted(BaseTransformableNode node);
+
+        /*
+        the gesture that transformed node has ended, its transform is final now
+         */
+        void onTransformCommitted(BaseTransformableNode node);
+    }
+
+    private final TransformationSystem transformationSystem;
+    private Listener listener;
+
+    /* the node the running gesture transforms, null if there is no gesture or it did not transform anything yet */
+    private BaseTransformableNode activeNode;
+    private boolean touching = false;
+
+    private long gestureCount = 0;
+    private long committedCount = 0;
+
+    public GestureRouter(TransformationSystem transformationSystem) {
+        this.transformationSystem = transformationSystem;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onPeekTouch(HitTestResult hitTestResult, MotionEvent motionEvent) {
+        switch (motionEvent.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                touching = true;
+                activeNode = null;
+                gestureCount++;
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                observe();
+                touching = false;
+                commit();
+                break;
+            default:
+                // moves and further fingers going down or up
+                observe();
+                break;
+        }
+    }
+
+    /*
+    the node that is being transformed right now, null if there is none
+     */
+    public BaseTransformableNode getActiveNode() {
+        return activeNode;
+    }
+
+    public boolean isTouching() {
+        return touching;
+    }
+
+    /*
+    touch sequences seen, from first finger down to last finger up
+     */
+    public long getGestureCount() {
+        return gestureCount;
+    }
+
+    /*
+    gestures that transformed a node
+     */
+    public long getCommittedCount() {
+        return committedCount;
+    }
+
+    private void observe() {
+        if (activeNode != null) return;
+
+        BaseTransformableNode selected = transformationSystem.getSelectedNode();
+        if (selected == null || !selected.isTransforming()) return;
+
+        activeNode = selected;
+        if (listener != null) listener.onTransformStarted(selected);
+    }
+
+    private void commit() {
+        if (activeNode == null) return;
+
+        BaseTransformableNode node = activeNode;
+        activeNode = null;
+        committedCount++;
+        if (listener != null) listener.onTransformCommitted(node);
+    }
+}
@@ -0,0 +1,122 @@
+package com.android.vrproject;
+
+/*
+State machine of hosting a new scene, from placing the anchor until objects can be added.
+
+    IDLE -> HOSTING       anchor placed, cloud hosting is running
+    HOSTING -> ALLOCATING anchor hosted and used as main anchor, waiting for a short code
+    ALLOCATING -> EDITABLE scene stored under the short code and subscribed, objects can be added
+    HOSTING, ALLOCATING -> FAILED
+    any state -> IDLE     reset, e.g. when the scene is cleared
+
+Every run gets a session number. Callbacks of an older run pass their session and are rejected,
+so a late callback cannot change the state of a newer run.
+Times are taken from the clock the caller uses, in milliseconds.
+ */
+public class HostPipeline {
+
+    public enum State {
+        IDLE,
+        HOSTING,
+        ALLOCATING,
+        EDITABLE,
+        FAILED
+    }
+
+    public static final long NO_TIME = -1;
+
+    private State state = State.IDLE;
+    private int session = 0;
+
+    private long hostStartMillis = NO_TIME;
+    private long hostedMillis = NO_TIME;
+    private long editableMillis = NO_TIME;
+
+    /*
+    starts a new run and returns its session. Not allowed while a run is in progress.
+     */
+    public int start(long nowMillis) {
+        if (isRunning()) throw new IllegalStateException("Already hosting, state " + state);
+
+        session++;
+        state = State.HOSTING;
+        hostStartMillis = nowMillis;
+        hostedMillis = NO_TIME;
+        editableMillis = NO_TIME;
+        return session;
+    }
+
+    /*
+    the anchor of session was hosted. Returns false if session is outdated or not hosting.
+     */
+    public boolean onHosted(int session, long nowMillis) {
+        if (!advance(session, State.HOSTING, State.ALLOCATING)) return false;
+
+        hostedMillis = nowMillis;
+        return true;
+    }
+
+    /*
+    the scene of session is stored and subscribed. Returns false if session is outdated or not allocating.
+     */
+    public boolean onEditable(int session, long nowMillis) {
+        if (!advance(session, State.ALLOCATING, State.EDITABLE)) return false;
+
+        editableMillis = nowMillis;
+        return true;
+    }
+
+    /*
+    session failed. Returns false if session is outdated or already finished.
+     */
+    public boolean fail(int session) {
+        if (session != this.session || !isRunning()) return false;
+
+        state = State.FAILED;
+        return true;
+    }
+
+    public void reset() {
+        session++;
+        state = State.IDLE;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /*
+    true while hosting or waiting for the short code
+     */
+    public boolean isRunning() {
+        return state == State.HOSTING || state == State.ALLOCATING;
+    }
+
+    /*
+    duration of the cloud hosting of the last run, NO_TIME if it did not get that far
+     */
+    public long getHostMillis() {
+        return hostedMillis == NO_TIME ? NO_TIME : hostedMillis - hostStartMillis;
+    }
+
+    /*
+    duration from the hosted anchor to the editable scene of the last run, NO_TIME if it did not get that far
+     */
+    public long getHostToEditableMillis() {
+        return editableMillis == NO_TIME ? NO_TIME : editableMillis - hostedMillis;
+    }
+
+    /*
+    duration from placing the anchor to the editable scene of the last run, NO_TIME if it did not get that far
+     */
+    public long getTotalMillis() {
+        return editableMillis == NO_TIME ? NO_TIME : editableMillis - hostStartMillis;
+    }
+
+    private boolean advance(int session, State from, State to) {
+        if (session != this.session || state != from) return false;
+
+        state = to;
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.android.vrproject;
+
+/*
+State machine of joining a scene by its short code, with the duration of every stage.
+
+    IDLE -> FETCHING     short code entered, reading the scene
+    FETCHING -> RESOLVING cloud anchor ID read, the anchor resolves while the objects are built detached
+    RESOLVING -> JOINED  anchor resolved, the prebuilt objects are attached
+    FETCHING, RESOLVING -> FAILED
+    any state -> IDLE    reset, e.g. when the scene is cleared
+
+Building the objects is not a state of its own, it happens during RESOLVING and is only timed.
+Like HostPipeline, every run gets a session number so that callbacks of an older run are rejected.
+Times are taken from the clock the caller uses, in milliseconds.
+ */
+public class JoinPipeline {
+
+    public enum State {
+        IDLE,
+        FETCHING,
+        RESOLVING,
+        JOINED,
+        FAILED
+    }
+
+    public static final long NO_TIME = -1;
+
+    private State state = State.IDLE;
+    private int session = 0;
+
+    private long startMillis = NO_TIME;
+    private long fetchedMillis = NO_TIME;
+    private long builtMillis = NO_TIME;
+    private long resolvedMillis = NO_TIME;
+    private long joinedMillis = NO_TIME;
+
+    /*
+    starts a new run and returns its session, a run in progress is abandoned
+     */
+    public int start(long nowMillis) {
+        session++;
+        state = State.FETCHING;
+        startMillis = nowMillis;
+        fetchedMillis = NO_TIME;
+        builtMillis = NO_TIME;
+        resolvedMillis = NO_TIME;
+        joinedMillis = NO_TIME;
+        return session;
+    }
+
+    /*
+    the cloud anchor ID of session was read. Returns false if session is outdated or not fetching.
+     */
+    public boolean onFetched(int session, long nowMillis) {
+        if (!advance(session, State.FETCHING, State.RESOLVING)) return false;
+
+        fetchedMillis = nowMillis;
+        return true;
+    }
+
+    /*
+    the objects of the current run have been built. Only the first call of a run is recorded.
+     */
+    public void onBuilt(long nowMillis) {
+        if (state == State.RESOLVING && builtMillis == NO_TIME) builtMillis = nowMillis;
+    }
+
+    /*
+    the anchor of session was resolved. Returns false if session is outdated or not resolving.
+     */
+    public boolean onResolved(int session, long nowMillis) {
+        if (session != this.session || state != State.RESOLVING) return false;
+
+        resolvedMillis = nowMillis;
+        return true;
+    }
+
+    /*
+    the objects of session are attached to the resolved anchor
+     */
+    public boolean onJoined(int session, long nowMillis) {
+        if (!advance(session, State.RESOLVING, State.JOINED)) return false;
+
+        joinedMillis = nowMillis;
+        return true;
+    }
+
+    /*
+    session failed. Returns false if session is outdated or already finished.
+     */
+    public boolean fail(int session) {
+        if (session != this.session || !isRunning()) return false;
+
+        state = State.FAILED;
+        return true;
+    }
+
+    public void reset() {
+        session++;
+        state = State.IDLE;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isRunning() {
+        return state == State.FETCHING || state == State.RESOLVING;
+    }
+
+    /*
+    true while the anchor resolves, objects are built detached from the scene in this state
+     */
+    public boolean isResolving() {
+        return state == State.RESOLVING;
+    }
+
+    /*
+    STAGE DURATIONS of the last run, NO_TIME if the run did not get that far
+     */
+
+    public long getFetchMillis() {
+        return between(startMillis, fetchedMillis);
+    }
+
+    public long getBuildMillis() {
+        return between(fetchedMillis, builtMillis);
+    }
+
+    public long getResolveMillis() {
+        return between(fetchedMillis, resolvedMillis);
+    }
+
+    public long getAttachMillis() {
+        return between(resolvedMillis, joinedMillis);
+    }
+
+    public long getTotalMillis() {
+        return between(startMillis, joinedMillis);
+    }
+
+    private static long between(long fromMillis, long toMillis) {
+        return fromMillis == NO_TIME || toMillis == NO_TIME ? NO_TIME : toMillis - fromMillis;
+    }
+
+    private boolean advance(int session, State from, State to) {
+        if (session != this.session || state != from) return false;
+
+        state = to;
+        return true;
+    }
+}
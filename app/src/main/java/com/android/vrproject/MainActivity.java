@@ -3,9 +3,9 @@ package com.android.vrproject;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -13,48 +13,181 @@ import android.widget.TextView;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.HitResult;
 import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Session;
 import com.google.ar.sceneform.AnchorNode;
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.ShapeFactory;
-import com.google.ar.sceneform.ux.TransformableNode;
+import com.google.ar.sceneform.ux.BaseTransformableNode;
 import com.google.ar.sceneform.ux.TransformationSystem;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
-
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import helpers.CellLoader;
+import helpers.CloudAnchorException;
 import helpers.CloudAnchorManager;
 import helpers.FirebaseManager;
+import helpers.FrameScheduler;
+import helpers.Histogram;
+import helpers.LiveTransformChannel;
+import helpers.MetricsRegistry;
+import helpers.ObjectPool;
 import helpers.ResolveDialogFragment;
-
-public class MainActivity extends AppCompatActivity {
+import helpers.SceneCache;
+import helpers.TraceRecorder;
+import helpers.WriteScheduler;
+
+public class MainActivity extends AppCompatActivity
+        implements SceneReconciler.Target, GestureRouter.Listener, CellLoader.Listener<Anchor> {
+
+    private static final String TAG = MainActivity.class.getSimpleName();
+
+    /* WRITE SCHEDULING: flush node writes at most every WRITE_FLUSH_INTERVAL_MS, or once that many nodes are waiting */
+    private static final long WRITE_FLUSH_INTERVAL_MS = 100;
+    private static final int WRITE_MAX_PENDING = 32;
+
+    /* MODELS: keys of the models in the renderable registry, and the memory budget of loaded models */
+    private static final String MODEL_ANDY = "andy";
+    private static final long MODEL_BUDGET_BYTES = 32 * 1024 * 1024;
+
+    /* METRICS: histogram of the time the frame update listener takes */
+    public static final String METRIC_FRAME_UPDATE_US = "frame.update_us";
+
+    /* JOINING: give up resolving the anchor of a scene after this many seconds */
+    private static final long JOIN_RESOLVE_TIMEOUT_S = 60;
+
+    /* SCENE CACHE: the last state of scenes on disk, written at most every SCENE_CACHE_INTERVAL_MS */
+    private static final String SCENE_CACHE_DIR = "scenes";
+    private static final long SCENE_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+    private static final long SCENE_CACHE_INTERVAL_MS = 2000;
+
+    /* INTERPOLATION: remote objects are shown INTERPOLATION_DELAY_MS behind the updates they receive,
+       and continue their motion for at most INTERPOLATION_MAX_EXTRAPOLATION_MS if an update is late */
+    private static final int INTERPOLATION_HISTORY = 8;
+    private static final long INTERPOLATION_DELAY_MS = 150;
+    private static final long INTERPOLATION_MAX_EXTRAPOLATION_MS = 200;
+
+    /* LIVE STREAMING: objects being dragged are streamed to the other clients at most this often */
+    private static final int LIVE_STREAMING_RATE_HZ = 12;
+
+    /* NODE POOL: nodes of removed objects are kept for new ones, up to this many */
+    private static final int NODE_POOL_MAX_IDLE = 1024;
+    public static final String METRIC_NODE_POOL_IDLE = "node_pool.idle";
+    public static final String METRIC_NODE_POOL_CREATED = "node_pool.created";
+    public static final String METRIC_NODE_POOL_REUSED = "node_pool.reused";
+    public static final String METRIC_NODE_POOL_REUSE_PERCENT = "node_pool.reuse_percent";
+
+    /* GESTURES: touch sequences on the scene, and the ones that transformed an object */
+    public static final String METRIC_GESTURES = "gestures.count";
+    public static final String METRIC_GESTURES_COMMITTED = "gestures.committed";
+
+    /* BUILD SCHEDULING: objects of remote and joined scenes are built in the frame update, for at most
+       BUILD_BUDGET_MS per frame, the ones closest to the camera first */
+    private static final long BUILD_BUDGET_MS = 4;
+    public static final String METRIC_BUILD_QUEUE = "build.queue_depth";
+    public static final String METRIC_BUILD_MAX_QUEUE = "build.max_queue_depth";
+    public static final String METRIC_BUILD_OVERRUNS = "build.overruns";
+    public static final String METRIC_BUILD_OVERRUN_US = "build.overrun_us";
+    public static final String METRIC_BUILD_MAX_FRAME_US = "build.max_frame_us";
+
+    /* TRACING: spans of the frame update, the scene sync and gestures. long press on the clear button
+       starts tracing, the next one stops it and writes the trace to TRACE_DIR in the external files directory */
+    private static final String TRACE_DIR = "traces";
+    private static final String TRACE_FRAME_UPDATE = "frame.update";
+    private static final String TRACE_RECONCILE = "scene.reconcile";
+    private static final String TRACE_FLUSH = "sync.flush";
+    private static final String TRACE_GESTURE = "gesture";
+    private static final String TRACE_BUILD = "scene.build";
+
+    /* CELLS: a scene can have more than one cloud anchor, see AnchorCells. Tapping farther than CELL_SIZE_M from every
+       anchor hosts a new cell there. Every CELL_UPDATE_INTERVAL_MS, the cells within CELL_LOAD_RADIUS_M of the camera
+       are resolved, at most CELL_MAX_RESOLVES at once, and the cells beyond CELL_UNLOAD_RADIUS_M are unloaded */
+    private static final float CELL_SIZE_M = 8;
+    private static final float CELL_LOAD_RADIUS_M = 12;
+    private static final float CELL_UNLOAD_RADIUS_M = 20;
+    private static final int CELL_MAX_RESOLVES = 4;
+    private static final long CELL_UPDATE_INTERVAL_MS = 500;
+    private static final long CELL_HOST_TIMEOUT_S = 60;
 
     /* ARCORE AND HELPERS */
     private CloudAnchorFragment fragment;
     private CloudAnchorManager cloudAnchorManager;
     private FirebaseManager firebaseManager;
+    private WriteScheduler writeScheduler;
+    private SceneCache sceneCache;
+    private LiveTransformChannel liveChannel;
+    private boolean liveStreamingEnabled = true;
+    private MetricsRegistry metrics;
+    private Histogram frameUpdateLatency;
+    private TraceRecorder trace;
+    /* writes files in the background, in the order they were scheduled */
+    private final Executor ioExecutor = Executors.newSingleThreadExecutor();
+    /* decodes snapshots of the joined scene off the UI thread, in the order they arrive */
+    private final Executor decodeExecutor = Executors.newSingleThreadExecutor();
 
     /* RENDERABLES */
-    private ModelRenderable modelRenderable;
+    private RenderableRegistry renderableRegistry;
     private ModelRenderable anchorRedRenderable;
     private ModelRenderable anchorGreenRenderable;
 
     /* NODES */
     private AnchorNode redAnchorNode;
     private Anchor hostingAnchor;
+    private HostPipeline hostPipeline;
+    private JoinPipeline joinPipeline;
 
     private AnchorNode mainAnchorNode;
     private Anchor anchor;
 
     /* SCENE */
     private Map<Integer, myNode> myNodeMap;
+    private ObjectPool<myNode> nodePool;
+    private FrameScheduler buildScheduler;
+    /* position of the camera relative to the main anchor, updated every frame for the build priorities */
+    private final Vector3 cameraPosition = new Vector3();
     private Scene arScene;
     private SceneData sceneData;
+    /* the cached scene the running join has started from, null if there was none */
+    private SceneData joinCachedScene;
+    private SceneReconciler sceneReconciler;
+    private TransformInterpolator transformInterpolator;
+    private final TransformInterpolator.Target interpolationTarget = this::onNodeInterpolated;
     private int shortCode = 0;
+    private AnchorCells cells;
+    private CellLoader<Anchor> cellLoader;
+    /* anchor nodes of the loaded cells, except for MAIN, whose anchor node is mainAnchorNode */
+    private Map<Integer, AnchorNode> cellAnchorNodes;
+    private SceneStore.Subscription cellSubscription;
+    private CompletableFuture<Anchor> cellHosting;
+    private long cellsUpdatedMillis = 0;
+    private final float[] transformScratch = new float[NodeData.TRANSFORM_SIZE];
+    private final Vector3 positionScratch = new Vector3();
+    private final Vector3 scaleScratch = new Vector3();
+    private final Quaternion rotationScratch = new Quaternion();
+    /* System.nanoTime of the earliest change that has not been flushed yet, 0 if there is none */
+    private long firstUnflushedChangeNanos = 0;
+    /* the scene changed since it was last written to the scene cache */
+    private boolean sceneCacheDirty = false;
+    private long sceneCachedMillis = 0;
 
     /* BUTTONS AND VIEWS */
     private Button clearButton;
@@ -72,26 +205,80 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         // Initialized helpers
-        cloudAnchorManager = new CloudAnchorManager();
-        firebaseManager = new FirebaseManager(this, this);
+        metrics = new MetricsRegistry();
+        frameUpdateLatency = metrics.histogram(METRIC_FRAME_UPDATE_US, Histogram.MICROS_BOUNDS);
+        trace = new TraceRecorder();
+        cloudAnchorManager = new CloudAnchorManager(CloudAnchorManager.DEFAULT_CAPACITY, metrics);
+        firebaseManager = new FirebaseManager(this, this, metrics, trace, decodeExecutor);
+        writeScheduler = new WriteScheduler(
+                WRITE_FLUSH_INTERVAL_MS, WRITE_MAX_PENDING, NodeData.TRANSFORM_SIZE, this::onWritesFlushed);
+        sceneCache = new SceneCache(
+                new File(getCacheDir(), SCENE_CACHE_DIR), SCENE_CACHE_MAX_BYTES, ioExecutor);
+        metrics.gauge(SceneCache.METRIC_HITS, sceneCache::getHitCount);
+        metrics.gauge(SceneCache.METRIC_MISSES, sceneCache::getMissCount);
+        metrics.gauge(SceneCache.METRIC_BYTES, sceneCache::getSizeBytes);
+        liveChannel = new LiveTransformChannel(
+                firebaseManager, Long.toHexString(new Random().nextLong()), 1000 / LIVE_STREAMING_RATE_HZ, metrics);
 
         // Get the Fragment from the activity's layout (see res > layout > activity_main.xml
         fragment = (CloudAnchorFragment)
                 getSupportFragmentManager().findFragmentById(R.id.sceneform_fragment);
 
+        nodePool = new ObjectPool<>(
+                NODE_POOL_MAX_IDLE, () -> new myNode(fragment.getTransformationSystem()), myNode::recycle);
+        metrics.gauge(METRIC_NODE_POOL_IDLE, nodePool::getIdleCount);
+        metrics.gauge(METRIC_NODE_POOL_CREATED, nodePool::getCreatedCount);
+        metrics.gauge(METRIC_NODE_POOL_REUSED, nodePool::getReusedCount);
+        metrics.gauge(METRIC_NODE_POOL_REUSE_PERCENT, () -> Math.round(nodePool.getReuseRate() * 100));
+
+        buildScheduler = new FrameScheduler(TimeUnit.MILLISECONDS.toNanos(BUILD_BUDGET_MS), this::buildObject);
+        buildScheduler.setPrioritizer(this::buildPriority);
+        metrics.gauge(METRIC_BUILD_QUEUE, buildScheduler::getQueueDepth);
+        metrics.gauge(METRIC_BUILD_MAX_QUEUE, buildScheduler::getMaxQueueDepth);
+        metrics.gauge(METRIC_BUILD_OVERRUNS, buildScheduler::getOverrunCount);
+        metrics.gauge(METRIC_BUILD_OVERRUN_US, () -> TimeUnit.NANOSECONDS.toMicros(buildScheduler.getTotalOverrunNanos()));
+        metrics.gauge(METRIC_BUILD_MAX_FRAME_US, () -> TimeUnit.NANOSECONDS.toMicros(buildScheduler.getMaxFrameNanos()));
+
+        // the gestures on objects are written once they have ended
+        GestureRouter gestureRouter = fragment.getGestureRouter();
+        gestureRouter.setListener(this);
+        metrics.gauge(METRIC_GESTURES, gestureRouter::getGestureCount);
+        metrics.gauge(METRIC_GESTURES_COMMITTED, gestureRouter::getCommittedCount);
+
         // handle listeners when Scene is updated
         arScene = fragment.getArSceneView().getScene();
         arScene.addOnUpdateListener(frameTime -> {
+            trace.begin(TRACE_FRAME_UPDATE);
+            long start = System.nanoTime();
             cloudAnchorManager.onUpdate();
+            writeScheduler.onUpdate(SystemClock.uptimeMillis());
+            transformInterpolator.update(SystemClock.uptimeMillis(), interpolationTarget);
+            if (buildScheduler.getQueueDepth() > 0) {
+                trace.begin(TRACE_BUILD);
+                updateCameraPosition();
+                buildScheduler.runFrame();
+                trace.end(TRACE_BUILD);
+            }
+            if (liveStreamingEnabled && anchor != null) streamSelectedObject();
+            if (SystemClock.uptimeMillis() - cellsUpdatedMillis >= CELL_UPDATE_INTERVAL_MS) updateCells();
+            if (sceneCacheDirty && SystemClock.uptimeMillis() - sceneCachedMillis >= SCENE_CACHE_INTERVAL_MS) {
+                saveSceneToCache();
+            }
+            frameUpdateLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            trace.end(TRACE_FRAME_UPDATE);
         });
 
         // build all necessary renderables
 
-        // Andy
-        ModelRenderable.builder()
-                .setSource(this, R.raw.andy)
-                .build()
-                .thenAccept(modelRenderable -> this.modelRenderable = modelRenderable);
+        // models, loaded in the background. objects whose model is not loaded yet show a grey cube
+        renderableRegistry = new RenderableRegistry(this, MODEL_ANDY, MODEL_BUDGET_BYTES, ioExecutor);
+        renderableRegistry.register(MODEL_ANDY, R.raw.andy);
+        renderableRegistry.preload(MODEL_ANDY);
+
+        MaterialFactory.makeOpaqueWithColor(this, new Color(android.graphics.Color.LTGRAY))
+                .thenAccept(
+                        material -> renderableRegistry.setPlaceholder(
+                                ShapeFactory.makeCube(new Vector3(0.05f, 0.05f, 0.05f), new Vector3(0.0f, 0.025f, 0.0f), material)));
 
         // Red dot
         MaterialFactory.makeOpaqueWithColor(this, new Color(android.graphics.Color.RED))
@@ -113,8 +300,12 @@ public class MainActivity extends AppCompatActivity {
         fragment.setOnTapArPlaneListener(
                 (HitResult hitresult, Plane plane, MotionEvent motionevent) -> {
                     if (anchor != null) {
-                        // anchor was resolved --> add new object
-                        addNewObject();
+                        // anchor was resolved --> add new object, or a new cell if the tap is far from every anchor
+                        onSceneTapped(hitresult);
+                    }
+                    else if (hostPipeline.isRunning()) {
+                        // an anchor is being hosted already --> wait for it
+                        setMessage("Hosting, please wait");
                     }
                     else {
                         // no anchor yet --> create new one and host it.
@@ -127,17 +318,53 @@ public class MainActivity extends AppCompatActivity {
         sceneData.setNodeDataMap(new HashMap<>());
 
         myNodeMap = new HashMap<>();
+        cells = new AnchorCells();
+        cellAnchorNodes = new HashMap<>();
+        cellLoader = new CellLoader<>(
+                cells,
+                new CellLoader.Resolver<Anchor>() {
+                    @Override
+                    public CompletableFuture<Anchor> resolve(String cloudAnchorId) {
+                        return cloudAnchorManager.resolveCloudAnchorAsync(
+                                fragment.getArSceneView().getSession(), cloudAnchorId, JOIN_RESOLVE_TIMEOUT_S, TimeUnit.SECONDS);
+                    }
+
+                    @Override
+                    public void detach(Anchor anchor) {
+                        anchor.detach();
+                    }
+                },
+                this,
+                CELL_LOAD_RADIUS_M,
+                CELL_UNLOAD_RADIUS_M,
+                CELL_MAX_RESOLVES,
+                metrics);
+        sceneReconciler = new SceneReconciler();
+        transformInterpolator = new TransformInterpolator(
+                INTERPOLATION_HISTORY, INTERPOLATION_DELAY_MS, INTERPOLATION_MAX_EXTRAPOLATION_MS);
+        hostPipeline = new HostPipeline();
+        joinPipeline = new JoinPipeline();
 
         // initialize buttons
         View buttonPanel = findViewById(R.id.buttonPanel);
 
         clearButton = buttonPanel.findViewById(R.id.clear_button);
         clearButton.setOnClickListener(v -> onClearButtonPressed());
+        clearButton.setOnLongClickListener(v -> {
+            toggleTracing();
+            return true;
+        });
 
         resolveButton = buttonPanel.findViewById(R.id.resolve_button);
         resolveButton.setOnClickListener(v -> onResolveButtonPressed());
 
         infoText = buttonPanel.findViewById(R.id.infotext);
+        // long press on the info text shows the current metrics
+        infoText.setOnLongClickListener(v -> {
+            setMessage(metrics.dump() + String.format(Locale.US, "live %.1f updates/s, %.0f bytes/s",
+                    liveChannel.getUpdateRate(), liveChannel.getBytesPerSecond()));
+            return true;
+        });
     }
 
 
@@ -151,6 +378,13 @@ public class MainActivity extends AppCompatActivity {
     creates new anchor and starts the hosting process
      */
     private void createNewCloudAnchor(HitResult hitResult) {
+        int session = hostPipeline.start(SystemClock.uptimeMillis());
+        // the short code is leased while the anchor is hosted
+        firebaseManager.prefetchShortCodes();
+
+        // remove the red dot of a failed attempt
+        if (redAnchorNode != null) redAnchorNode.setParent(null);
+
         // set new AnchorNode into the scene
         hostingAnchor = hitResult.createAnchor();
 
@@ -163,77 +397,429 @@ public class MainActivity extends AppCompatActivity {
 
         // host it
         cloudAnchorManager.hostCloudAnchor(
-                fragment.getArSceneView().getSession(), hostingAnchor, this::onHostedAnchorAvailable);
+                fragment.getArSceneView().getSession(),
+                hostingAnchor,
+                hostedAnchor -> onHostedAnchorAvailable(hostedAnchor, session));
     }
 
     /*
     Adds a new object to the scene. If no anchor has been resolved, it does nothing
      */
     public void addNewObject() {
+        addNewObject(AnchorCells.MAIN);
+    }
+
+    /*
+    Adds a new object on the anchor of a loaded cell. If no anchor has been resolved, it does nothing
+     */
+    public void addNewObject(int cell) {
         if (shortCode == 0) {
             // not hosted yet --> do nothing
             return;
         }
 
-        // add new object to this anchor
+        // add new object to the anchor of the cell
         int index = sceneData.addNew();
-        myNode node = new myNode(fragment.getTransformationSystem(), this, index);
-        myNodeMap.put(index, node);
+        sceneData.getTransform(index, transformScratch);
+        transformScratch[0] = cells.getOffsetX(cell);
+        transformScratch[1] = cells.getOffsetY(cell);
+        transformScratch[2] = cells.getOffsetZ(cell);
+        sceneData.setTransform(index, transformScratch);
+        myNode node = acquireNode(index);
 
         initObject(index);
+        updateObject(node, transformScratch);
+        sceneReconciler.markApplied(index, transformScratch);
 
-        // update the cloud state of the scene
+        // update the cloud state of the scene right away, so that the new object is part of the next snapshot
         updateFirebase(index);
+        writeScheduler.flush();
     }
 
     /*
-    This is called whenever the cloud state is changed. Updates the object in the scene
+    This is called whenever the cloud state is changed. Only the objects that were added, removed or changed are updated
      */
     public void setSceneData(SceneData sceneData){
         this.sceneData = sceneData;
+        sceneCacheDirty = true;
+        applySceneData();
+    }
+
+    /*
+    This is called for every page of a scene that is being downloaded, see FirebaseManager.getCloudAnchorId.
+    The objects of the page are added to the scene and built, the complete scene follows in setSceneData.
+     */
+    public void addScenePage(SceneData page){
+        // the join was cancelled or failed
+        if (anchor == null && !joinPipeline.isResolving()) return;
+
+        NodeTable nodes = page.nodes();
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+            nodes.getTransform(slot, transformScratch);
+            sceneData.setTransform(index, transformScratch);
+            sceneData.setModel(index, nodes.getModel(slot));
+        }
+        sceneData.setIndex(Math.max(sceneData.getIndex(), page.getIndex()));
+        if (sceneData.getCloudAnchorId() == null) sceneData.setCloudAnchorId(page.getCloudAnchorId());
 
-        updateObjects();
+        // the scene is cached once it is complete
+        applySceneData();
     }
 
     /*
-    initializes one object. The corresponding myNode object hast have already been initialized.
+    updates the objects to the current scene data
+     */
+    private void applySceneData(){
+        trace.begin(TRACE_RECONCILE);
+        if (anchor != null) {
+            sceneReconciler.reconcile(sceneData, this);
+        } else if (joinPipeline.isResolving()) {
+            // the anchor is still resolving --> build the objects detached, they are attached in onJoinAnchorResolved
+            sceneReconciler.reconcile(sceneData, this);
+            joinPipeline.onBuilt(SystemClock.uptimeMillis());
+        }
+        trace.end(TRACE_RECONCILE);
+    }
+
+    /*
+    initializes one object. The corresponding myNode object hast have already been acquired, see acquireNode.
+    While a scene is joined, there is no mainAnchorNode yet and the object stays detached until it is attached in onJoinAnchorResolved.
      */
     public void initObject(int index){
-        // put Andy on the anchor
+        // put Andy right on the anchor of its cell, its local position is its position in the cell
         myNode node = myNodeMap.get(index);
-        NodeData nodeData = sceneData.getNodeData(index);
 
-        float[] anchorPosition = anchor.getPose().getTranslation();
+        node.setParent(getCellAnchorNode(node.getCell()));
+        renderableRegistry.setRenderable(node, sceneData.getModel(index));
+        node.select();
+    }
 
-        //add new anchorNode right on top of original anchor --> can then be moved
-        AnchorNode anchorNode = new AnchorNode();
-        anchorNode.setParent(mainAnchorNode);
-        anchorNode.setLocalPosition(new Vector3(0,0,0));
+    /*
+    builds the object index with its current state, called by the build scheduler.
+    objects that were removed while they were queued are skipped.
+     */
+    private void buildObject(int index) {
+        if (!sceneData.getTransform(index, transformScratch) || myNodeMap.containsKey(index)) return;
+        // objects of cells that are not loaded are built once their cell is, see onCellLoaded
+        if (!isCellLoaded(cells.nearest(transformScratch[0], transformScratch[1], transformScratch[2]))) return;
 
-        node.setParent(anchorNode);
-        node.setRenderable(modelRenderable);
-        node.select();
+        myNode node = acquireNode(index);
+        initObject(index);
+        sceneData.getTransform(index, transformScratch);
+        updateObject(node, transformScratch);
+        transformInterpolator.reset(index, SystemClock.uptimeMillis(), transformScratch);
+    }
 
-        node.getScaleController().setMinScale(0.2f);
-        node.getScaleController().setMaxScale(5f);
+    /*
+    build priority of the object index: its squared distance to the camera, the closest objects are built first
+     */
+    private float buildPriority(int index) {
+        if (!sceneData.getTransform(index, transformScratch)) return Float.MAX_VALUE;
+        return distanceToCameraSquared(transformScratch);
     }
 
+    private float distanceToCameraSquared(float[] transform) {
+        float dx = transform[0] - cameraPosition.x;
+        float dy = transform[1] - cameraPosition.y;
+        float dz = transform[2] - cameraPosition.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
 
     /*
-    iterates through all objects and updates their location, scale and rotation according to the cloud state
+    updates the position of the camera in the space of the objects.
+    before the anchor of a joined scene is resolved, the objects are ordered by their distance to the anchor.
      */
-    public void updateObjects() {
-        for (int index : myNodeMap.keySet()) {
-            NodeData nodeData = sceneData.getNodeData(index);
-            myNode node = myNodeMap.get(index);
+    private void updateCameraPosition() {
+        if (mainAnchorNode == null || anchor == null) {
+            cameraPosition.set(0, 0, 0);
+            return;
+        }
+        cameraPosition.set(mainAnchorNode.worldToLocalPoint(arScene.getCamera().getWorldPosition()));
+    }
+
+    /*
+    takes a node from the pool and binds it to the object index
+     */
+    private myNode acquireNode(int index) {
+        myNode node = nodePool.acquire();
+        node.setIndex(index);
+        myNodeMap.put(index, node);
+        return node;
+    }
+
+
+    /*
+    updates location, scale and rotation of one object according to the cloud state.
+    transform holds position, scale and rotation as in NodeData.copyTransformTo, in the space of the scene.
+    an object that got closer to another anchor moves to the cell of that anchor.
+     */
+    private void updateObject(myNode node, float[] transform) {
+        int cell = cells.nearest(transform[0], transform[1], transform[2]);
+        if (cell != node.getCell()) {
+            // detached if the cell is not loaded, until onCellLoaded
+            node.setCell(cell);
+            node.setParent(getCellAnchorNode(cell));
+        }
+
+        positionScratch.set(
+                transform[0] - cells.getOffsetX(cell),
+                transform[1] - cells.getOffsetY(cell),
+                transform[2] - cells.getOffsetZ(cell));
+        scaleScratch.set(transform[3], transform[4], transform[5]);
+        rotationScratch.set(transform[6], transform[7], transform[8], transform[9]);
+
+        // nodes copy these values, so the scratch objects can be reused
+        node.setLocalPosition(positionScratch);
+        node.setLocalScale(scaleScratch);
+        node.getScaleController().onActivated(node); // necessary since otherwise original scale remains cached
+        node.setLocalRotation(rotationScratch);
+    }
+
+
+
+    /*
+    SCENE RECONCILER CALLBACKS
+     */
+
+
+    /*
+    object was added by another client (or the scene has just been resolved).
+    it is built by the build scheduler, within the frame budget, see buildObject.
+     */
+    @Override
+    public void onNodeAdded(int index, float[] transform) {
+        buildScheduler.schedule(index, distanceToCameraSquared(transform));
+    }
+
+    /*
+    object was removed by another client
+     */
+    @Override
+    public void onNodeRemoved(int index) {
+        buildScheduler.cancel(index);
+        myNode node = myNodeMap.remove(index);
+        if (node != null) nodePool.release(node);
+        transformInterpolator.remove(index);
+    }
+
+    /*
+    object was changed by another client.
+    Once the scene is shown, the object moves there smoothly, see onNodeInterpolated.
+     */
+    @Override
+    public void onNodeUpdated(int index, float[] transform) {
+        myNode node = myNodeMap.get(index);
+        if (node == null) {
+            // the object may have moved into a loaded cell
+            if (!buildScheduler.isQueued(index) && isCellLoaded(cells.nearest(transform[0], transform[1], transform[2]))) {
+                buildScheduler.schedule(index, distanceToCameraSquared(transform));
+            }
+            return;
+        }
+
+        if (anchor != null) {
+            transformInterpolator.push(index, SystemClock.uptimeMillis(), transform);
+        } else {
+            // objects that are built while joining are not visible yet
+            updateObject(node, transform);
+            transformInterpolator.reset(index, SystemClock.uptimeMillis(), transform);
+        }
+
+        // the last written state is outdated now, moving the object back must be written again
+        writeScheduler.forget(index);
+    }
+
+
+
+    /*
+    called every frame with the current transform of every remote object that is moving.
+    objects the user is manipulating right now are left alone.
+     */
+    private void onNodeInterpolated(int index, float[] transform) {
+        myNode node = myNodeMap.get(index);
+        if (node != null && !node.isTransforming()) updateObject(node, transform);
+    }
+
+
+
+    /*
+    CELL LOADER CALLBACKS
+     */
+
+
+    /*
+    the anchor of a cell was resolved or hosted --> attach its objects, and build the ones that are not built yet
+     */
+    @Override
+    public void onCellLoaded(int cell, Anchor cellAnchor) {
+        AnchorNode cellAnchorNode = new AnchorNode(cellAnchor);
+        cellAnchorNode.setParent(arScene);
+        cellAnchorNodes.put(cell, cellAnchorNode);
+
+        for (myNode node : myNodeMap.values()) {
+            if (node.getCell() == cell) node.setParent(cellAnchorNode);
+        }
+
+        NodeTable nodes = sceneData.nodes();
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX || myNodeMap.containsKey(index)) continue;
+
+            nodes.getTransform(slot, transformScratch);
+            if (cells.nearest(transformScratch[0], transformScratch[1], transformScratch[2]) == cell) {
+                buildScheduler.schedule(index, distanceToCameraSquared(transformScratch));
+            }
+        }
+    }
+
+    /*
+    the camera moved away from a cell --> its objects go back to the pool, they are built again once it is loaded again
+     */
+    @Override
+    public void onCellUnloaded(int cell) {
+        AnchorNode cellAnchorNode = cellAnchorNodes.remove(cell);
+        if (cellAnchorNode != null) cellAnchorNode.setParent(null);
+
+        Iterator<myNode> iterator = myNodeMap.values().iterator();
+        while (iterator.hasNext()) {
+            myNode node = iterator.next();
+            if (node.getCell() != cell || node.isTransforming()) continue;
+
+            iterator.remove();
+            transformInterpolator.remove(node.getIndex());
+            nodePool.release(node);
+        }
+    }
+
+    /*
+    checks which cells are near the camera, see CellLoader.
+    while a scene is joined, the cells around the main anchor are resolved along with it.
+     */
+    private void updateCells() {
+        cellsUpdatedMillis = SystemClock.uptimeMillis();
+        if (cells.size() == 1 || (anchor == null && !joinPipeline.isResolving())) return;
+
+        updateCameraPosition();
+        cellLoader.update(cameraPosition.x, cameraPosition.y, cameraPosition.z);
+    }
 
-            // manipulate object
-            node.getParent().setLocalPosition(nodeData.getPosition());
-            node.setLocalScale(nodeData.getScale());
-            node.getScaleController().onActivated(node); // necessary since otherwise original scale remains cached
-            node.setLocalRotation(nodeData.getRotation());
+    /*
+    the cells of the current scene changed --> objects that are closer to a new cell move to it
+     */
+    private void onCellsChanged(Object value) {
+        if (cells.addAll(value) == 0) return;
+
+        for (myNode node : myNodeMap.values()) {
+            if (node.isTransforming()) continue;
+            readTransform(node, transformScratch);
+            updateObject(node, transformScratch);
         }
+        // check the new cells in the next frame
+        cellsUpdatedMillis = 0;
+    }
+
+    private void subscribeToCells(int shortCode) {
+        cellSubscription = firebaseManager.subscribeToCells(shortCode, new SceneStore.ValueListener() {
+            @Override
+            public void onValue(Object value) {
+                onCellsChanged(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                Log.e(TAG, "Could not read the cells of scene " + shortCode, error);
+            }
+        });
+    }
+
+    private boolean isCellLoaded(int cell) {
+        return cell == AnchorCells.MAIN || cellLoader.isLoaded(cell);
+    }
+
+    /*
+    the node the objects of a cell are attached to, null if the cell is not loaded
+     */
+    private Node getCellAnchorNode(int cell) {
+        return cell == AnchorCells.MAIN ? mainAnchorNode : cellAnchorNodes.get(cell);
+    }
+
+
+
+    /*
+    GESTURE ROUTER CALLBACKS
+     */
+
+
+    /*
+    the user started to move, scale or rotate an object. Remote motion of it is dropped, the local change wins.
+     */
+    @Override
+    public void onTransformStarted(BaseTransformableNode node) {
+        trace.begin(TRACE_GESTURE);
+        if (node instanceof myNode) transformInterpolator.remove(((myNode) node).getIndex());
+    }
+
+    /*
+    the gesture on an object has ended --> write its new state
+     */
+    @Override
+    public void onTransformCommitted(BaseTransformableNode node) {
+        trace.end(TRACE_GESTURE);
+        if (!(node instanceof myNode)) return;
+
+        int index = ((myNode) node).getIndex();
+        if (index == myNode.NO_INDEX) return;
+
+        updateFirebase(index);
+        // the object may have been moved closer to another anchor
+        readTransform((myNode) node, transformScratch);
+        updateObject((myNode) node, transformScratch);
+    }
+
+
+
+    /*
+    LIVE STREAMING
+     */
+
+
+    /*
+    enables or disables streaming the objects this user drags. Their final state is written either way.
+     */
+    public void setLiveStreamingEnabled(boolean enabled) {
+        liveStreamingEnabled = enabled;
+    }
 
+    private void openLiveChannel(int shortCode) {
+        liveChannel.open(shortCode, this::onLiveTransform);
+        // the entries of a gesture must not outlive this client
+        firebaseManager.removeOnDisconnect(liveChannel.getOwnPath());
+    }
+
+    /*
+    called every frame, offers the transform of the object the user is dragging to the live channel
+     */
+    private void streamSelectedObject() {
+        BaseTransformableNode active = fragment.getGestureRouter().getActiveNode();
+        if (!(active instanceof myNode) || !active.isTransforming()) return;
+
+        myNode node = (myNode) active;
+        readTransform(node, transformScratch);
+        liveChannel.offer(node.getIndex(), transformScratch, SystemClock.uptimeMillis());
+    }
+
+    /*
+    another client is dragging an object, it moves there smoothly like with scene updates
+     */
+    private void onLiveTransform(int index, float[] transform) {
+        if (anchor == null) return;
+
+        myNode node = myNodeMap.get(index);
+        if (node == null || node.isTransforming()) return;
+
+        transformInterpolator.push(index, SystemClock.uptimeMillis(), transform);
     }
 
 
@@ -258,105 +844,271 @@ public class MainActivity extends AppCompatActivity {
 
 
     /*
-    called when the CloudAnchor has been resolved.
-    It stores the current scene and the newly obtained CloudAnchorID in the cloud state
+    called when the user tapped a plane of the resolved scene.
+    adds a new object on the anchor of the cell that was tapped, or hosts a new cell if the tap is far from every anchor.
      */
-    private synchronized void onHostedAnchorAvailable(Anchor anchor) {
-        Anchor.CloudAnchorState cloudState = anchor.getCloudAnchorState();
-        if (cloudState == Anchor.CloudAnchorState.SUCCESS) {
-            String cloudAnchorId = anchor.getCloudAnchorId();
-
-            // store sceneData including cloudAnchorID in database with next available short code
-            firebaseManager.nextShortCode(shortCode -> {
-                if (shortCode != null) {
-                    sceneData.setCloudAnchorId(cloudAnchorId);
-                    firebaseManager.storeUsingShortCode(shortCode, sceneData);
-                    setMessage("Saving with " + shortCode);
-
-
-                    firebaseManager.getCloudAnchorId(shortCode, cloudAnchorIdLambda -> {
-                        // if anchor ID not found...
-                        if (cloudAnchorIdLambda == null || cloudAnchorIdLambda.isEmpty()) {
-                            setMessage("A Cloud Anchor ID for the short code " + shortCode + " was not found.");
-                            return;
-                        }
-
-                        // resolve cloud anchor
-                        cloudAnchorManager.resolveCloudAnchor(
-                                fragment.getArSceneView().getSession(),
-                                cloudAnchorIdLambda,
-                                anchorLambda -> onResolvedAnchorAvailable(anchorLambda, shortCode));
-                    });
-
-                } else {
-                    // Firebase could not provide a short code.
-                    setMessage("Cloud Anchor Hosted, but could not get a short code from Firebase.");
-                }
-            });
+    private void onSceneTapped(HitResult hitResult) {
+        Pose pose = hitResult.getHitPose();
+        Vector3 position = mainAnchorNode.worldToLocalPoint(new Vector3(pose.tx(), pose.ty(), pose.tz()));
+        int cell = cells.nearest(position.x, position.y, position.z);
+
+        if (shortCode != 0 && cells.distanceSquared(cell, position.x, position.y, position.z) > CELL_SIZE_M * CELL_SIZE_M) {
+            if (cellHosting != null) {
+                setMessage("Hosting cell, please wait");
+            } else {
+                hostCell(pose, position);
+            }
+        } else if (!isCellLoaded(cell)) {
+            setMessage("Resolving cell, please wait");
         } else {
-            setMessage("Error while hosting: " + cloudState.toString());
+            addNewObject(cell);
+        }
+    }
+
+    /*
+    hosts the anchor of a new cell at pose, which is at position in the scene, see onCellHosted.
+    the anchor gets the rotation of the main anchor, so that positions in the cell are positions in the scene
+    minus the position of the cell.
+     */
+    private void hostCell(Pose pose, Vector3 position) {
+        Session session = fragment.getArSceneView().getSession();
+        Anchor cellAnchor = session.createAnchor(pose.extractTranslation().compose(anchor.getPose().extractRotation()));
+        float x = position.x;
+        float y = position.y;
+        float z = position.z;
+
+        setMessage("Hosting new cell");
+        CompletableFuture<Anchor> hosting = cloudAnchorManager.hostCloudAnchorAsync(
+                session, cellAnchor, CELL_HOST_TIMEOUT_S, TimeUnit.SECONDS);
+        cellHosting = hosting;
+        hosting.whenComplete((hostedAnchor, error) -> {
+            cellAnchor.detach();
+            onCellHosted(hosting, hostedAnchor, error, x, y, z);
+        });
+    }
+
+    /*
+    called when the anchor of a new cell has been hosted. The cell is stored with the scene and loaded right away.
+     */
+    private synchronized void onCellHosted(CompletableFuture<Anchor> hosting, Anchor hostedAnchor, Throwable error,
+                                           float x, float y, float z) {
+        if (hosting != cellHosting) {
+            // the scene was cleared in the meantime
+            if (hostedAnchor != null) hostedAnchor.detach();
+            return;
+        }
+        cellHosting = null;
+        if (error != null) {
+            setMessage("Error while hosting cell: " + error);
+            return;
+        }
+
+        String cloudAnchorId = hostedAnchor.getCloudAnchorId();
+        int cell = cells.add(cloudAnchorId, x, y, z);
+        firebaseManager.storeCell(shortCode, cloudAnchorId, x, y, z);
+        cellLoader.setLoaded(cell, hostedAnchor);
+        onCellsChanged(null);
+        setMessage("Hosted new cell. Short code: " + shortCode);
+    }
+
+    /*
+    called when the CloudAnchor of a hosting session has been hosted.
+    The hosted anchor becomes the main anchor right away, it does not have to be read back and resolved.
+    Then the scene is stored under the next short code, see onHostShortCodeAvailable.
+     */
+    private synchronized void onHostedAnchorAvailable(Anchor anchor, int session) {
+        Anchor.CloudAnchorState cloudState = anchor.getCloudAnchorState();
+        if (cloudState != Anchor.CloudAnchorState.SUCCESS) {
+            if (hostPipeline.fail(session)) setMessage("Error while hosting: " + cloudState.toString());
+            return;
+        }
+        if (!hostPipeline.onHosted(session, SystemClock.uptimeMillis())) {
+            // the hosting session was cleared in the meantime
+            anchor.detach();
+            return;
         }
+
+        setMainAnchor(anchor);
+
+        String cloudAnchorId = anchor.getCloudAnchorId();
+        firebaseManager.nextShortCode(
+                shortCode -> onHostShortCodeAvailable(shortCode, cloudAnchorId, session));
+    }
+
+    /*
+    called when a short code for the hosted scene is available.
+    Stores the scene and subscribes to it at the same time, the listener already sees the local write.
+     */
+    private synchronized void onHostShortCodeAvailable(Integer shortCode, String cloudAnchorId, int session) {
+        if (hostPipeline.getState() != HostPipeline.State.ALLOCATING) return;
+
+        if (shortCode == null) {
+            // Firebase could not provide a short code --> drop the hosted anchor, so that the next tap hosts again
+            if (hostPipeline.fail(session)) {
+                releaseMainAnchor();
+                setMessage("Cloud Anchor Hosted, but could not get a short code from Firebase.");
+            }
+            return;
+        }
+        if (!hostPipeline.onEditable(session, SystemClock.uptimeMillis())) return;
+
+        this.shortCode = shortCode;
+        sceneData.setCloudAnchorId(cloudAnchorId);
+        firebaseManager.storeUsingShortCode(shortCode, sceneData);
+        firebaseManager.subscribeToScene(shortCode);
+        subscribeToCells(shortCode);
+        openLiveChannel(shortCode);
+        sceneCacheDirty = true;
+
+        setMessage("Hosted. Short code: " + shortCode);
+        Log.i(TAG, "Hosted scene " + shortCode
+                + ", hosting took " + hostPipeline.getHostMillis() + " ms"
+                + ", host to editable " + hostPipeline.getHostToEditableMillis() + " ms"
+                + ", total " + hostPipeline.getTotalMillis() + " ms");
     }
 
     /*
     called when short code entered in resolve dialog.
-    clears scene and resolves corresponding cloud anchor and its scene
+    clears scene, reads the cloud anchor ID and resolves the anchor.
+    The objects of the scene are built page by page while the anchor resolves, see addScenePage.
+    If the scene is in the scene cache and is read before the cloud anchor ID arrives, its anchor is resolved
+    and its objects are built right away, they are reconciled with the server state once it arrives.
      */
     private synchronized void onShortCodeEntered(int shortCode) {
         clear();
 
         this.shortCode = shortCode;
+        int session = joinPipeline.start(SystemClock.uptimeMillis());
+        openLiveChannel(shortCode);
+        // the cells around the main anchor are resolved along with it, see updateCells
+        subscribeToCells(shortCode);
 
-        firebaseManager.getCloudAnchorId(shortCode, cloudAnchorId -> {
-            // if anchor ID not found...
-            if (cloudAnchorId == null || cloudAnchorId.isEmpty()) {
-                setMessage("A Cloud Anchor ID for the short code " + shortCode + " was not found.");
-                return;
-            }
+        // the pages of the scene are added to an empty scene
+        this.sceneData = new SceneData();
 
-            // resolve cloud anchor
-            cloudAnchorManager.resolveCloudAnchor(
-                    fragment.getArSceneView().getSession(),
-                    cloudAnchorId,
-                    anchorLambda -> onResolvedAnchorAvailable(anchorLambda, shortCode));
-        });
+        // the cache is read on the io thread
+        sceneCache.get(shortCode).thenAccept(cached ->
+                runOnUiThread(() -> onCachedSceneAvailable(cached, session)));
+
+        firebaseManager.getCloudAnchorId(shortCode, cloudAnchorId ->
+                onJoinCloudAnchorIdAvailable(cloudAnchorId, session));
     }
 
     /*
-    called when given short code could be resolved.
-    changes red dot to green.
+    called when the scene cache has been read for the joined scene, cached is null if it was not there.
+    ignored if the cloud anchor ID has been read from firebase first, or if the join is over.
+     */
+    private synchronized void onCachedSceneAvailable(SceneData cached, int session) {
+        if (cached == null || !joinPipeline.onFetched(session, SystemClock.uptimeMillis())) return;
+
+        this.joinCachedScene = cached;
+        this.sceneData = cached;
+        sceneReconciler.reconcile(cached, this);
+        joinPipeline.onBuilt(SystemClock.uptimeMillis());
+        resolveJoinAnchor(cached.getCloudAnchorId(), session);
+    }
 
+    /*
+    called when the cloud anchor ID of the joined scene has been read from firebase.
+    the server state itself follows in setSceneData.
      */
-    private synchronized void onResolvedAnchorAvailable(Anchor anchor, int shortCode) {
-        clear();
+    private synchronized void onJoinCloudAnchorIdAvailable(String cloudAnchorId, int session) {
+        // if anchor ID not found...
+        if (cloudAnchorId == null || cloudAnchorId.isEmpty()) {
+            if (joinPipeline.fail(session)) {
+                sceneCache.remove(shortCode);
+                clearScene();
+                setMessage("A Cloud Anchor ID for the short code " + shortCode + " was not found.");
+            }
+            return;
+        }
 
-        this.shortCode = shortCode;
+        SceneData cached = joinCachedScene;
+        if (cached != null) {
+            // the cached anchor resolves already
+            if (cloudAnchorId.equals(cached.getCloudAnchorId())) return;
+
+            // the cached scene is outdated --> start over with the anchor of the server
+            if (!joinPipeline.isRunning()) return;
+            clearScene();
+            joinCachedScene = null;
+            sceneData = new SceneData();
+            session = joinPipeline.start(SystemClock.uptimeMillis());
+        }
+        if (!joinPipeline.onFetched(session, SystemClock.uptimeMillis())) return;
 
-        this.anchor = anchor;
+        resolveJoinAnchor(cloudAnchorId, session);
+    }
 
-        if (redAnchorNode != null) redAnchorNode.setParent(null);
+    /*
+    resolves the anchor of the joined scene, see onJoinAnchorResolved and onJoinFailed
+     */
+    private void resolveJoinAnchor(String cloudAnchorId, int session) {
+        cloudAnchorManager
+                .resolveCloudAnchorAsync(
+                        fragment.getArSceneView().getSession(),
+                        cloudAnchorId,
+                        JOIN_RESOLVE_TIMEOUT_S,
+                        TimeUnit.SECONDS)
+                .whenComplete((resolvedAnchor, error) -> {
+                    if (error == null) {
+                        onJoinAnchorResolved(resolvedAnchor, session);
+                    } else {
+                        onJoinFailed(error, session);
+                    }
+                });
+    }
 
-        //set green ball on top of anchor
-        mainAnchorNode = new AnchorNode(this.anchor);
-        mainAnchorNode.setParent(fragment.getArSceneView().getScene());
-        Node node = new Node();
-        node.setParent(mainAnchorNode);
-        node.setRenderable(anchorGreenRenderable);
+    /*
+    called when the anchor of the joined scene has been resolved.
+    changes red dot to green and attaches all prebuilt objects at once.
+     */
+    private synchronized void onJoinAnchorResolved(Anchor anchor, int session) {
+        if (!joinPipeline.onResolved(session, SystemClock.uptimeMillis())) {
+            // the join was cleared in the meantime
+            anchor.detach();
+            return;
+        }
 
-        Anchor.CloudAnchorState cloudState = this.anchor.getCloudAnchorState();
-        if (cloudState == Anchor.CloudAnchorState.SUCCESS) {
-            setMessage("Resolved. Short code: " + shortCode);
+        setMainAnchor(anchor);
+        for (myNode node : myNodeMap.values()) {
+            // the objects of other cells are attached once their cell is loaded
+            if (node.getCell() == AnchorCells.MAIN) node.setParent(mainAnchorNode);
+        }
 
-            // sceneData has been set according to newly resolved anchor
-            myNodeMap = sceneData.getTransformableNodeMap(fragment.getTransformationSystem(), this);
+        // sceneData has been set according to the joined scene, apply what is not built yet.
+        // from now on only changes are applied.
+        sceneReconciler.reconcile(sceneData, this);
+        joinPipeline.onJoined(session, SystemClock.uptimeMillis());
+
+        setMessage("Resolved. Short code: " + shortCode);
+        Log.i(TAG, "Joined scene " + shortCode
+                + " with " + myNodeMap.size() + " objects, " + buildScheduler.getQueueDepth() + " still to build"
+                + ", fetch " + joinPipeline.getFetchMillis() + " ms"
+                + ", build " + joinPipeline.getBuildMillis() + " ms"
+                + ", resolve " + joinPipeline.getResolveMillis() + " ms"
+                + ", attach " + joinPipeline.getAttachMillis() + " ms"
+                + ", total " + joinPipeline.getTotalMillis() + " ms");
+    }
 
-            // initialize local objects according to newly obtained scene information and update them.
-            for (int index : myNodeMap.keySet()) {
-                initObject(index);
-            }
-            updateObjects();
+    /*
+    called when the anchor of the joined scene could not be resolved.
+    drops the prebuilt objects, but keeps listening to the scene.
+     */
+    private synchronized void onJoinFailed(Throwable error, int session) {
+        // the resolve was cancelled by clear, which ends the session itself
+        if (error instanceof CancellationException) return;
+        if (!joinPipeline.fail(session)) return;
+
+        clearScene();
+
+        if (error instanceof CloudAnchorException) {
+            setMessage("Error while resolving anchor with short code " + shortCode
+                    + ". Error: " + ((CloudAnchorException) error).getState().toString());
+        } else if (error instanceof TimeoutException) {
+            setMessage("Resolving anchor with short code " + shortCode + " timed out.");
         } else {
-            setMessage("Error while resolving anchor with short code "+shortCode+". Error: " + cloudState.toString());
+            setMessage("Error while resolving anchor with short code " + shortCode + ". Error: " + error);
         }
     }
 
@@ -368,31 +1120,123 @@ public class MainActivity extends AppCompatActivity {
 
 
 
+    /*
+    makes anchor the anchor of all objects and changes the red dot to green
+     */
+    private void setMainAnchor(Anchor anchor) {
+        this.anchor = anchor;
+
+        if (redAnchorNode != null) redAnchorNode.setParent(null);
+
+        //set green ball on top of anchor
+        mainAnchorNode = new AnchorNode(this.anchor);
+        mainAnchorNode.setParent(fragment.getArSceneView().getScene());
+        Node node = new Node();
+        node.setParent(mainAnchorNode);
+        node.setRenderable(anchorGreenRenderable);
+    }
+
     /*
     clear entire scene
      */
     public void clear(){
         setMessage("cleared");
 
-        // clear pending listeners
+        // keep the last state of the scene that is left
+        if (sceneCacheDirty) saveSceneToCache();
+
+        // end the running sessions first, so that the callbacks of what is cancelled below are ignored
+        hostPipeline.reset();
+        joinPipeline.reset();
+
+        // clear pending listeners and stop listening to the old scene
         cloudAnchorManager.clearListeners();
+        firebaseManager.unsubscribeFromScene();
+        liveChannel.close();
+        if (cellSubscription != null) cellSubscription.cancel();
+        cellSubscription = null;
 
         shortCode = 0;
+        joinCachedScene = null;
 
-        if (myNodeMap != null){
-            for( TransformableNode node : myNodeMap.values()){
-                node.getParent().setParent(null); // remove all nodes from the scene
-            }
+        clearScene();
+        cells.clear();
+    }
+
+    /*
+    removes all objects and the anchor from the scene, but keeps listening to the current scene
+     */
+    private void clearScene(){
+        writeScheduler.clear();
+        buildScheduler.clear();
+
+        // remove all nodes from the scene, they are kept for the next scene
+        for (myNode node : myNodeMap.values()) {
+            nodePool.release(node);
+        }
+        myNodeMap.clear();
+        sceneReconciler.reset();
+        transformInterpolator.clear();
+
+        // the cells are kept, their anchors are resolved again
+        // forgotten before it is cancelled, as onCellHosted runs right away and then takes it for dropped
+        CompletableFuture<Anchor> hosting = cellHosting;
+        cellHosting = null;
+        if (hosting != null) hosting.cancel(false);
+        cellLoader.clear();
+        for (AnchorNode cellAnchorNode : cellAnchorNodes.values()) {
+            cellAnchorNode.setParent(null);
         }
+        cellAnchorNodes.clear();
 
-        // throw away the old map
-        myNodeMap = new HashMap<>();
+        releaseMainAnchor();
+    }
 
+    /*
+    removes the main anchor and the green dot from the scene
+     */
+    private void releaseMainAnchor() {
         if (mainAnchorNode != null) mainAnchorNode.setParent(null);
+        mainAnchorNode = null;
 
+        if (anchor != null) anchor.detach();
         anchor = null;
     }
 
+    /*
+    writes the current scene to the scene cache, in the background
+     */
+    private void saveSceneToCache() {
+        sceneCacheDirty = false;
+        sceneCachedMillis = SystemClock.uptimeMillis();
+        if (shortCode != 0 && sceneData.getCloudAnchorId() != null) sceneCache.put(shortCode, sceneData);
+    }
+
+    /*
+    starts tracing, or stops it and writes what was recorded to a Chrome trace file in the background
+     */
+    private void toggleTracing() {
+        if (!trace.isEnabled()) {
+            trace.clear();
+            trace.setEnabled(true);
+            setMessage("Tracing");
+            return;
+        }
+
+        trace.setEnabled(false);
+        File directory = new File(getExternalFilesDir(null), TRACE_DIR);
+        File file = new File(directory, "trace-" + System.currentTimeMillis() + ".json");
+        setMessage("Trace written to " + file.getAbsolutePath());
+        ioExecutor.execute(() -> {
+            directory.mkdirs();
+            try {
+                trace.dump(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not write trace " + file, e);
+            }
+        });
+    }
+
     /*
     sets a massage to the infoText View.
      */
@@ -400,6 +1244,13 @@ public class MainActivity extends AppCompatActivity {
         infoText.setText(message);
     }
 
+    /*
+    metrics of this activity and its helpers
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     /*
     getter function for short code
      */
@@ -415,21 +1266,63 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /*
-    Updates one specific object in the firebase cloud state.
+    Schedules an update of one specific object in the firebase cloud state.
+    Writes of the same object are coalesced by the write scheduler, see onWritesFlushed.
      */
     public void updateFirebase(int index){
         if (anchor != null) {
-            NodeData nodeData = sceneData.getNodeData(index);
             myNode node = myNodeMap.get(index);
+            if (node == null) return;
+
+            readTransform(node, transformScratch);
 
-            // update values
-            nodeData.setPosition(node.getParent().getLocalPosition());
-            nodeData.setScale(node.getLocalScale());
-            nodeData.setRotation(node.getLocalRotation());
-            sceneData.setNodeData(index, nodeData);
+            if (firstUnflushedChangeNanos == 0) firstUnflushedChangeNanos = System.nanoTime();
+            writeScheduler.submit(index, transformScratch, SystemClock.uptimeMillis());
 
-            firebaseManager.updateSceneData(getShortCode(), sceneData);
+            // the gesture has ended --> stop streaming and write the final transform right away
+            if (liveChannel.isStreaming()) {
+                liveChannel.end(index, SystemClock.uptimeMillis());
+                writeScheduler.flush();
+            }
+
+            // the local change wins over remote motion, the next remote update starts from here
+            transformInterpolator.reset(index, SystemClock.uptimeMillis(), transformScratch);
         }
     }
-}
 
+    /*
+    reads location, scale and rotation of one object, in the layout of NodeData.copyTransformTo, in the space of the scene
+     */
+    private void readTransform(myNode node, float[] out) {
+        Vector3 position = node.getLocalPosition();
+        Vector3 scale = node.getLocalScale();
+        Quaternion rotation = node.getLocalRotation();
+        int cell = node.getCell();
+        out[0] = position.x + cells.getOffsetX(cell);
+        out[1] = position.y + cells.getOffsetY(cell);
+        out[2] = position.z + cells.getOffsetZ(cell);
+        out[3] = scale.x; out[4] = scale.y; out[5] = scale.z;
+        out[6] = rotation.x; out[7] = rotation.y; out[8] = rotation.z; out[9] = rotation.w;
+    }
+
+    /*
+    called by the write scheduler with the latest transform of every object that changed.
+    updates the local scene data and writes the changed objects to firebase in one update.
+     */
+    private void onWritesFlushed(int[] indices, float[][] transforms, int count) {
+        if (anchor == null) return;
+
+        trace.begin(TRACE_FLUSH);
+        for (int i = 0; i < count; i++) {
+            if (!sceneData.hasNode(indices[i])) continue;
+
+            sceneData.setTransform(indices[i], transforms[i]);
+            sceneReconciler.markApplied(indices[i], transforms[i]);
+        }
+        long changedAtNanos = firstUnflushedChangeNanos != 0 ? firstUnflushedChangeNanos : System.nanoTime();
+        firstUnflushedChangeNanos = 0;
+        sceneCacheDirty = true;
+        firebaseManager.updateNodeData(getShortCode(), sceneData, changedAtNanos, Arrays.copyOf(indices, count));
+        trace.end(TRACE_FLUSH);
+    }
+}
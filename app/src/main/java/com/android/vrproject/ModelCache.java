@@ -0,0 +1,195 @@
+package com.android.vrproject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/*
+The loading and caching behind RenderableRegistry, without Sceneform, so that it can be tested on the JVM.
+
+Models are loaded by key through a Loader, requests for a key that is already loading share one future.
+Loaded models are cached until the combined size of the cache exceeds the memory budget, then the least
+recently used ones are dropped. The size of a model is determined on the size executor, as it may have to read
+the whole model, and the model is only cached once it is known.
+
+Owners, e.g. nodes, that request a model which is not loaded yet get it once it is, unless they have requested
+another model in the meantime.
+
+Must only be used from the main thread. The futures of the loader and the main executor complete there.
+ */
+public class ModelCache<R> {
+
+    /*
+    loads models by key
+     */
+    public interface Loader<R> {
+        /* starts loading the model of key, the future completes on the main thread */
+        CompletableFuture<R> load(String key);
+
+        /* size of the model of key in bytes. may block, it is called on the size executor */
+        long sizeOf(String key);
+    }
+
+    private static class Entry<R> {
+        final R model;
+        final long sizeBytes;
+
+        Entry(R model, long sizeBytes) {
+            this.model = model;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final Loader<R> loader;
+    private final String defaultKey;
+    private final long budgetBytes;
+    private final Executor sizeExecutor;
+    private final Executor mainExecutor;
+
+    private final Map<String, CompletableFuture<R>> loading = new HashMap<>();
+    /* access ordered, the first entry is the least recently used one */
+    private final LinkedHashMap<String, Entry<R>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+    /* the key every owner that waits for a model was asked for last */
+    private final Map<Object, String> waitingOwners = new WeakHashMap<>();
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long sharedLoadCount = 0;
+    private long evictionCount = 0;
+
+    /*
+    defaultKey is the model of objects that do not have one
+     */
+    public ModelCache(Loader<R> loader, String defaultKey, long budgetBytes, Executor sizeExecutor, Executor mainExecutor) {
+        this.loader = loader;
+        this.defaultKey = defaultKey;
+        this.budgetBytes = budgetBytes;
+        this.sizeExecutor = sizeExecutor;
+        this.mainExecutor = mainExecutor;
+    }
+
+    /*
+    returns the model of key, loading it if it is not cached. null stands for the default model.
+     */
+    public CompletableFuture<R> load(String key) {
+        key = resolve(key);
+
+        Entry<R> entry = cache.get(key);
+        if (entry != null) {
+            hitCount++;
+            return CompletableFuture.completedFuture(entry.model);
+        }
+
+        CompletableFuture<R> future = loading.get(key);
+        if (future != null) {
+            sharedLoadCount++;
+            return future;
+        }
+
+        missCount++;
+        String loadedKey = key;
+        CompletableFuture<R> loaded = new CompletableFuture<>();
+        loading.put(key, loaded);
+        CompletableFuture<Long> size = CompletableFuture.supplyAsync(() -> loader.sizeOf(loadedKey), sizeExecutor);
+        loader.load(key)
+                .thenCombine(size, Entry<R>::new)
+                .whenCompleteAsync((result, error) -> onLoaded(loadedKey, result, error, loaded), mainExecutor);
+        return loaded;
+    }
+
+    /*
+    the model of key if it is cached, otherwise null
+     */
+    public R getIfLoaded(String key) {
+        Entry<R> entry = cache.get(resolve(key));
+        return entry == null ? null : entry.model;
+    }
+
+    /*
+    returns the model of key for owner if it is cached. Otherwise returns null and passes the model to onLoaded
+    once it is loaded, unless owner has requested another model by then.
+     */
+    public R request(Object owner, String key, Consumer<R> onLoaded) {
+        R model = getIfLoaded(key);
+        if (model != null) {
+            hitCount++;
+            waitingOwners.remove(owner);
+            return model;
+        }
+
+        waitingOwners.put(owner, key);
+        load(key).thenAccept(loaded -> {
+            if (waitingOwners.get(owner) != key) return;
+
+            waitingOwners.remove(owner);
+            onLoaded.accept(loaded);
+        });
+        return null;
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /*
+    requests that were answered by a load that was already running
+     */
+    public long getSharedLoadCount() {
+        return sharedLoadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private String resolve(String key) {
+        return key == null ? defaultKey : key;
+    }
+
+    private void onLoaded(String key, Entry<R> entry, Throwable error, CompletableFuture<R> loaded) {
+        loading.remove(key);
+        if (error != null) {
+            // the next request loads it again
+            loaded.completeExceptionally(error);
+            return;
+        }
+
+        cache.put(key, entry);
+        cachedBytes += entry.sizeBytes;
+        evict(key);
+        loaded.complete(entry.model);
+    }
+
+    /*
+    drops least recently used models until the cache fits into the budget, keeping the one just loaded
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry<R>>> iterator = cache.entrySet().iterator();
+        while (cachedBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry<R>> next = iterator.next();
+            if (next.getKey().equals(keep)) continue;
+
+            cachedBytes -= next.getValue().sizeBytes;
+            evictionCount++;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.android.vrproject;
+
+import com.google.ar.core.Frame;
+import com.google.ar.core.HitResult;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Trackable;
+import com.google.ar.sceneform.ArSceneView;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.ux.BaseTransformableNode;
+import com.google.ar.sceneform.ux.BaseTransformationController;
+import com.google.ar.sceneform.ux.DragGesture;
+import com.google.ar.sceneform.ux.DragGestureRecognizer;
+
+import java.util.List;
+
+/*
+Moves a node along the detected planes while it is dragged, like the TranslationController of Sceneform.
+
+Unlike that one, it does not create a new anchor when the drag ends, so the node does not need an AnchorNode
+of its own: it stays a child of the anchor of the scene and its local position is its position in the scene.
+ */
+public class PlaneTranslationController extends BaseTransformationController<DragGesture> {
+
+    /* the nodes copy it, so one vector serves every drag event */
+    private final Vector3 worldPosition = new Vector3();
+
+    public PlaneTranslationController(BaseTransformableNode transformableNode, DragGestureRecognizer gestureRecognizer) {
+        super(transformableNode, gestureRecognizer);
+    }
+
+    @Override
+    protected boolean canStartTransformation(DragGesture gesture) {
+        Node target = gesture.getTargetNode();
+        if (target == null) return false;
+
+        BaseTransformableNode node = getTransformableNode();
+        if (target != node && !target.isDescendantOf(node)) return false;
+
+        return node.isSelected() || node.select();
+    }
+
+    @Override
+    protected void onContinueTransformation(DragGesture gesture) {
+        Scene scene = getTransformableNode().getScene();
+        if (scene == null) return;
+
+        Frame frame = ((ArSceneView) scene.getView()).getArFrame();
+        if (frame == null) return;
+
+        Vector3 screenPosition = gesture.getPosition();
+        List<HitResult> hits = frame.hitTest(screenPosition.x, screenPosition.y);
+        for (int i = 0; i < hits.size(); i++) {
+            HitResult hit = hits.get(i);
+            Trackable trackable = hit.getTrackable();
+            Pose pose = hit.getHitPose();
+            if (trackable instanceof Plane && ((Plane) trackable).isPoseInPolygon(pose)) {
+                worldPosition.set(pose.tx(), pose.ty(), pose.tz());
+                getTransformableNode().setWorldPosition(worldPosition);
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected void onEndTransformation(DragGesture gesture) {
+        // the node stays where it was dragged to, relative to the anchor of the scene
+    }
+}
@@ -0,0 +1,179 @@
+package com.android.vrproject;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.rendering.ModelRenderable;
+import com.google.ar.sceneform.rendering.Renderable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/*
+Loads the models of the scene by key and keeps the loaded ones in an LRU cache, see ModelCache.
+
+Every model is registered under a key with its raw resource. Loading is asynchronous,
+requests for a key that is already loading share one future. Loaded models are cached until
+the combined size of the cache exceeds the memory budget, then the least recently used ones are dropped.
+Sceneform does not report the vertex and texture size of a model, so the size of its .sfb resource is used,
+which consists mostly of this data. aapt compresses raw resources, so the size is usually only known after
+reading the whole resource, which happens on the io executor.
+
+Nodes whose model is not loaded yet show the placeholder until it is, see setRenderable.
+A dropped model stays alive as long as nodes still show it, it is only loaded again for new nodes.
+
+Must only be used from the main thread, where Sceneform completes its futures.
+ */
+public class RenderableRegistry {
+
+    private static final String TAG = RenderableRegistry.class.getSimpleName();
+
+    private final Context context;
+    private final Map<String, Integer> sources = new HashMap<>();
+    private final ModelCache<ModelRenderable> models;
+    private Renderable placeholder;
+
+    /*
+    defaultKey is the model of objects that do not have one. the sizes of models are read on ioExecutor
+     */
+    public RenderableRegistry(Context context, String defaultKey, long budgetBytes, Executor ioExecutor) {
+        this.context = context;
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        models = new ModelCache<>(new ModelCache.Loader<ModelRenderable>() {
+            @Override
+            public CompletableFuture<ModelRenderable> load(String key) {
+                return loadModel(key);
+            }
+
+            @Override
+            public long sizeOf(String key) {
+                Integer source = sources.get(key);
+                return source == null ? 0 : sizeOfResource(source);
+            }
+        }, defaultKey, budgetBytes, ioExecutor, mainHandler::post);
+    }
+
+    public void register(String key, int rawResourceId) {
+        sources.put(key, rawResourceId);
+    }
+
+    /*
+    shown by nodes whose model is still loading
+     */
+    public void setPlaceholder(Renderable placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    /*
+    starts loading the given models in the background
+     */
+    public void preload(String... keys) {
+        for (String key : keys) {
+            models.load(key);
+        }
+    }
+
+    /*
+    returns the model of key, loading it if it is not cached. null stands for the default model.
+     */
+    public CompletableFuture<ModelRenderable> load(String key) {
+        return models.load(key);
+    }
+
+    /*
+    the model of key if it is cached, otherwise null
+     */
+    public ModelRenderable getIfLoaded(String key) {
+        return models.getIfLoaded(key);
+    }
+
+    /*
+    shows the model of key on node. If it is not loaded yet, node shows the placeholder until it is.
+    the model is only set if node still shows the placeholder by then, and has not been asked for another model since.
+     */
+    public void setRenderable(Node node, String key) {
+        Renderable shownPlaceholder = placeholder;
+        ModelRenderable renderable = models.request(node, key, loaded -> {
+            if (node.getRenderable() == shownPlaceholder) node.setRenderable(loaded);
+        });
+        node.setRenderable(renderable != null ? renderable : shownPlaceholder);
+    }
+
+    public long getCachedBytes() {
+        return models.getCachedBytes();
+    }
+
+    public int getCachedCount() {
+        return models.getCachedCount();
+    }
+
+    public long getHitCount() {
+        return models.getHitCount();
+    }
+
+    public long getMissCount() {
+        return models.getMissCount();
+    }
+
+    /*
+    requests that were answered by a load that was already running
+     */
+    public long getSharedLoadCount() {
+        return models.getSharedLoadCount();
+    }
+
+    public long getEvictionCount() {
+        return models.getEvictionCount();
+    }
+
+    private CompletableFuture<ModelRenderable> loadModel(String key) {
+        Integer source = sources.get(key);
+        if (source == null) {
+            CompletableFuture<ModelRenderable> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Unknown model " + key));
+            return failed;
+        }
+
+        CompletableFuture<ModelRenderable> future = ModelRenderable.builder()
+                .setSource(context, source)
+                .build();
+        future.exceptionally(error -> {
+            Log.e(TAG, "Could not load model " + key, error);
+            return null;
+        });
+        return future;
+    }
+
+    /*
+    size of a raw resource. compressed resources can not be opened as a file, they are read instead.
+    called on the io executor.
+     */
+    private long sizeOfResource(int source) {
+        Resources resources = context.getResources();
+        try (AssetFileDescriptor descriptor = resources.openRawResourceFd(source)) {
+            if (descriptor != null && descriptor.getLength() >= 0) return descriptor.getLength();
+        } catch (Resources.NotFoundException | IOException e) {
+            // compressed, fall through
+        }
+
+        long size = 0;
+        try (InputStream in = resources.openRawResource(source)) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                size += read;
+            }
+        } catch (IOException | Resources.NotFoundException e) {
+            Log.e(TAG, "Could not determine the size of model resource " + source, e);
+        }
+        return size;
+    }
+}
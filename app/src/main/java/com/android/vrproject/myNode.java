@@ -1,46 +1,65 @@
 package com.android.vrproject;
 
-import android.util.Log;
-import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
-
-import com.google.ar.sceneform.HitTestResult;
-import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.ux.TransformableNode;
 import com.google.ar.sceneform.ux.TransformationSystem;
 
 /*
 Transformable node that can be manipulated.
-Listens for touch events and updates its own state when it changes.
+The gestures on it are recognized by the TransformationSystem of the fragment, and the GestureRouter
+reports when one of them has changed the node, see MainActivity.
+
+Nodes are pooled: a node is bound to an object with setIndex and reset with recycle once the object is gone,
+see MainActivity. It is a direct child of the anchor of its cell (see AnchorCells), so it is moved by a
+PlaneTranslationController instead of the TranslationController of Sceneform, which needs an AnchorNode per object.
  */
 public class myNode extends TransformableNode {
-    private MainActivity activity;
-    private ScaleGestureDetector scaleDetector;
-    int index;
+    public static final int NO_INDEX = -1;
+
+    /* nodes copy these, they are never changed */
+    private static final Vector3 ORIGIN = Vector3.zero();
+    private static final Vector3 UNIT_SCALE = Vector3.one();
+    private static final Quaternion NO_ROTATION = Quaternion.identity();
+
+    int index = NO_INDEX;
+    /* the cell whose anchor this node is attached to, its local position is relative to that anchor */
+    int cell = AnchorCells.MAIN;
 
-    public myNode(TransformationSystem transformationSystem, MainActivity activity, int index) {
+    public myNode(TransformationSystem transformationSystem) {
         super(transformationSystem);
 
-        this.activity = activity;
-        this.index = index;
+        getScaleController().setMinScale(0.2f);
+        getScaleController().setMaxScale(5f);
 
-        scaleDetector = new ScaleGestureDetector(activity, new ScaleListener(this));
+        getTranslationController().setEnabled(false);
+        removeTransformationController(getTranslationController());
+        addTransformationController(new PlaneTranslationController(this, transformationSystem.getDragRecognizer()));
     }
 
-    @Override
-    public boolean onTouchEvent(HitTestResult hitTestResult, MotionEvent motionEvent) {
-        Log.e("ACTVATED","touchevent");
-        if (motionEvent.getAction() == MotionEvent.ACTION_UP) update();
+    public int getIndex(){return index;}
 
-        scaleDetector.onTouchEvent(motionEvent);
+    /*
+    binds this node to the object index
+     */
+    public void setIndex(int index){this.index = index;}
 
-        return super.onTouchEvent(hitTestResult, motionEvent);
-    }
+    public int getCell(){return cell;}
 
+    public void setCell(int cell){this.cell = cell;}
 
-    public void update(){
-        activity.updateFirebase(index);
+    /*
+    detaches this node and resets it, so it can be bound to another object
+     */
+    public void recycle(){
+        if (isSelected()) getTransformationSystem().selectNode(null);
+        setParent(null);
+        setRenderable(null);
+        setLocalPosition(ORIGIN);
+        setLocalScale(UNIT_SCALE);
+        getScaleController().onActivated(this); // forget the cached scale of the last object
+        setLocalRotation(NO_ROTATION);
+        index = NO_INDEX;
+        cell = AnchorCells.MAIN;
     }
-
-    public int getIndex(){return index;}
 }
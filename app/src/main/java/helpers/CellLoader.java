@@ -0,0 +1,231 @@
+package helpers;
+
+import com.android.vrproject.AnchorCells;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the anchors of the cells near the camera resolved, see {@link AnchorCells}.
+ *
+ * <p>On every {@link #update}, the cells whose anchor is within the load radius of the camera are
+ * resolved, the closest ones first and up to {@code maxConcurrent} at the same time. Cells farther
+ * than the unload radius are unloaded: a running resolve is cancelled and a resolved anchor is
+ * detached, so ARCore stops tracking it. The unload radius should be larger than the load radius,
+ * so that cells at the border are not loaded and unloaded over and over. A cell whose resolve failed
+ * is only tried again once it has been out of the unload radius.
+ *
+ * <p>The main cell is not managed by this loader, it is always loaded. Not thread safe, resolves
+ * must complete on the thread that calls {@link #update}.
+ *
+ * @param <A> the type of anchors
+ */
+public class CellLoader<A> {
+
+  /** Resolves and detaches the anchors of cells. */
+  public interface Resolver<A> {
+
+    /** Starts resolving an anchor. Cancelling the future stops the resolve. */
+    CompletableFuture<A> resolve(String cloudAnchorId);
+
+    void detach(A anchor);
+  }
+
+  /** Notified when cells are loaded and unloaded. */
+  public interface Listener<A> {
+
+    /** The anchor of {@code cell} was resolved or set. */
+    void onCellLoaded(int cell, A anchor);
+
+    /** The anchor of {@code cell} is about to be detached. */
+    void onCellUnloaded(int cell);
+  }
+
+  /** Gauge of the cells whose anchor is resolved, without the main cell. */
+  public static final String METRIC_LOADED = "cells.loaded";
+
+  /** Gauge of the cells whose anchor is being resolved. */
+  public static final String METRIC_RESOLVING = "cells.resolving";
+
+  /** Counter of the cells that were unloaded. */
+  public static final String METRIC_UNLOADS = "cells.unloads";
+
+  /** Counter of the resolves of cells that failed. */
+  public static final String METRIC_FAILURES = "cells.failures";
+
+  private final AnchorCells cells;
+  private final Resolver<A> resolver;
+  private final Listener<A> listener;
+  private final float loadRadiusSquared;
+  private final float unloadRadiusSquared;
+  private final int maxConcurrent;
+
+  /* by cell, null if the cell is not loaded or not resolving */
+  private final List<A> anchors = new ArrayList<>();
+  private final List<CompletableFuture<A>> resolves = new ArrayList<>();
+  private final List<Boolean> failed = new ArrayList<>();
+  private int loadedCount = 0;
+  private int resolvingCount = 0;
+
+  private final Counter unloads;
+  private final Counter failures;
+
+  /**
+   * Creates a loader for {@code cells} that resolves cells within {@code loadRadius} meters of the
+   * camera, at most {@code maxConcurrent} at once, and unloads cells beyond {@code unloadRadius}.
+   */
+  public CellLoader(
+      AnchorCells cells,
+      Resolver<A> resolver,
+      Listener<A> listener,
+      float loadRadius,
+      float unloadRadius,
+      int maxConcurrent,
+      MetricsRegistry metrics) {
+    if (unloadRadius < loadRadius) {
+      throw new IllegalArgumentException("unloadRadius must not be smaller than loadRadius");
+    }
+    this.cells = cells;
+    this.resolver = resolver;
+    this.listener = listener;
+    this.loadRadiusSquared = loadRadius * loadRadius;
+    this.unloadRadiusSquared = unloadRadius * unloadRadius;
+    this.maxConcurrent = maxConcurrent;
+    unloads = metrics.counter(METRIC_UNLOADS);
+    failures = metrics.counter(METRIC_FAILURES);
+    metrics.gauge(METRIC_LOADED, this::getLoadedCount);
+    metrics.gauge(METRIC_RESOLVING, this::getResolvingCount);
+  }
+
+  /**
+   * Unloads the cells far from the camera at {@code x, y, z} in the scene and starts resolving the
+   * closest cells near it.
+   */
+  public void update(float x, float y, float z) {
+    growToCells();
+    for (int cell = AnchorCells.MAIN + 1; cell < cells.size(); cell++) {
+      if (cells.distanceSquared(cell, x, y, z) > unloadRadiusSquared) {
+        unload(cell);
+        failed.set(cell, false);
+      }
+    }
+
+    while (resolvingCount < maxConcurrent) {
+      int closest = AnchorCells.NO_CELL;
+      float closestDistance = loadRadiusSquared;
+      for (int cell = AnchorCells.MAIN + 1; cell < cells.size(); cell++) {
+        if (anchors.get(cell) != null || resolves.get(cell) != null || failed.get(cell)) {
+          continue;
+        }
+        float distance = cells.distanceSquared(cell, x, y, z);
+        if (distance <= closestDistance) {
+          closest = cell;
+          closestDistance = distance;
+        }
+      }
+      if (closest == AnchorCells.NO_CELL) {
+        return;
+      }
+      resolve(closest);
+    }
+  }
+
+  /** Loads {@code cell} with an anchor that is already there, e.g. the one it was hosted with. */
+  public void setLoaded(int cell, A anchor) {
+    growToCells();
+    unload(cell);
+    anchors.set(cell, anchor);
+    loadedCount++;
+    listener.onCellLoaded(cell, anchor);
+  }
+
+  public boolean isLoaded(int cell) {
+    return cell < anchors.size() && anchors.get(cell) != null;
+  }
+
+  /** The anchor of {@code cell}, or null if it is not loaded. */
+  public A getAnchor(int cell) {
+    return cell < anchors.size() ? anchors.get(cell) : null;
+  }
+
+  /**
+   * Cancels all resolves and detaches all anchors, without notifying the listener. For a new
+   * scene.
+   */
+  public void clear() {
+    for (int cell = 0; cell < anchors.size(); cell++) {
+      CompletableFuture<A> resolve = resolves.get(cell);
+      resolves.set(cell, null);
+      if (resolve != null) {
+        resolve.cancel(false);
+      }
+      A anchor = anchors.get(cell);
+      anchors.set(cell, null);
+      if (anchor != null) {
+        resolver.detach(anchor);
+      }
+    }
+    anchors.clear();
+    resolves.clear();
+    failed.clear();
+    loadedCount = 0;
+    resolvingCount = 0;
+  }
+
+  public int getLoadedCount() {
+    return loadedCount;
+  }
+
+  public int getResolvingCount() {
+    return resolvingCount;
+  }
+
+  private void resolve(int cell) {
+    CompletableFuture<A> resolve = resolver.resolve(cells.getCloudAnchorId(cell));
+    resolves.set(cell, resolve);
+    resolvingCount++;
+    resolve.whenComplete(
+        (anchor, error) -> {
+          if (resolves.get(cell) != resolve) {
+            // unloaded or cleared in the meantime, the resolve was cancelled
+            return;
+          }
+          resolves.set(cell, null);
+          resolvingCount--;
+          if (error != null) {
+            failed.set(cell, true);
+            failures.increment();
+            return;
+          }
+          anchors.set(cell, anchor);
+          loadedCount++;
+          listener.onCellLoaded(cell, anchor);
+        });
+  }
+
+  private void unload(int cell) {
+    CompletableFuture<A> resolve = resolves.get(cell);
+    if (resolve != null) {
+      resolves.set(cell, null);
+      resolvingCount--;
+      resolve.cancel(false);
+    }
+    A anchor = anchors.get(cell);
+    if (anchor != null) {
+      listener.onCellUnloaded(cell);
+      anchors.set(cell, null);
+      loadedCount--;
+      unloads.increment();
+      resolver.detach(anchor);
+    }
+  }
+
+  private void growToCells() {
+    while (anchors.size() < cells.size()) {
+      anchors.add(null);
+      resolves.add(null);
+      failed.add(false);
+    }
+  }
+}
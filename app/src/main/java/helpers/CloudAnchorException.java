@@ -0,0 +1,18 @@
+package helpers;
+
+import com.google.ar.core.Anchor.CloudAnchorState;
+
+/** Thrown through a future when a host or resolve operation finishes with an error state. */
+public class CloudAnchorException extends Exception {
+
+  private final CloudAnchorState state;
+
+  public CloudAnchorException(CloudAnchorState state) {
+    super("Cloud anchor operation failed: " + state);
+    this.state = state;
+  }
+
+  public CloudAnchorState getState() {
+    return state;
+  }
+}
@@ -20,10 +20,10 @@ import com.google.ar.core.Anchor;
 import com.google.ar.core.Anchor.CloudAnchorState;
 import com.google.ar.core.Session;
 
-import java.util.ConcurrentModificationException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A helper class to handle all the Cloud Anchors logic, and add a callback-like mechanism on top of
@@ -37,50 +37,241 @@ public class CloudAnchorManager {
     void onCloudTaskComplete(Anchor anchor);
   }
 
-  private final HashMap<Anchor, CloudAnchorListener> pendingAnchors = new HashMap<>();
+  /** Maximum number of host and resolve operations that can be pending at the same time. */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  /** Histogram of the time from starting to finishing a host operation. */
+  public static final String METRIC_HOST_MS = "anchor.host_ms";
+
+  /** Histogram of the time from starting to finishing a resolve operation. */
+  public static final String METRIC_RESOLVE_MS = "anchor.resolve_ms";
+
+  /** Reads the state of ARCore anchors for the {@link PendingAnchorTracker}. */
+  private static final PendingAnchorTracker.AnchorOps<Anchor> ANCHOR_OPS =
+      new PendingAnchorTracker.AnchorOps<Anchor>() {
+        @Override
+        public boolean isDone(Anchor anchor) {
+          return isReturnableState(anchor.getCloudAnchorState());
+        }
+
+        @Override
+        public Exception failureOf(Anchor anchor) {
+          CloudAnchorState state = anchor.getCloudAnchorState();
+          return state == CloudAnchorState.SUCCESS ? null : new CloudAnchorException(state);
+        }
+
+        @Override
+        public void detach(Anchor anchor) {
+          anchor.detach();
+        }
+      };
+
+  /** Invokes a {@link CloudAnchorListener} once its operation has finished. */
+  private static class ListenerCallback implements PendingAnchorTracker.Callback<Anchor> {
+    private final CloudAnchorListener listener;
+    private final Histogram latency;
+    private final long startNanos = System.nanoTime();
+
+    ListenerCallback(CloudAnchorListener listener, Histogram latency) {
+      this.listener = listener;
+      this.latency = latency;
+    }
+
+    @Override
+    public void onComplete(Anchor anchor) {
+      latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      listener.onCloudTaskComplete(anchor);
+    }
+
+    @Override
+    public void onTimeout(Anchor anchor) {
+      // listener operations have no deadline
+    }
+
+    @Override
+    public void onCleared(Anchor anchor) {
+      // cleared listeners are not called again
+    }
+  }
+
+  private final PendingAnchorTracker<Anchor> pendingAnchors;
+  private final Histogram hostLatency;
+  private final Histogram resolveLatency;
+
+  public CloudAnchorManager() {
+    this(DEFAULT_CAPACITY, new MetricsRegistry());
+  }
+
+  /** Records the latency of host and resolve operations in {@code metrics}. */
+  public CloudAnchorManager(int capacity, MetricsRegistry metrics) {
+    pendingAnchors = new PendingAnchorTracker<>(capacity, ANCHOR_OPS);
+    hostLatency = metrics.histogram(METRIC_HOST_MS, Histogram.MILLIS_BOUNDS);
+    resolveLatency = metrics.histogram(METRIC_RESOLVE_MS, Histogram.MILLIS_BOUNDS);
+  }
 
   /**
    * This method hosts an anchor. The {@code listener} will be invoked when the results are
    * available.
    */
-  public synchronized void hostCloudAnchor(
-          Session session, Anchor anchor, CloudAnchorListener listener) {
+  public void hostCloudAnchor(Session session, Anchor anchor, CloudAnchorListener listener) {
+    checkCapacity();
     Anchor newAnchor = session.hostCloudAnchor(anchor);
-    pendingAnchors.put(newAnchor, listener);
+    pendingAnchors.add(
+        newAnchor, new ListenerCallback(listener, hostLatency), PendingAnchorTracker.NO_DEADLINE);
   }
 
   /**
    * This method resolves an anchor. The {@code listener} will be invoked when the results are
    * available.
    */
-  public synchronized void resolveCloudAnchor(
-          Session session, String anchorId, CloudAnchorListener listener) {
+  public void resolveCloudAnchor(Session session, String anchorId, CloudAnchorListener listener) {
+    checkCapacity();
     Anchor newAnchor = session.resolveCloudAnchor(anchorId);
-    pendingAnchors.put(newAnchor, listener);
-  }
-
-  /** Should be called after a {@link Session#update()} call. */
-  public synchronized void onUpdate() {
-    try {
-      Iterator<Map.Entry<Anchor, CloudAnchorListener>> iter = pendingAnchors.entrySet().iterator();
-      while (iter.hasNext()) {
-        Map.Entry<Anchor, CloudAnchorListener> entry = iter.next();
-        Anchor anchor = entry.getKey();
-        if (isReturnableState(anchor.getCloudAnchorState())) {
-          CloudAnchorListener listener = entry.getValue();
-          listener.onCloudTaskComplete(anchor);
-          iter.remove();
-        }
-      }
+    pendingAnchors.add(
+        newAnchor, new ListenerCallback(listener, resolveLatency), PendingAnchorTracker.NO_DEADLINE);
+  }
+
+  /**
+   * Hosts an anchor. The future completes with the hosted anchor from {@link #onUpdate()}, or fails
+   * with a {@link CloudAnchorException} or a {@link java.util.concurrent.TimeoutException} after
+   * {@code timeout}. Cancelling the future stops the operation and detaches the hosted anchor. If
+   * the capacity of this manager is exhausted, the future fails with an {@link
+   * IllegalStateException} without hosting anything.
+   */
+  public CompletableFuture<Anchor> hostCloudAnchorAsync(
+      Session session, Anchor anchor, long timeout, TimeUnit unit) {
+    if (pendingAnchors.getRemainingCapacity() == 0) {
+      return overCapacity();
+    }
+    return timed(
+        pendingAnchors.track(session.hostCloudAnchor(anchor), unit.toNanos(timeout)), hostLatency);
+  }
+
+  /**
+   * Resolves an anchor. The future behaves like the one of {@link #hostCloudAnchorAsync}; any
+   * number of resolves can be in flight at the same time, up to the capacity of this manager.
+   */
+  public CompletableFuture<Anchor> resolveCloudAnchorAsync(
+      Session session, String anchorId, long timeout, TimeUnit unit) {
+    if (pendingAnchors.getRemainingCapacity() == 0) {
+      return overCapacity();
     }
-    catch (ConcurrentModificationException e) {
-      // cleared listeners during this operation.. ignore...
+    return timed(
+        pendingAnchors.track(session.resolveCloudAnchor(anchorId), unit.toNanos(timeout)),
+        resolveLatency);
+  }
+
+  /**
+   * Resolves several anchors at once. The future completes with the anchors in the order of
+   * {@code anchorIds} once all of them are resolved. If one resolve fails, the others are cancelled
+   * and the future fails with its exception. If not all of them fit into the capacity of this
+   * manager, none is started.
+   */
+  public CompletableFuture<List<Anchor>> resolveCloudAnchorsAsync(
+      Session session, List<String> anchorIds, long timeout, TimeUnit unit) {
+    if (anchorIds.size() > pendingAnchors.getRemainingCapacity()) {
+      return overCapacity();
+    }
+    List<CompletableFuture<Anchor>> futures = new ArrayList<>(anchorIds.size());
+    for (String anchorId : anchorIds) {
+      futures.add(resolveCloudAnchorAsync(session, anchorId, timeout, unit));
     }
+    return allOf(futures);
+  }
+
+  /**
+   * Combines futures into one that completes with all results in order, or fails as soon as one of
+   * them fails, in which case the others are cancelled.
+   */
+  static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+    CompletableFuture<List<T>> all =
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .thenApply(
+                ignored -> {
+                  List<T> results = new ArrayList<>(futures.size());
+                  for (CompletableFuture<T> future : futures) {
+                    results.add(future.join());
+                  }
+                  return results;
+                });
+    for (CompletableFuture<T> future : futures) {
+      future.whenComplete(
+          (result, error) -> {
+            if (error == null) {
+              return;
+            }
+            for (CompletableFuture<T> other : futures) {
+              other.cancel(false);
+            }
+            all.completeExceptionally(error);
+          });
+    }
+    return all;
+  }
+
+  /**
+   * Should be called after a {@link Session#update()} call. Returns without allocating if no
+   * operation is pending. Listeners may call {@link #clearListeners()} or start new operations.
+   */
+  public void onUpdate() {
+    pendingAnchors.poll();
+  }
+
+  /**
+   * Used to clear any currently registered listeners, so they wont be called again. Pending
+   * futures are cancelled.
+   */
+  public void clearListeners() {
+    pendingAnchors.clear();
+  }
+
+  /** Number of host and resolve operations that have not finished yet. */
+  public int getPendingCount() {
+    return pendingAnchors.getPendingCount();
+  }
+
+  /** Time the last {@link #onUpdate()} spent polling anchors, including listeners. */
+  public long getLastPollNanos() {
+    return pendingAnchors.getLastPollNanos();
+  }
+
+  /** Longest time a single {@link #onUpdate()} spent polling anchors. */
+  public long getMaxPollNanos() {
+    return pendingAnchors.getMaxPollNanos();
+  }
+
+  /** Average time of the {@link #onUpdate()} calls that had pending operations. */
+  public long getAveragePollNanos() {
+    return pendingAnchors.getAveragePollNanos();
+  }
+
+  /**
+   * Throws if no operation can be added. Checked before the session is asked, as the anchor it
+   * creates could not be tracked and would never be detached.
+   */
+  private void checkCapacity() {
+    if (pendingAnchors.getRemainingCapacity() == 0) {
+      throw pendingAnchors.capacityExceeded();
+    }
+  }
+
+  /** A future of an operation that was not started because the capacity is exhausted. */
+  private <T> CompletableFuture<T> overCapacity() {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(pendingAnchors.capacityExceeded());
+    return future;
   }
 
-  /** Used to clear any currently registered listeners, so they wont be called again. */
-  public synchronized void clearListeners() {
-      pendingAnchors.clear();
+  /** Records the time until {@code future} finishes in {@code latency}, unless it is cancelled. */
+  private static <T> CompletableFuture<T> timed(CompletableFuture<T> future, Histogram latency) {
+    long startNanos = System.nanoTime();
+    future.whenComplete(
+        (result, error) -> {
+          if (!future.isCancelled()) {
+            latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+          }
+        });
+    return future;
   }
 
   private static boolean isReturnableState(CloudAnchorState cloudState) {
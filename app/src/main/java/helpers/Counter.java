@@ -0,0 +1,21 @@
+package helpers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count, cheap to update from several threads. */
+public class Counter {
+
+  private final LongAdder value = new LongAdder();
+
+  public void increment() {
+    value.increment();
+  }
+
+  public void add(long amount) {
+    value.add(amount);
+  }
+
+  public long get() {
+    return value.sum();
+  }
+}
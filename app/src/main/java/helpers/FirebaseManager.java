@@ -19,22 +19,36 @@ package helpers;
 import android.content.Context;
 import android.util.Log;
 
+import com.android.vrproject.AnchorCells;
 import com.android.vrproject.MainActivity;
+import com.android.vrproject.NodeData;
+import com.android.vrproject.NodeDataMapper;
+import com.android.vrproject.NodeTable;
+import com.android.vrproject.SceneCodec;
 import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneDataMapper;
+import com.android.vrproject.SceneStore;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-/** Helper class for Firebase storage of cloud anchor IDs. */
-public class FirebaseManager {
+/**
+ * Helper class for Firebase storage of cloud anchor IDs. Also serves as the Firebase backed {@link
+ * SceneStore}, with paths relative to the root directory of the app.
+ */
+public class FirebaseManager implements SceneStore {
 
   /** Listener for a new Cloud Anchor ID from the Firebase Database. */
   public interface CloudAnchorIdListener {
@@ -46,40 +60,519 @@ public class FirebaseManager {
     void onShortCodeAvailable(Integer shortCode);
   }
 
+  /** Format in which scenes are written to the database. Scenes in any format can be read. */
+  public enum SceneEncoding {
+    /** Firebase object mapping of {@link SceneData}, one child per field and node. */
+    POJO,
+    /** Scene fields as children, plus the whole scene as one base64 string. */
+    BLOB,
+    /** Scene fields as children, plus every node as its own base64 string. */
+    NODE_BLOBS
+  }
+
+  /** Histogram of the time from a local change to the acknowledgement of its write. */
+  public static final String METRIC_WRITE_ACK_MS = "sync.write_ack_ms";
+
+  /** Histogram of the approximate payload size of every scene update. */
+  public static final String METRIC_WRITE_BYTES = "sync.write_bytes";
+
+  /** Counter of scene updates that failed. */
+  public static final String METRIC_WRITE_ERRORS = "sync.write_errors";
+
+  /** Histogram of the time from receiving a remote change to having applied it to the nodes. */
+  public static final String METRIC_REMOTE_APPLY_US = "sync.remote_apply_us";
+
+  /** Gauge of the value listeners attached to the database. */
+  public static final String METRIC_LISTENERS = "firebase.listeners";
+
+  /** Trace span of collecting and sending a scene update. */
+  public static final String TRACE_UPDATE = "sync.update";
+
+  /** Trace event of the acknowledgement of a scene update, with the short code. */
+  public static final String TRACE_UPDATE_ACK = "sync.update_ack";
+
+  /** Trace span of handling a snapshot of the subscribed scene. */
+  public static final String TRACE_SNAPSHOT = "sync.snapshot";
+
+  /** Trace span of decoding a scene, on the decode executor. */
+  public static final String TRACE_DECODE = "sync.decode";
+
+  /** Trace event of reading the cloud anchor ID of a scene, with the short code. */
+  public static final String TRACE_CLOUD_ANCHOR_ID = "sync.cloud_anchor_id";
+
+  /** Trace event of a downloaded page of a scene, with its number of objects. */
+  public static final String TRACE_DOWNLOAD_PAGE = "sync.download_page";
+
+  /** Trace event of the end of a scene download, with the short code. */
+  public static final String TRACE_DOWNLOAD_COMPLETE = "sync.download_complete";
+
   private static final String TAG = FirebaseManager.class.getName();
   private static final String KEY_ROOT_DIR = "shared_anchor_codelab_root";
   private static final String KEY_NEXT_SHORT_CODE = "next_short_code";
-  private static final String KEY_PREFIX = "anchor;";
+  static final String KEY_PREFIX = "anchor;";
+  static final String KEY_BLOB = "blob";
+  static final String KEY_NODE_BLOBS = "nodeBlobs";
+  private static final String KEY_CELLS = "cells";
   private static final int INITIAL_SHORT_CODE = 142;
+  private static final int SHORT_CODE_BLOCK_SIZE = 64;
+  private static final int SHORT_CODE_REFILL_THRESHOLD = 16;
+  private static final int DOWNLOAD_PAGE_SIZE = 200;
   private final DatabaseReference rootRef;
+  private final SceneDeltaTracker deltaTracker = new SceneDeltaTracker();
+  private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+  private final ShortCodeAllocator shortCodeAllocator =
+      new ShortCodeAllocator(
+          this::leaseShortCodes, SHORT_CODE_BLOCK_SIZE, SHORT_CODE_REFILL_THRESHOLD);
   private DatabaseReference anchorRef;
   private MainActivity activity;
+  private SceneEncoding sceneEncoding = SceneEncoding.POJO;
+  private SceneCodec sceneCodec = new SceneCodec();
+  private final float[] transformScratch = new float[NodeData.TRANSFORM_SIZE];
+  private final Histogram writeAckLatency;
+  private final Histogram writeBytes;
+  private final Counter writeErrors;
+  private final Histogram remoteApplyLatency;
+  private final TraceRecorder trace;
+  private final SceneDownloader downloader;
+  private final Executor decodeExecutor;
+
+  /* the scene this manager is currently subscribed to, see subscribeToScene */
+  private int subscribedShortCode = 0;
+  private ValueEventListener subscribedListener;
+  /* number of the newest snapshot received, older ones that are still waiting are not decoded */
+  private volatile long latestSnapshot = 0;
 
   /** Constructor that initializes the Firebase connection. */
   public FirebaseManager(Context context, MainActivity activity) {
+    this(context, activity, new MetricsRegistry());
+  }
+
+  /**
+   * Constructor that initializes the Firebase connection and records sync metrics in {@code
+   * metrics}.
+   */
+  public FirebaseManager(Context context, MainActivity activity, MetricsRegistry metrics) {
+    this(context, activity, metrics, new TraceRecorder());
+  }
+
+  /**
+   * Constructor that initializes the Firebase connection, records sync metrics in {@code metrics}
+   * and traces the sync path to {@code trace}.
+   */
+  public FirebaseManager(
+      Context context, MainActivity activity, MetricsRegistry metrics, TraceRecorder trace) {
+    this(context, activity, metrics, trace, Runnable::run);
+  }
+
+  /**
+   * Constructor that initializes the Firebase connection, records sync metrics in {@code metrics},
+   * traces the sync path to {@code trace} and decodes snapshots of the subscribed scene on {@code
+   * decodeExecutor}. The decoded scenes are handed to the activity on its UI thread, in the order
+   * the snapshots arrived, so the executor must run its tasks in order too.
+   */
+  public FirebaseManager(
+      Context context,
+      MainActivity activity,
+      MetricsRegistry metrics,
+      TraceRecorder trace,
+      Executor decodeExecutor) {
     FirebaseApp firebaseApp = FirebaseApp.initializeApp(context);
     rootRef = FirebaseDatabase.getInstance(firebaseApp).getReference().child(KEY_ROOT_DIR);
     DatabaseReference.goOnline();
 
     this.activity = activity;
+    this.trace = trace;
+    this.decodeExecutor = decodeExecutor;
+
+    writeAckLatency = metrics.histogram(METRIC_WRITE_ACK_MS, Histogram.MILLIS_BOUNDS);
+    writeBytes = metrics.histogram(METRIC_WRITE_BYTES, Histogram.BYTES_BOUNDS);
+    writeErrors = metrics.counter(METRIC_WRITE_ERRORS);
+    remoteApplyLatency = metrics.histogram(METRIC_REMOTE_APPLY_US, Histogram.MICROS_BOUNDS);
+    metrics.gauge(METRIC_LISTENERS, subscriptions::getActiveCount);
+    downloader = new SceneDownloader(this, DOWNLOAD_PAGE_SIZE, metrics);
+  }
+
+  /**
+   * Sets the format used for writing scenes. {@code codec} encodes the blobs of the {@link
+   * SceneEncoding#BLOB} and {@link SceneEncoding#NODE_BLOBS} formats.
+   */
+  public void setSceneEncoding(SceneEncoding sceneEncoding, SceneCodec codec) {
+    this.sceneEncoding = sceneEncoding;
+    this.sceneCodec = codec;
   }
 
-  /** Gets a new short code that can be used to store the anchor ID. */
+  /**
+   * Gets a new short code that can be used to store the anchor ID. Codes come from blocks leased by
+   * {@link #getShortCodeAllocator()}, so this usually answers without a round trip.
+   */
   public void nextShortCode(ShortCodeListener listener) {
-    // Run a transaction on the node containing the next short code available. This increments the
-    // value in the database and retrieves it in one atomic all-or-nothing operation.
+    shortCodeAllocator.nextShortCode(listener);
+  }
+
+  /**
+   * Leases short codes ahead of {@link #nextShortCode}, e.g. while an anchor is being hosted. Codes
+   * are only leased by clients that host, so that launching the app does not use any up.
+   */
+  public void prefetchShortCodes() {
+    shortCodeAllocator.prefetch();
+  }
+
+  /** Allocator behind {@link #nextShortCode}, exposes the lease hit rate and latency. */
+  public ShortCodeAllocator getShortCodeAllocator() {
+    return shortCodeAllocator;
+  }
+
+  /**
+   * Reserves {@code size} short codes for this client and reports the first one, or null on error.
+   * The database keeps the last reserved code, so clients that still take one code at a time stay
+   * compatible.
+   */
+  private void leaseShortCodes(int size, ShortCodeAllocator.BlockListener listener) {
+    // Increments the value in the database and retrieves it in one atomic all-or-nothing operation.
+    increment(
+        KEY_NEXT_SHORT_CODE,
+        size,
+        INITIAL_SHORT_CODE - 1,
+        (value, error) -> {
+          if (error != null) {
+            Log.e(TAG, "Firebase Error", error);
+            listener.onBlockLeased(null);
+          } else {
+            listener.onBlockLeased((int) (value - size + 1));
+          }
+        });
+  }
+
+  /** Stores the cloud anchor ID in the configured Firebase Database. */
+  public void storeUsingShortCode(int shortCode, SceneData sceneData) {
+    rootRef.child(KEY_PREFIX + shortCode).setValue(toDatabaseValue(sceneData));
+    deltaTracker.reset(shortCode, sceneData);
+  }
+
+  /**
+   * Retrieves the cloud anchor ID using a short code, or null if a cloud anchor ID was not stored
+   * for this short code. The objects of the scene follow in pages, which are handed to the activity
+   * as they arrive, so the anchor can be resolved while a large scene is still loading. The scene
+   * is kept in sync once all pages have arrived.
+   */
+  public void getCloudAnchorId(int shortCode, CloudAnchorIdListener listener) {
+    unsubscribeFromScene();
+    anchorRef = rootRef.child(KEY_PREFIX + shortCode);
+    downloader.download(
+        shortCode,
+        new SceneDownloader.Listener() {
+          private boolean headerReported = false;
+
+          @Override
+          public void onHeader(String cloudAnchorId, int index) {
+            trace.instant(TRACE_CLOUD_ANCHOR_ID, shortCode);
+            headerReported = true;
+            listener.onCloudAnchorIdAvailable(cloudAnchorId);
+          }
+
+          @Override
+          public void onPage(SceneData page) {
+            trace.instant(TRACE_DOWNLOAD_PAGE, page.nodes().size());
+            activity.addScenePage(page);
+          }
+
+          @Override
+          public void onComplete(SceneData sceneData) {
+            trace.instant(TRACE_DOWNLOAD_COMPLETE, shortCode);
+            deltaTracker.reset(shortCode, sceneData);
+            activity.setSceneData(sceneData);
+            subscribeToScene(shortCode);
+          }
+
+          @Override
+          public void onError(Exception error) {
+            Log.e(TAG, "The download of scene " + shortCode + " failed.", error);
+            if (!headerReported) {
+              listener.onCloudAnchorIdAvailable(null);
+            } else {
+              // the subscription delivers the whole scene instead
+              subscribeToScene(shortCode);
+            }
+          }
+        });
+  }
+
+  /** Downloader behind {@link #getCloudAnchorId}, exposes the page counts and latencies. */
+  public SceneDownloader getDownloader() {
+    return downloader;
+  }
+
+  /**
+   * Keeps the activity's scene data in sync with the scene stored under {@code shortCode}. Replaces
+   * the subscription to any other scene; subscribing to the current scene again does nothing.
+   */
+  public void subscribeToScene(int shortCode) {
+    if (subscribedListener != null) {
+      if (subscribedShortCode == shortCode) {
+        return;
+      }
+      unsubscribeFromScene();
+    }
+
+    subscribedShortCode = shortCode;
+    subscribedListener =
+        new ValueEventListener() {
+          @Override
+          public void onDataChange(DataSnapshot dataSnapshot) {
+            long receivedNanos = System.nanoTime();
+            long snapshot = ++latestSnapshot;
+            decodeExecutor.execute(
+                () -> {
+                  // a newer snapshot replaces this one anyway
+                  if (snapshot != latestSnapshot) {
+                    return;
+                  }
+                  SceneData sceneData;
+                  try {
+                    sceneData = decodeScene(dataSnapshot.getValue());
+                  } catch (RuntimeException e) {
+                    Log.e(TAG, "Could not decode scene " + shortCode, e);
+                    return;
+                  }
+                  activity.runOnUiThread(() -> applySnapshot(this, sceneData, receivedNanos));
+                });
+          }
+
+          @Override
+          public void onCancelled(DatabaseError databaseError) {
+            Log.e(TAG, "The read failed: " + databaseError.getCode(), databaseError.toException());
+          }
+        };
+    subscriptions.acquire(shortCode, rootRef.child(KEY_PREFIX + shortCode), subscribedListener);
+  }
+
+  /**
+   * Hands a decoded snapshot of the subscribed scene to the activity, unless the scene was left
+   * while it was decoded. Runs on the UI thread.
+   */
+  private void applySnapshot(ValueEventListener listener, SceneData sceneData, long receivedNanos) {
+    if (listener != subscribedListener || sceneData == null) {
+      return;
+    }
+    trace.begin(TRACE_SNAPSHOT);
+    deltaTracker.reset(subscribedShortCode, sceneData);
+    activity.setSceneData(sceneData);
+    remoteApplyLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - receivedNanos));
+    trace.end(TRACE_SNAPSHOT);
+  }
+
+  /** Detaches the listener of the current scene, if any, and stops downloading it. */
+  public void unsubscribeFromScene() {
+    downloader.cancel();
+    if (subscribedListener == null) {
+      return;
+    }
+    subscriptions.release(subscribedShortCode, subscribedListener);
+    subscribedListener = null;
+    subscribedShortCode = 0;
+  }
+
+  /**
+   * Keeps {@code listener} informed about the anchor cells of the scene stored under {@code
+   * shortCode}, see {@link AnchorCells#addAll}. Cells are stored apart from the scene fields and
+   * objects, so they are kept in every {@link SceneEncoding}.
+   */
+  public Subscription subscribeToCells(int shortCode, ValueListener listener) {
+    return subscribe(KEY_PREFIX + shortCode + "/" + KEY_CELLS, listener);
+  }
+
+  /** Adds a cell, with the cloud anchor {@code cloudAnchorId} at {@code x, y, z} in the scene. */
+  public void storeCell(int shortCode, String cloudAnchorId, float x, float y, float z) {
+    set(
+        KEY_PREFIX + shortCode + "/" + KEY_CELLS + "/" + cloudAnchorId,
+        AnchorCells.toValue(x, y, z),
+        error -> {
+          if (error != null) {
+            Log.e(TAG, "Could not store cell " + cloudAnchorId + " of scene " + shortCode, error);
+          }
+        });
+  }
+
+  /** Has the database delete {@code path} when this client loses its connection. */
+  public void removeOnDisconnect(String path) {
+    rootRef.child(path).onDisconnect().removeValue();
+  }
+
+  /** Registry of the value listeners attached by this manager. */
+  public SubscriptionRegistry getSubscriptions() {
+    return subscriptions;
+  }
+
+  /**
+   * Writes the given nodes of the scene, plus any scene fields that changed, as one multi-path
+   * update. Nodes whose state equals the last synced state are left out, so the size of the write
+   * depends on the number of edited nodes and not on the size of the scene. {@code changedAtNanos}
+   * is the {@link System#nanoTime()} of the earliest change in this update.
+   */
+  public void updateNodeData(
+      int shortCode, SceneData sceneData, long changedAtNanos, int... indices) {
+    trace.begin(TRACE_UPDATE);
+    Map<String, Object> delta = deltaTracker.collect(shortCode, sceneData, indices);
+    if (delta.isEmpty()) {
+      trace.end(TRACE_UPDATE);
+      return;
+    }
+
+    Map<String, Object> updates = toDatabaseUpdates(KEY_PREFIX + shortCode + "/", delta, sceneData);
+    writeBytes.record(estimateSize(updates));
+    rootRef.updateChildren(
+        updates,
+        (error, ref) -> {
+          trace.instant(TRACE_UPDATE_ACK, shortCode);
+          writeAckLatency.record(
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - changedAtNanos));
+          if (error != null) {
+            writeErrors.increment();
+            Log.e(TAG, "Firebase Error while updating scene " + shortCode, error.toException());
+            // send the failed parts again with the next update
+            for (int index : indices) {
+              deltaTracker.invalidate(index);
+            }
+            deltaTracker.invalidateSceneFields();
+          }
+        });
+    trace.end(TRACE_UPDATE);
+  }
+
+  /**
+   * Approximates the number of bytes a value takes on the wire: its keys and strings plus 8 bytes
+   * per number.
+   */
+  private static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return ((String) value).length();
+    }
+    if (value instanceof Map) {
+      long size = 0;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        size += entry.getKey().toString().length() + estimateSize(entry.getValue());
+      }
+      return size;
+    }
+    return 8;
+  }
+
+  /** Converts a scene into the value written for the current {@link SceneEncoding}. */
+  private Object toDatabaseValue(SceneData sceneData) {
+    if (sceneEncoding == SceneEncoding.POJO) {
+      return SceneDataMapper.toValue(sceneData);
+    }
+
+    Map<String, Object> value = new HashMap<>();
+    value.put(SceneDeltaTracker.PATH_CLOUD_ANCHOR_ID, sceneData.getCloudAnchorId());
+    value.put(SceneDeltaTracker.PATH_INDEX, sceneData.getIndex());
+    if (sceneEncoding == SceneEncoding.BLOB) {
+      value.put(KEY_BLOB, sceneCodec.encodeSceneToString(sceneData));
+    } else {
+      Map<String, Object> nodeBlobs = new HashMap<>();
+      NodeTable nodes = sceneData.nodes();
+      for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+        int index = nodes.indexAt(slot);
+        if (index == NodeTable.NO_INDEX) {
+          continue;
+        }
+        nodes.getTransform(slot, transformScratch);
+        nodeBlobs.put(
+            SceneData.keyOf(index),
+            SceneCodec.toBase64(sceneCodec.encodeTransform(transformScratch, nodes.getModel(slot))));
+      }
+      value.put(KEY_NODE_BLOBS, nodeBlobs);
+    }
+    return value;
+  }
+
+  /**
+   * Converts the relative updates of a {@link SceneDeltaTracker} into absolute database updates for
+   * the current {@link SceneEncoding}.
+   */
+  private Map<String, Object> toDatabaseUpdates(
+      String scenePath, Map<String, Object> delta, SceneData sceneData) {
+    Map<String, Object> updates = new HashMap<>();
+    boolean nodesChanged = false;
+    for (Map.Entry<String, Object> entry : delta.entrySet()) {
+      String path = entry.getKey();
+      if (!path.startsWith(SceneDeltaTracker.PATH_NODE_DATA_MAP)) {
+        updates.put(scenePath + path, entry.getValue());
+      } else if (sceneEncoding == SceneEncoding.POJO) {
+        NodeData nodeData = (NodeData) entry.getValue();
+        updates.put(scenePath + path, nodeData == null ? null : NodeDataMapper.toValue(nodeData));
+      } else if (sceneEncoding == SceneEncoding.NODE_BLOBS) {
+        String key = path.substring(SceneDeltaTracker.PATH_NODE_DATA_MAP.length());
+        updates.put(
+            scenePath + KEY_NODE_BLOBS + "/" + key,
+            sceneCodec.encodeNodeToString((NodeData) entry.getValue()));
+      } else {
+        nodesChanged = true;
+      }
+    }
+    if (nodesChanged) {
+      // a single blob can only be replaced as a whole
+      updates.put(scenePath + KEY_BLOB, sceneCodec.encodeSceneToString(sceneData));
+    }
+    return updates;
+  }
+
+  /**
+   * Reads a scene that was written in any of the {@link SceneEncoding} formats from the plain value
+   * of its snapshot, or returns null if there is no such scene. Does not use the reflective class
+   * mapping of Firebase and can run on any thread.
+   */
+  private SceneData decodeScene(Object value) {
+    trace.begin(TRACE_DECODE);
+    try {
+      return decodeSceneFormat(value);
+    } finally {
+      trace.end(TRACE_DECODE);
+    }
+  }
+
+  private SceneData decodeSceneFormat(Object value) {
+    if (!(value instanceof Map)) {
+      return null;
+    }
+    Map<?, ?> scene = (Map<?, ?>) value;
+    Object blob = scene.get(KEY_BLOB);
+    if (blob instanceof String) {
+      return sceneCodec.decodeScene((String) blob);
+    }
+
+    // the scene fields of the NODE_BLOBS format are the ones of POJO
+    SceneData sceneData = SceneDataMapper.fromValue(scene);
+    Object nodeBlobs = scene.get(KEY_NODE_BLOBS);
+    if (!(nodeBlobs instanceof Map)) {
+      return sceneData;
+    }
+    float[] transform = new float[NodeData.TRANSFORM_SIZE];
+    for (Map.Entry<?, ?> node : ((Map<?, ?>) nodeBlobs).entrySet()) {
+      String model =
+          SceneCodec.decodeTransform(SceneCodec.fromBase64((String) node.getValue()), transform);
+      int nodeIndex = SceneData.indexOf(node.getKey().toString());
+      sceneData.setTransform(nodeIndex, transform);
+      sceneData.setModel(nodeIndex, model);
+    }
+    return sceneData;
+  }
+
+  // SceneStore, on the Firebase Realtime Database
+
+  @Override
+  public void increment(String path, long delta, long initialValue, CounterListener listener) {
     rootRef
-        .child(KEY_NEXT_SHORT_CODE)
+        .child(path)
         .runTransaction(
             new Transaction.Handler() {
               @Override
               public Transaction.Result doTransaction(MutableData currentData) {
-                Integer shortCode = currentData.getValue(Integer.class);
-                if (shortCode == null) {
-                  // Set the initial short code if one did not exist before.
-                  shortCode = INITIAL_SHORT_CODE - 1;
-                }
-                currentData.setValue(shortCode + 1);
+                Long value = currentData.getValue(Long.class);
+                currentData.setValue((value == null ? initialValue : value) + delta);
                 return Transaction.success(currentData);
               }
 
@@ -87,69 +580,97 @@ public class FirebaseManager {
               public void onComplete(
                   DatabaseError error, boolean committed, DataSnapshot currentData) {
                 if (!committed) {
-                  Log.e(TAG, "Firebase Error", error.toException());
-                  listener.onShortCodeAvailable(null);
+                  listener.onComplete(
+                      null,
+                      error == null
+                          ? new IllegalStateException("Transaction on " + path + " was aborted")
+                          : error.toException());
                 } else {
-                  listener.onShortCodeAvailable(currentData.getValue(Integer.class));
+                  listener.onComplete(currentData.getValue(Long.class), null);
                 }
               }
             });
   }
 
-  /** Stores the cloud anchor ID in the configured Firebase Database. */
-  public void storeUsingShortCode(int shortCode, SceneData sceneData) {
-    rootRef.child(KEY_PREFIX + shortCode).setValue(sceneData);
+  @Override
+  public void set(String path, Object value, CompletionListener listener) {
+    rootRef
+        .child(path)
+        .setValue(
+            value,
+            (error, ref) -> {
+              if (listener != null) {
+                listener.onComplete(error == null ? null : error.toException());
+              }
+            });
+  }
+
+  @Override
+  public void update(Map<String, Object> updates, CompletionListener listener) {
+    rootRef.updateChildren(
+        updates,
+        (error, ref) -> {
+          if (listener != null) {
+            listener.onComplete(error == null ? null : error.toException());
+          }
+        });
+  }
+
+  @Override
+  public void read(String path, ValueListener listener) {
+    rootRef.child(path).addListenerForSingleValueEvent(toFirebaseListener(listener));
   }
 
   /**
-   * Retrieves the cloud anchor ID using a short code. Returns an empty string if a cloud anchor ID
-   * was not stored for this short code.
+   * Reads a page of children ordered by key. The database can only start a range at a key, so the
+   * page is read with one more child, which is dropped if it is {@code startAfter}.
    */
-  public void getCloudAnchorId(int shortCode, CloudAnchorIdListener listener) {
-        anchorRef = rootRef.child(KEY_PREFIX + shortCode);
-        anchorRef.addListenerForSingleValueEvent(
-              new ValueEventListener() {
-                  @Override
-                  public void onDataChange(DataSnapshot dataSnapshot) {
-                      // Listener invoked when the data is successfully read from Firebase.
-                      SceneData sceneData = dataSnapshot.getValue(SceneData.class);
-                      listener.onCloudAnchorIdAvailable(sceneData.getCloudAnchorId());
-
-                      Log.e("CLOUDID_NULL", "getCloudAnchorId(): "+sceneData.getCloudAnchorId());
-                      activity.setSceneData(sceneData);
-                  }
-
-                  @Override
-                  public void onCancelled(DatabaseError error) {
-                      Log.e(
-                              TAG,
-                              "The Firebase operation for getCloudAnchorId was cancelled.",
-                              error.toException());
-                      listener.onCloudAnchorIdAvailable(null);
-                  }
-              });
-        anchorRef.addValueEventListener(new ValueEventListener() {
+  @Override
+  public void readRange(String path, String startAfter, int limit, ValueListener listener) {
+    Query query = rootRef.child(path).orderByKey();
+    if (startAfter != null) {
+      query = query.startAt(startAfter).limitToFirst(limit + 1);
+    } else {
+      query = query.limitToFirst(limit);
+    }
+    query.addListenerForSingleValueEvent(
+        new ValueEventListener() {
           @Override
           public void onDataChange(DataSnapshot dataSnapshot) {
-              SceneData sceneData = dataSnapshot.getValue(SceneData.class);
-              Log.e("CLOUDID_NULL", "anchorRef.addValueEventListener: "+sceneData.getCloudAnchorId());
-              activity.setSceneData(sceneData);
+            Map<String, Object> page = new LinkedHashMap<>();
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
+              if (page.size() < limit && !child.getKey().equals(startAfter)) {
+                page.put(child.getKey(), child.getValue());
+              }
+            }
+            listener.onValue(page.isEmpty() ? null : page);
           }
 
           @Override
-          public void onCancelled(DatabaseError databaseError) {
-              System.out.println("The read failed: " + databaseError.getCode());
+          public void onCancelled(DatabaseError error) {
+            listener.onError(error.toException());
           }
-      });
+        });
+  }
 
+  @Override
+  public Subscription subscribe(String path, ValueListener listener) {
+    DatabaseReference ref = rootRef.child(path);
+    ValueEventListener firebaseListener = ref.addValueEventListener(toFirebaseListener(listener));
+    return () -> ref.removeEventListener(firebaseListener);
   }
 
-  public void updateSceneData(int shortCode, SceneData sceneData){
-      Log.e("UPDATE", "called"+shortCode);
-      Log.e("CLOUDID_NULL", "updateSceneData: "+sceneData.getCloudAnchorId());
+  private static ValueEventListener toFirebaseListener(ValueListener listener) {
+    return new ValueEventListener() {
+      @Override
+      public void onDataChange(DataSnapshot dataSnapshot) {
+        listener.onValue(dataSnapshot.getValue());
+      }
 
-      Map<String, Object> updates = new HashMap<>();
-      updates.put(KEY_PREFIX + shortCode, sceneData);
-      rootRef.updateChildren(updates);
+      @Override
+      public void onCancelled(DatabaseError error) {
+        listener.onError(error.toException());
+      }
+    };
   }
 }
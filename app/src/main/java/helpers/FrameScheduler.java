@@ -0,0 +1,268 @@
+package helpers;
+
+import com.android.vrproject.IntIntMap;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs queued work on the main thread a little at a time, so that large amounts of work, like
+ * building the nodes of a scene, do not stall rendering.
+ *
+ * <p>Work items are identified by a non-negative key, e.g. the index of an object, and run by the
+ * {@link Worker} of the scheduler. Items with a lower priority value run first. Scheduling a key
+ * that is queued already only updates its priority. If a {@link Prioritizer} is set, the priorities
+ * of all queued items are computed again at the start of every frame, e.g. from the distance to the
+ * camera, which moves.
+ *
+ * <p>{@link #runFrame()} is meant to run on every frame. It runs items until the frame budget is
+ * spent, but at least one, so that the queue always drains. The budget includes computing the
+ * priorities. A frame that took longer than the budget counts as an overrun. Neither scheduling nor
+ * running allocates once the queue has grown to its largest size, however large the keys are.
+ *
+ * <p>Not thread safe, must only be used from the main thread.
+ */
+public class FrameScheduler {
+
+  /** Runs one work item. */
+  public interface Worker {
+    void run(int key);
+  }
+
+  /** Computes the priority of a queued item; lower values run first. */
+  public interface Prioritizer {
+    float priorityOf(int key);
+  }
+
+  private static final int NOT_QUEUED = -1;
+
+  private final Worker worker;
+  private final LongSupplier nanoClock;
+  private long budgetNanos;
+  private Prioritizer prioritizer;
+
+  /* binary min heap of the queued keys by priority, plus the heap position of every queued key */
+  private int[] heapKeys = new int[16];
+  private float[] heapPriorities = new float[16];
+  private int size = 0;
+  private final IntIntMap positions = new IntIntMap(NOT_QUEUED);
+
+  private long scheduledCount = 0;
+  private long runCount = 0;
+  private long cancelledCount = 0;
+  private long frameCount = 0;
+  private long overrunCount = 0;
+  private long maxFrameNanos = 0;
+  private long totalOverrunNanos = 0;
+  private int maxQueueDepth = 0;
+
+  /** Creates a scheduler that runs items with {@code worker} for {@code budgetNanos} per frame. */
+  public FrameScheduler(long budgetNanos, Worker worker) {
+    this(budgetNanos, worker, System::nanoTime);
+  }
+
+  FrameScheduler(long budgetNanos, Worker worker, LongSupplier nanoClock) {
+    this.budgetNanos = budgetNanos;
+    this.worker = worker;
+    this.nanoClock = nanoClock;
+  }
+
+  public void setBudgetNanos(long budgetNanos) {
+    this.budgetNanos = budgetNanos;
+  }
+
+  public long getBudgetNanos() {
+    return budgetNanos;
+  }
+
+  /** Computes the priorities of all queued items at the start of every frame; null turns it off. */
+  public void setPrioritizer(Prioritizer prioritizer) {
+    this.prioritizer = prioritizer;
+  }
+
+  /** Queues {@code key} with {@code priority}, or changes its priority if it is queued already. */
+  public void schedule(int key, float priority) {
+    if (key < 0) {
+      throw new IllegalArgumentException("key must not be negative: " + key);
+    }
+
+    int position = positions.get(key);
+    if (position != NOT_QUEUED) {
+      float old = heapPriorities[position];
+      heapPriorities[position] = priority;
+      if (priority < old) {
+        siftUp(position);
+      } else {
+        siftDown(position);
+      }
+      return;
+    }
+
+    if (size == heapKeys.length) {
+      heapKeys = Arrays.copyOf(heapKeys, size * 2);
+      heapPriorities = Arrays.copyOf(heapPriorities, size * 2);
+    }
+    heapKeys[size] = key;
+    heapPriorities[size] = priority;
+    positions.put(key, size);
+    size++;
+    siftUp(size - 1);
+
+    scheduledCount++;
+    maxQueueDepth = Math.max(maxQueueDepth, size);
+  }
+
+  /** Removes {@code key} from the queue. Returns false if it was not queued. */
+  public boolean cancel(int key) {
+    if (!isQueued(key)) {
+      return false;
+    }
+    removeAt(positions.get(key));
+    cancelledCount++;
+    return true;
+  }
+
+  public boolean isQueued(int key) {
+    return positions.containsKey(key);
+  }
+
+  /** Drops all queued items. */
+  public void clear() {
+    positions.clear();
+    cancelledCount += size;
+    size = 0;
+  }
+
+  /**
+   * Runs queued items, the lowest priority value first, until the frame budget is spent or the
+   * queue is empty. Items may schedule or cancel other items.
+   */
+  public void runFrame() {
+    if (size == 0) {
+      return;
+    }
+
+    long startNanos = nanoClock.getAsLong();
+    if (prioritizer != null) {
+      for (int i = 0; i < size; i++) {
+        heapPriorities[i] = prioritizer.priorityOf(heapKeys[i]);
+      }
+      for (int i = size / 2 - 1; i >= 0; i--) {
+        siftDown(i);
+      }
+    }
+
+    long elapsedNanos = 0;
+    do {
+      int key = heapKeys[0];
+      removeAt(0);
+      runCount++;
+      worker.run(key);
+      elapsedNanos = nanoClock.getAsLong() - startNanos;
+    } while (size > 0 && elapsedNanos < budgetNanos);
+
+    frameCount++;
+    maxFrameNanos = Math.max(maxFrameNanos, elapsedNanos);
+    if (elapsedNanos > budgetNanos) {
+      overrunCount++;
+      totalOverrunNanos += elapsedNanos - budgetNanos;
+    }
+  }
+
+  /** Items waiting to run. */
+  public int getQueueDepth() {
+    return size;
+  }
+
+  /** The largest number of items that were waiting at the same time. */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  public long getScheduledCount() {
+    return scheduledCount;
+  }
+
+  public long getRunCount() {
+    return runCount;
+  }
+
+  public long getCancelledCount() {
+    return cancelledCount;
+  }
+
+  /** Frames in which items ran. */
+  public long getFrameCount() {
+    return frameCount;
+  }
+
+  /** Frames in which the items took longer than the budget. */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /** The time by which the overrunning frames exceeded the budget, summed up. */
+  public long getTotalOverrunNanos() {
+    return totalOverrunNanos;
+  }
+
+  /** The longest time the items of one frame took. */
+  public long getMaxFrameNanos() {
+    return maxFrameNanos;
+  }
+
+  private void removeAt(int position) {
+    positions.remove(heapKeys[position]);
+    size--;
+    if (position == size) {
+      return;
+    }
+    // the last item takes the free position and moves to where it belongs
+    heapKeys[position] = heapKeys[size];
+    heapPriorities[position] = heapPriorities[size];
+    positions.put(heapKeys[position], position);
+    siftDown(position);
+    siftUp(position);
+  }
+
+  private void siftUp(int position) {
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (heapPriorities[parent] <= heapPriorities[position]) {
+        return;
+      }
+      swap(position, parent);
+      position = parent;
+    }
+  }
+
+  private void siftDown(int position) {
+    while (true) {
+      int smallest = position;
+      int left = 2 * position + 1;
+      int right = left + 1;
+      if (left < size && heapPriorities[left] < heapPriorities[smallest]) {
+        smallest = left;
+      }
+      if (right < size && heapPriorities[right] < heapPriorities[smallest]) {
+        smallest = right;
+      }
+      if (smallest == position) {
+        return;
+      }
+      swap(position, smallest);
+      position = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    int key = heapKeys[a];
+    float priority = heapPriorities[a];
+    heapKeys[a] = heapKeys[b];
+    heapPriorities[a] = heapPriorities[b];
+    heapKeys[b] = key;
+    heapPriorities[b] = priority;
+    positions.put(heapKeys[a], a);
+    positions.put(heapKeys[b], b);
+  }
+}
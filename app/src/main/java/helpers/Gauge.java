@@ -0,0 +1,35 @@
+package helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A value that goes up and down. Either set explicitly, or read from a supplier whenever it is
+ * queried, so that values other classes already keep need no extra bookkeeping.
+ */
+public class Gauge {
+
+  private final AtomicLong value = new AtomicLong();
+  private final LongSupplier supplier;
+
+  /** A gauge that holds the last value passed to {@link #set}. */
+  public Gauge() {
+    this.supplier = null;
+  }
+
+  /** A gauge that reads its value from {@code supplier}. It cannot be set. */
+  public Gauge(LongSupplier supplier) {
+    this.supplier = supplier;
+  }
+
+  public void set(long value) {
+    if (supplier != null) {
+      throw new IllegalStateException("Gauge reads its value from a supplier");
+    }
+    this.value.set(value);
+  }
+
+  public long get() {
+    return supplier != null ? supplier.getAsLong() : value.get();
+  }
+}
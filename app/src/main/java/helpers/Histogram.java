@@ -0,0 +1,134 @@
+package helpers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values in fixed buckets. Recording does not allocate and does not lock, so it can
+ * be used on the frame loop.
+ *
+ * <p>Bucket {@code i} counts the values up to and including {@code bounds[i]} that are larger than
+ * the previous bound. One more bucket counts the values above the last bound. Percentiles are
+ * estimated as the upper bound of the bucket they fall into, so they are only as precise as the
+ * buckets.
+ */
+public class Histogram {
+
+  /** 50 microseconds up to about 1.6 seconds, for work on the main thread. */
+  public static final long[] MICROS_BOUNDS = exponentialBounds(50, 2, 16);
+
+  /** 5 milliseconds up to about 2.7 minutes, for network and cloud operations. */
+  public static final long[] MILLIS_BOUNDS = exponentialBounds(5, 2, 16);
+
+  /** 64 bytes up to 2 megabytes, for payload sizes. */
+  public static final long[] BYTES_BOUNDS = exponentialBounds(64, 2, 16);
+
+  private final long[] bounds;
+  private final AtomicLongArray buckets;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  /** Creates a histogram with the given ascending upper bucket bounds. */
+  public Histogram(long[] bounds) {
+    for (int i = 1; i < bounds.length; i++) {
+      if (bounds[i] <= bounds[i - 1]) {
+        throw new IllegalArgumentException("Bucket bounds must be ascending");
+      }
+    }
+    this.bounds = bounds.clone();
+    buckets = new AtomicLongArray(bounds.length + 1);
+  }
+
+  /** Returns {@code count} bounds starting at {@code first}, each {@code factor} times the last. */
+  public static long[] exponentialBounds(long first, double factor, int count) {
+    long[] bounds = new long[count];
+    double bound = first;
+    for (int i = 0; i < count; i++) {
+      bounds[i] = Math.round(bound);
+      bound *= factor;
+    }
+    return bounds;
+  }
+
+  public void record(long value) {
+    buckets.incrementAndGet(bucketOf(value));
+    count.increment();
+    sum.add(value);
+
+    long current = min.get();
+    while (value < current && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+    current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /** Smallest recorded value, 0 if nothing was recorded. */
+  public long getMin() {
+    return getCount() == 0 ? 0 : min.get();
+  }
+
+  /** Largest recorded value, 0 if nothing was recorded. */
+  public long getMax() {
+    return getCount() == 0 ? 0 : max.get();
+  }
+
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : getSum() / count;
+  }
+
+  /**
+   * Estimates the value below which {@code fraction} of the recorded values lie, e.g. 0.99 for the
+   * 99th percentile. The estimate never exceeds the largest recorded value.
+   */
+  public long getPercentile(double fraction) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * count));
+    long seen = 0;
+    for (int i = 0; i < bounds.length; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(bounds[i], getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /** Number of buckets, including the one above the last bound. */
+  public int getBucketCount() {
+    return bounds.length + 1;
+  }
+
+  /** Number of values recorded in {@code bucket}. */
+  public long getBucket(int bucket) {
+    return buckets.get(bucket);
+  }
+
+  /** Upper bound of {@code bucket}, {@link Long#MAX_VALUE} for the one above the last bound. */
+  public long getUpperBound(int bucket) {
+    return bucket < bounds.length ? bounds[bucket] : Long.MAX_VALUE;
+  }
+
+  private int bucketOf(long value) {
+    int i = Arrays.binarySearch(bounds, value);
+    return i >= 0 ? i : -i - 1;
+  }
+}
@@ -0,0 +1,238 @@
+package helpers;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneStore;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams the transforms of objects while they are being dragged, so that other users see the
+ * motion and not only its end.
+ *
+ * <p>The channel of a scene lives next to it at {@code live;<shortCode>}, with one child per client
+ * that holds the objects this client is dragging right now as quantized node blobs:
+ *
+ * <pre>
+ *   live;142/&lt;clientId&gt;/ID_3 = "AQE..."
+ * </pre>
+ *
+ * It is not part of the persisted scene: when a gesture ends, the client writes the final transform
+ * to the scene as usual and removes its entry from the channel.
+ *
+ * <p>{@link #offer} publishes at most one update per {@code minIntervalMillis} and object and skips
+ * transforms that did not change. The achieved rate and the bytes sent are reported per second of
+ * streaming, i.e. of time during which a gesture was running.
+ */
+public class LiveTransformChannel {
+
+  /** Receives the transforms other clients are streaming. */
+  public interface Listener {
+    /** {@code transform} is only valid during the call. */
+    void onLiveTransform(int index, float[] transform);
+  }
+
+  /** Counter of live updates sent. */
+  public static final String METRIC_UPDATES = "live.updates";
+
+  /** Counter of the bytes of all live updates sent, keys included. */
+  public static final String METRIC_BYTES = "live.bytes";
+
+  /** Histogram of the time between two live updates of the same gesture. */
+  public static final String METRIC_INTERVAL_MS = "live.interval_ms";
+
+  private static final String KEY_PREFIX = "live;";
+  private static final int NO_INDEX = -1;
+
+  private final SceneStore store;
+  private final String clientId;
+  private final long minIntervalMillis;
+  private final SceneCodec codec = new SceneCodec(true, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER);
+  private final float[] transformScratch = new float[NodeData.TRANSFORM_SIZE];
+
+  private final Counter updates;
+  private final Counter bytes;
+  private final Histogram intervals;
+
+  private int shortCode = 0;
+  private SceneStore.Subscription subscription;
+  /* blob of every entry of the other clients, by "<clientId>/<node key>", to report only changes */
+  private Map<String, String> received = new HashMap<>();
+
+  /* the gesture in progress, NO_INDEX if there is none */
+  private int streamingIndex = NO_INDEX;
+  private long streamingSinceMillis = 0;
+  private long lastSentMillis = 0;
+  private final float[] lastSent = new float[NodeData.TRANSFORM_SIZE];
+
+  private long gestureSentCount = 0;
+  private long gestureSentBytes = 0;
+
+  private long sentCount = 0;
+  private long sentBytes = 0;
+  private long skippedCount = 0;
+  /* totals of the finished gestures, for the rates */
+  private long streamingMillis = 0;
+  private long streamedCount = 0;
+  private long streamedBytes = 0;
+
+  /**
+   * Creates a channel on {@code store} that sends as {@code clientId}, at most one update every
+   * {@code minIntervalMillis}.
+   */
+  public LiveTransformChannel(
+      SceneStore store, String clientId, long minIntervalMillis, MetricsRegistry metrics) {
+    this.store = store;
+    this.clientId = clientId;
+    this.minIntervalMillis = minIntervalMillis;
+    updates = metrics.counter(METRIC_UPDATES);
+    bytes = metrics.counter(METRIC_BYTES);
+    intervals = metrics.histogram(METRIC_INTERVAL_MS, Histogram.MILLIS_BOUNDS);
+  }
+
+  /**
+   * Starts receiving the live transforms of the scene of {@code shortCode}, and sending to it.
+   * Closes the channel of any other scene.
+   */
+  public void open(int shortCode, Listener listener) {
+    close();
+    this.shortCode = shortCode;
+    subscription =
+        store.subscribe(
+            KEY_PREFIX + shortCode,
+            new SceneStore.ValueListener() {
+              @Override
+              public void onValue(Object value) {
+                onChannelChanged(value, listener);
+              }
+
+              @Override
+              public void onError(Exception error) {
+                // the scene itself still syncs, only the motion is not shown
+              }
+            });
+  }
+
+  /** Ends the gesture in progress and stops receiving. */
+  public void close() {
+    if (streamingIndex != NO_INDEX) {
+      end(streamingIndex, lastSentMillis);
+    }
+    if (subscription != null) {
+      subscription.cancel();
+      subscription = null;
+    }
+    received = new HashMap<>();
+    shortCode = 0;
+  }
+
+  /** The path this client streams to, e.g. to have the database remove it on disconnect. */
+  public String getOwnPath() {
+    return KEY_PREFIX + shortCode + "/" + clientId;
+  }
+
+  /**
+   * Offers the current transform of the object {@code index} that is being dragged. Sends it if
+   * the last update is at least {@code minIntervalMillis} ago and the transform changed.
+   */
+  public void offer(int index, float[] transform, long nowMillis) {
+    if (shortCode == 0) {
+      return;
+    }
+    if (index != streamingIndex) {
+      if (streamingIndex != NO_INDEX) {
+        end(streamingIndex, nowMillis);
+      }
+      streamingIndex = index;
+      streamingSinceMillis = nowMillis;
+    } else if (nowMillis - lastSentMillis < minIntervalMillis
+        || Arrays.equals(transform, lastSent)) {
+      skippedCount++;
+      return;
+    } else {
+      intervals.record(nowMillis - lastSentMillis);
+    }
+
+    String key = SceneData.keyOf(index);
+    String blob = SceneCodec.toBase64(codec.encodeTransform(transform));
+    store.set(getOwnPath() + "/" + key, blob, null);
+
+    System.arraycopy(transform, 0, lastSent, 0, lastSent.length);
+    lastSentMillis = nowMillis;
+    gestureSentCount++;
+    gestureSentBytes += key.length() + blob.length();
+    sentCount++;
+    sentBytes += key.length() + blob.length();
+    updates.increment();
+    bytes.add(key.length() + blob.length());
+  }
+
+  /**
+   * Ends the gesture on the object {@code index}. Its final transform has to be written to the scene
+   * by the caller.
+   */
+  public void end(int index, long nowMillis) {
+    if (index != streamingIndex) {
+      return;
+    }
+    store.set(getOwnPath() + "/" + SceneData.keyOf(index), null, null);
+    streamingMillis += Math.max(0, nowMillis - streamingSinceMillis);
+    streamedCount += gestureSentCount;
+    streamedBytes += gestureSentBytes;
+    gestureSentCount = 0;
+    gestureSentBytes = 0;
+    streamingIndex = NO_INDEX;
+  }
+
+  public boolean isStreaming() {
+    return streamingIndex != NO_INDEX;
+  }
+
+  public long getSentCount() {
+    return sentCount;
+  }
+
+  public long getSentBytes() {
+    return sentBytes;
+  }
+
+  /** Offers that were not sent because of the rate limit or because nothing changed. */
+  public long getSkippedCount() {
+    return skippedCount;
+  }
+
+  /** Updates sent per second of streaming, over all finished gestures. */
+  public double getUpdateRate() {
+    return streamingMillis == 0 ? 0 : streamedCount * 1000.0 / streamingMillis;
+  }
+
+  /** Bytes sent per second of streaming, over all finished gestures. */
+  public double getBytesPerSecond() {
+    return streamingMillis == 0 ? 0 : streamedBytes * 1000.0 / streamingMillis;
+  }
+
+  private void onChannelChanged(Object value, Listener listener) {
+    Map<String, String> current = new HashMap<>();
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> client : ((Map<?, ?>) value).entrySet()) {
+        if (clientId.equals(client.getKey()) || !(client.getValue() instanceof Map)) {
+          continue;
+        }
+        for (Map.Entry<?, ?> node : ((Map<?, ?>) client.getValue()).entrySet()) {
+          String key = client.getKey() + "/" + node.getKey();
+          String blob = String.valueOf(node.getValue());
+          current.put(key, blob);
+          if (blob.equals(received.get(key))) {
+            continue;
+          }
+          SceneCodec.decodeTransform(SceneCodec.fromBase64(blob), transformScratch);
+          listener.onLiveTransform(SceneData.indexOf(node.getKey().toString()), transformScratch);
+        }
+      }
+    }
+    received = current;
+  }
+}
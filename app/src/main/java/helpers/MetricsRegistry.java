@@ -0,0 +1,85 @@
+package helpers;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and histograms of the app.
+ *
+ * <p>Metrics are created on first use and the same instance is returned for the same name
+ * afterwards, so callers should look them up once and keep the reference. Updating a metric does
+ * not touch the registry. Names carry their unit as a suffix, e.g. {@code frame.update_us}.
+ *
+ * <p>The registry does not depend on Android and can be used in plain JVM unit tests.
+ */
+public class MetricsRegistry {
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  public Counter counter(String name) {
+    return counters.computeIfAbsent(name, ignored -> new Counter());
+  }
+
+  /** Returns the gauge of {@code name}, creating one that holds a set value. */
+  public Gauge gauge(String name) {
+    return gauges.computeIfAbsent(name, ignored -> new Gauge());
+  }
+
+  /** Registers a gauge that reads {@code supplier}, replacing any gauge of the same name. */
+  public Gauge gauge(String name, LongSupplier supplier) {
+    Gauge gauge = new Gauge(supplier);
+    gauges.put(name, gauge);
+    return gauge;
+  }
+
+  /**
+   * Returns the histogram of {@code name}, creating it with {@code bounds}. The bounds of an
+   * existing histogram are not changed.
+   */
+  public Histogram histogram(String name, long[] bounds) {
+    return histograms.computeIfAbsent(name, ignored -> new Histogram(bounds));
+  }
+
+  /** The counter of {@code name}, or null if it was never created. */
+  public Counter getCounter(String name) {
+    return counters.get(name);
+  }
+
+  /** The gauge of {@code name}, or null if it was never created. */
+  public Gauge getGauge(String name) {
+    return gauges.get(name);
+  }
+
+  /** The histogram of {@code name}, or null if it was never created. */
+  public Histogram getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /** Writes all metrics as text, one per line, sorted by name within each kind. */
+  public String dump() {
+    StringBuilder out = new StringBuilder();
+    for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+      out.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+    }
+    for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+      out.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+      Histogram histogram = entry.getValue();
+      out.append(entry.getKey())
+          .append(" count=").append(histogram.getCount())
+          .append(" mean=").append(histogram.getMean())
+          .append(" min=").append(histogram.getMin())
+          .append(" p50=").append(histogram.getPercentile(0.5))
+          .append(" p90=").append(histogram.getPercentile(0.9))
+          .append(" p99=").append(histogram.getPercentile(0.99))
+          .append(" max=").append(histogram.getMax())
+          .append('\n');
+    }
+    return out.toString();
+  }
+}
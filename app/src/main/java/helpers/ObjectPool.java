@@ -0,0 +1,98 @@
+package helpers;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps released objects for reuse, so that objects which are expensive to create, like scene
+ * nodes, are not thrown away and created again every time a scene is cleared and rebuilt.
+ *
+ * <p>{@link #release} resets the object with the recycler and keeps it, unless {@code maxIdle}
+ * objects are kept already; then it is left to the garbage collector. {@link #acquire} returns the
+ * most recently released object, or a new one from the factory if there is none. Neither allocates
+ * besides what the factory does.
+ *
+ * <p>Not thread safe, the app uses its pools on the main thread only.
+ *
+ * @param <T> the pooled type
+ */
+public class ObjectPool<T> {
+
+  private final Supplier<T> factory;
+  private final Consumer<T> recycler;
+  private final Object[] idle;
+  private int idleCount = 0;
+
+  private long createdCount = 0;
+  private long reusedCount = 0;
+  private long discardedCount = 0;
+
+  /**
+   * Creates a pool that keeps at most {@code maxIdle} objects. {@code recycler} resets an object
+   * when it is released, e.g. detaches it from its parent.
+   */
+  public ObjectPool(int maxIdle, Supplier<T> factory, Consumer<T> recycler) {
+    this.factory = factory;
+    this.recycler = recycler;
+    idle = new Object[maxIdle];
+  }
+
+  /** Returns an idle object, or a new one if there is none. */
+  @SuppressWarnings("unchecked")
+  public T acquire() {
+    if (idleCount == 0) {
+      createdCount++;
+      return factory.get();
+    }
+    reusedCount++;
+    T object = (T) idle[--idleCount];
+    idle[idleCount] = null;
+    return object;
+  }
+
+  /** Resets {@code object} and keeps it for reuse. It must not be used by the caller afterwards. */
+  public void release(T object) {
+    recycler.accept(object);
+    if (idleCount == idle.length) {
+      discardedCount++;
+      return;
+    }
+    idle[idleCount++] = object;
+  }
+
+  /** Creates objects until {@code count} are idle, e.g. before a large scene is built. */
+  public void prewarm(int count) {
+    while (idleCount < Math.min(count, idle.length)) {
+      createdCount++;
+      idle[idleCount++] = factory.get();
+    }
+  }
+
+  /** Objects that are idle in the pool right now. */
+  public int getIdleCount() {
+    return idleCount;
+  }
+
+  public int getMaxIdle() {
+    return idle.length;
+  }
+
+  public long getCreatedCount() {
+    return createdCount;
+  }
+
+  public long getReusedCount() {
+    return reusedCount;
+  }
+
+  /** Released objects that were not kept because the pool was full. */
+  public long getDiscardedCount() {
+    return discardedCount;
+  }
+
+  /** The share of acquires that were served by an idle object, between 0 and 1. */
+  public double getReuseRate() {
+    long acquired = reusedCount + createdCount;
+    return acquired == 0 ? 0 : (double) reusedCount / acquired;
+  }
+}
@@ -0,0 +1,308 @@
+package helpers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps pending cloud anchor operations in fixed-capacity arrays and reports the ones that have
+ * finished or passed their deadline.
+ *
+ * <p>{@link #poll()} is meant to run on every frame. It returns right away without allocating if
+ * nothing is pending. Callbacks of finished operations are invoked after the scan, outside of the
+ * lock, so they may add operations or call {@link #clear()}. After a {@link #clear()}, the
+ * operations that were collected in the same poll are reported through {@link
+ * Callback#onCleared} instead.
+ *
+ * @param <A> the anchor type; {@link com.google.ar.core.Anchor} in the app
+ */
+class PendingAnchorTracker<A> {
+
+  /** Deadline of operations that never time out. */
+  static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  /** Access to the state of an anchor, so the tracker can run without a live ARCore session. */
+  interface AnchorOps<A> {
+
+    /** Whether the cloud operation of the anchor has finished. */
+    boolean isDone(A anchor);
+
+    /** Null if the finished operation succeeded, otherwise the exception describing the error. */
+    Exception failureOf(A anchor);
+
+    /** Stops tracking the anchor and releases its resources. */
+    void detach(A anchor);
+  }
+
+  /** Receives the outcome of one pending operation. */
+  interface Callback<A> {
+
+    /** The operation finished, successfully or not. */
+    void onComplete(A anchor);
+
+    /** The operation did not finish before its deadline. It is no longer pending. */
+    void onTimeout(A anchor);
+
+    /** The operation was dropped by {@link #clear()}. */
+    void onCleared(A anchor);
+  }
+
+  private final AnchorOps<A> ops;
+  private final LongSupplier nanoClock;
+
+  private final Object[] anchors;
+  private final Object[] callbacks;
+  private final long[] deadlines;
+  private volatile int count = 0;
+
+  /* operations that finished during the current poll, dispatched once the scan is done */
+  private final Object[] doneAnchors;
+  private final Object[] doneCallbacks;
+  private final boolean[] doneTimedOut;
+
+  /* incremented by clear(), so that a running dispatch can tell it was cleared */
+  private int generation = 0;
+
+  private volatile long lastPollNanos = 0;
+  private long maxPollNanos = 0;
+  private long totalPollNanos = 0;
+  private long pollCount = 0;
+
+  PendingAnchorTracker(int capacity, AnchorOps<A> ops) {
+    this(capacity, ops, System::nanoTime);
+  }
+
+  PendingAnchorTracker(int capacity, AnchorOps<A> ops, LongSupplier nanoClock) {
+    this.ops = ops;
+    this.nanoClock = nanoClock;
+    anchors = new Object[capacity];
+    callbacks = new Object[capacity];
+    deadlines = new long[capacity];
+    doneAnchors = new Object[capacity];
+    doneCallbacks = new Object[capacity];
+    doneTimedOut = new boolean[capacity];
+  }
+
+  /**
+   * Adds a pending operation that ends at {@code deadlineNanos} on the tracker's clock, or never
+   * for {@link #NO_DEADLINE}. Throws if the capacity is exhausted.
+   */
+  void add(A anchor, Callback<A> callback, long deadlineNanos) {
+    if (!tryAdd(anchor, callback, deadlineNanos)) {
+      throw capacityExceeded();
+    }
+  }
+
+  /**
+   * Adds a pending operation and returns a future for it. The future completes with the anchor
+   * when the operation succeeds, and fails with the exception of {@link AnchorOps#failureOf} or a
+   * {@link TimeoutException} otherwise. Cancelling the future stops the operation. Unless the
+   * future completes successfully, the anchor is detached. If the capacity is exhausted, the future
+   * fails with an {@link IllegalStateException} right away.
+   */
+  CompletableFuture<A> track(A anchor, long timeoutNanos) {
+    CompletableFuture<A> future = new CompletableFuture<>();
+    long deadline = timeoutNanos == NO_DEADLINE ? NO_DEADLINE : nanoClock.getAsLong() + timeoutNanos;
+    if (!tryAdd(anchor, new FutureCallback<>(future, ops), deadline)) {
+      // the anchor was created for this operation, nothing else would detach it
+      ops.detach(anchor);
+      future.completeExceptionally(capacityExceeded());
+      return future;
+    }
+
+    future.whenComplete(
+        (result, error) -> {
+          if (future.isCancelled() && remove(anchor)) {
+            ops.detach(anchor);
+          }
+        });
+    return future;
+  }
+
+  /**
+   * Removes the pending operation of {@code anchor} without invoking its callback. Returns false
+   * if it is not pending.
+   */
+  synchronized boolean remove(A anchor) {
+    for (int i = 0; i < count; i++) {
+      if (anchors[i] == anchor) {
+        removeAt(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Drops all pending operations and notifies their callbacks through {@link Callback#onCleared}. */
+  @SuppressWarnings("unchecked")
+  void clear() {
+    Object[] clearedAnchors;
+    Object[] clearedCallbacks;
+    synchronized (this) {
+      clearedAnchors = new Object[count];
+      clearedCallbacks = new Object[count];
+      for (int i = 0; i < count; i++) {
+        clearedAnchors[i] = anchors[i];
+        clearedCallbacks[i] = callbacks[i];
+        anchors[i] = null;
+        callbacks[i] = null;
+      }
+      count = 0;
+      generation++;
+    }
+    for (int i = 0; i < clearedAnchors.length; i++) {
+      ((Callback<A>) clearedCallbacks[i]).onCleared((A) clearedAnchors[i]);
+    }
+  }
+
+  /**
+   * Checks all pending operations and invokes the callbacks of the ones that finished or passed
+   * their deadline.
+   */
+  @SuppressWarnings("unchecked")
+  void poll() {
+    if (count == 0) {
+      lastPollNanos = 0;
+      return;
+    }
+    long start = System.nanoTime();
+    long now = nanoClock.getAsLong();
+
+    int doneCount = 0;
+    int pollGeneration;
+    synchronized (this) {
+      pollGeneration = generation;
+      int i = 0;
+      while (i < count) {
+        A anchor = (A) anchors[i];
+        boolean done = ops.isDone(anchor);
+        if (done || now >= deadlines[i]) {
+          doneAnchors[doneCount] = anchor;
+          doneCallbacks[doneCount] = callbacks[i];
+          doneTimedOut[doneCount] = !done;
+          doneCount++;
+          removeAt(i);
+        } else {
+          i++;
+        }
+      }
+    }
+
+    for (int i = 0; i < doneCount; i++) {
+      A anchor = (A) doneAnchors[i];
+      Callback<A> callback = (Callback<A>) doneCallbacks[i];
+      doneAnchors[i] = null;
+      doneCallbacks[i] = null;
+      if (!isCurrentGeneration(pollGeneration)) {
+        // cleared by an earlier callback of this poll
+        callback.onCleared(anchor);
+      } else if (doneTimedOut[i]) {
+        callback.onTimeout(anchor);
+      } else {
+        callback.onComplete(anchor);
+      }
+    }
+
+    recordPoll(System.nanoTime() - start);
+  }
+
+  int getPendingCount() {
+    return count;
+  }
+
+  /** Number of operations that can be added before the capacity is exhausted. */
+  synchronized int getRemainingCapacity() {
+    return anchors.length - count;
+  }
+
+  /** The exception of an operation that was rejected because the capacity is exhausted. */
+  IllegalStateException capacityExceeded() {
+    return new IllegalStateException(
+        "Too many pending cloud anchor operations, capacity is " + anchors.length);
+  }
+
+  /** Time the last poll took, including callbacks. 0 if nothing was pending. */
+  long getLastPollNanos() {
+    return lastPollNanos;
+  }
+
+  synchronized long getMaxPollNanos() {
+    return maxPollNanos;
+  }
+
+  /** Average time of the polls that had pending operations. */
+  synchronized long getAveragePollNanos() {
+    return pollCount == 0 ? 0 : totalPollNanos / pollCount;
+  }
+
+  private synchronized boolean tryAdd(A anchor, Callback<A> callback, long deadlineNanos) {
+    if (count == anchors.length) {
+      return false;
+    }
+    anchors[count] = anchor;
+    callbacks[count] = callback;
+    deadlines[count] = deadlineNanos;
+    count++;
+    return true;
+  }
+
+  private synchronized boolean isCurrentGeneration(int pollGeneration) {
+    return generation == pollGeneration;
+  }
+
+  private synchronized void recordPoll(long nanos) {
+    lastPollNanos = nanos;
+    maxPollNanos = Math.max(maxPollNanos, nanos);
+    totalPollNanos += nanos;
+    pollCount++;
+  }
+
+  /** Moves the last operation into slot {@code i}. Order of pending operations is not kept. */
+  private void removeAt(int i) {
+    int last = count - 1;
+    anchors[i] = anchors[last];
+    callbacks[i] = callbacks[last];
+    deadlines[i] = deadlines[last];
+    anchors[last] = null;
+    callbacks[last] = null;
+    count = last;
+  }
+
+  /** Completes a future with the outcome of its operation. */
+  private static class FutureCallback<A> implements Callback<A> {
+    private final CompletableFuture<A> future;
+    private final AnchorOps<A> ops;
+
+    FutureCallback(CompletableFuture<A> future, AnchorOps<A> ops) {
+      this.future = future;
+      this.ops = ops;
+    }
+
+    @Override
+    public void onComplete(A anchor) {
+      Exception failure = ops.failureOf(anchor);
+      if (failure == null) {
+        if (!future.complete(anchor)) {
+          // completed from elsewhere in the meantime, nobody will use this anchor
+          ops.detach(anchor);
+        }
+      } else {
+        ops.detach(anchor);
+        future.completeExceptionally(failure);
+      }
+    }
+
+    @Override
+    public void onTimeout(A anchor) {
+      ops.detach(anchor);
+      future.completeExceptionally(new TimeoutException("Cloud anchor operation timed out"));
+    }
+
+    @Override
+    public void onCleared(A anchor) {
+      // the operation is no longer pending, so cancelling does not detach it through track()
+      ops.detach(anchor);
+      future.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,336 @@
+package helpers;
+
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the last known state of scenes on disk, keyed by short code, so that a scene can be shown
+ * before the database answered, also after the app was restarted.
+ *
+ * <p>Every scene is one file holding a small header and the scene in the lossless {@link
+ * SceneCodec} format, which includes the cloud anchor ID:
+ *
+ * <pre>
+ *   int   MAGIC
+ *   byte  FORMAT_VERSION
+ *   int   length of the scene
+ *   long  CRC32 of the scene
+ *   bytes scene
+ * </pre>
+ *
+ * <p>Writes go to a temporary file that is synced and then renamed over the old one, so a crash
+ * leaves either the old or the new file behind. Files that are truncated or fail the checksum
+ * count as a miss and are deleted.
+ *
+ * <p>All file access runs on {@code ioExecutor}, which has to run its tasks one at a time and in
+ * order: indexing the files of an earlier run, reading and decoding in {@link #get}, and encoding and
+ * writing in {@link #put}. {@link #put} only copies the scene on the calling thread. Puts of the
+ * same scene that are still waiting are coalesced into one write. When the files exceed the size
+ * budget, the least recently used scenes are deleted. A {@link #remove} drops the writes of the
+ * scene that are waiting or running.
+ */
+public class SceneCache {
+
+  /** Gauge of the scenes that were found in the cache. */
+  public static final String METRIC_HITS = "scene_cache.hits";
+
+  /** Gauge of the scenes that were not found in the cache, or could not be read. */
+  public static final String METRIC_MISSES = "scene_cache.misses";
+
+  /** Gauge of the size of the cached scene files. */
+  public static final String METRIC_BYTES = "scene_cache.bytes";
+
+  private static final int MAGIC = 0x56525343; // "VRSC"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+  private static final String PREFIX = "scene_";
+  private static final String SUFFIX = ".bin";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File directory;
+  private final long maxBytes;
+  private final Executor ioExecutor;
+  private final SceneCodec codec = new SceneCodec();
+
+  /* size of every cached file by short code, access ordered: the first entry is the least recently used one */
+  private final LinkedHashMap<Integer, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+  private final Map<Integer, SceneData> pendingWrites = new HashMap<>();
+  /* incremented by remove, so that a write that was running by then does not index its file */
+  private final Map<Integer, Integer> generations = new HashMap<>();
+
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long writeCount = 0;
+  private long evictionCount = 0;
+  private long corruptCount = 0;
+
+  /**
+   * Creates a cache in {@code directory} that holds at most {@code maxBytes} of scene files and
+   * accesses them on {@code ioExecutor}. The files that are there already are indexed on the
+   * executor too; until then, {@link #contains} does not know them.
+   */
+  public SceneCache(File directory, long maxBytes, Executor ioExecutor) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.ioExecutor = ioExecutor;
+    ioExecutor.execute(
+        () -> {
+          directory.mkdirs();
+          loadIndex();
+        });
+  }
+
+  /**
+   * Reads the cached scene of {@code shortCode} on the io executor. The future completes there,
+   * with null if there is no such scene.
+   */
+  public CompletableFuture<SceneData> get(int shortCode) {
+    CompletableFuture<SceneData> future = new CompletableFuture<>();
+    ioExecutor.execute(() -> future.complete(read(shortCode)));
+    return future;
+  }
+
+  /**
+   * Stores {@code sceneData} as the last known state of {@code shortCode}. The scene is copied, it
+   * may be changed as soon as this returns.
+   */
+  public void put(int shortCode, SceneData sceneData) {
+    SceneData snapshot = sceneData.copy();
+    synchronized (this) {
+      if (pendingWrites.put(shortCode, snapshot) != null) {
+        // the waiting write takes the newer scene
+        return;
+      }
+    }
+    ioExecutor.execute(() -> write(shortCode));
+  }
+
+  /** Deletes the cached scene of {@code shortCode}, e.g. because it does not exist anymore. */
+  public void remove(int shortCode) {
+    synchronized (this) {
+      pendingWrites.remove(shortCode);
+      generations.put(shortCode, generationOf(shortCode) + 1);
+      removeEntry(shortCode);
+    }
+    // after a write that may be running
+    ioExecutor.execute(() -> fileOf(shortCode).delete());
+  }
+
+  public synchronized boolean contains(int shortCode) {
+    return sizes.containsKey(shortCode);
+  }
+
+  public synchronized int getEntryCount() {
+    return sizes.size();
+  }
+
+  public synchronized long getSizeBytes() {
+    return totalBytes;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getWriteCount() {
+    return writeCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Cached files that could not be read and were deleted. */
+  public synchronized long getCorruptCount() {
+    return corruptCount;
+  }
+
+  /** The scene in the file of {@code shortCode}, or null if there is none or it is damaged. */
+  private SceneData read(int shortCode) {
+    synchronized (this) {
+      // get, not containsKey, marks the scene as used
+      if (sizes.get(shortCode) == null) {
+        missCount++;
+        return null;
+      }
+    }
+
+    File file = fileOf(shortCode);
+    SceneData sceneData = read(file);
+    synchronized (this) {
+      if (sceneData == null) {
+        missCount++;
+        corruptCount++;
+        removeEntry(shortCode);
+        file.delete();
+        return null;
+      }
+      hitCount++;
+    }
+    // keeps the order of use across restarts
+    file.setLastModified(System.currentTimeMillis());
+    return sceneData;
+  }
+
+  private void write(int shortCode) {
+    SceneData snapshot;
+    int generation;
+    synchronized (this) {
+      snapshot = pendingWrites.remove(shortCode);
+      generation = generationOf(shortCode);
+    }
+    if (snapshot == null) {
+      // removed in the meantime
+      return;
+    }
+    byte[] scene = codec.encodeScene(snapshot);
+
+    CRC32 crc = new CRC32();
+    crc.update(scene, 0, scene.length);
+
+    File file = fileOf(shortCode);
+    File temp = new File(directory, PREFIX + shortCode + TEMP_SUFFIX);
+    try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+      DataOutputStream out = new DataOutputStream(fileOut);
+      out.writeInt(MAGIC);
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(scene.length);
+      out.writeLong(crc.getValue());
+      out.write(scene);
+      out.flush();
+      fileOut.getFD().sync();
+    } catch (IOException e) {
+      temp.delete();
+      return;
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      return;
+    }
+
+    List<Integer> evicted = new ArrayList<>();
+    synchronized (this) {
+      if (generation != generationOf(shortCode)) {
+        // removed while it was written, the file is deleted by the remove
+        return;
+      }
+      writeCount++;
+      removeEntry(shortCode);
+      sizes.put(shortCode, (long) HEADER_SIZE + scene.length);
+      totalBytes += HEADER_SIZE + scene.length;
+      evict(shortCode, evicted);
+    }
+    for (int code : evicted) {
+      fileOf(code).delete();
+    }
+  }
+
+  /** Drops least recently used scenes until the cache fits into the budget, keeping {@code keep}. */
+  private void evict(int keep, List<Integer> evicted) {
+    Iterator<Map.Entry<Integer, Long>> iterator = sizes.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<Integer, Long> next = iterator.next();
+      if (next.getKey() == keep) {
+        continue;
+      }
+      totalBytes -= next.getValue();
+      evictionCount++;
+      evicted.add(next.getKey());
+      iterator.remove();
+    }
+  }
+
+  /** Must be called while holding the lock. */
+  private int generationOf(int shortCode) {
+    Integer generation = generations.get(shortCode);
+    return generation == null ? 0 : generation;
+  }
+
+  private void removeEntry(int shortCode) {
+    Long size = sizes.remove(shortCode);
+    if (size != null) {
+      totalBytes -= size;
+    }
+  }
+
+  /** The scene in {@code file}, or null if it is incomplete or damaged. */
+  private SceneData read(File file) {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+        return null;
+      }
+      int length = in.readInt();
+      long checksum = in.readLong();
+      if (length < 0 || length != file.length() - HEADER_SIZE) {
+        return null;
+      }
+      byte[] scene = new byte[length];
+      in.readFully(scene);
+
+      CRC32 crc = new CRC32();
+      crc.update(scene, 0, scene.length);
+      if (crc.getValue() != checksum) {
+        return null;
+      }
+      return codec.decodeScene(scene);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Indexes the files of an earlier run by their last use, and deletes unfinished writes. */
+  private void loadIndex() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.startsWith(PREFIX)) {
+        continue;
+      }
+      if (name.endsWith(TEMP_SUFFIX)) {
+        file.delete();
+        continue;
+      }
+      if (!name.endsWith(SUFFIX)) {
+        continue;
+      }
+      try {
+        int shortCode =
+            Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        sizes.put(shortCode, file.length());
+        totalBytes += file.length();
+      } catch (NumberFormatException e) {
+        // not one of ours
+      }
+    }
+  }
+
+  private File fileOf(int shortCode) {
+    return new File(directory, PREFIX + shortCode + SUFFIX);
+  }
+}
@@ -0,0 +1,96 @@
+package helpers;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.NodeTable;
+import com.android.vrproject.SceneData;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last state of a scene that was synced with the Firebase Database, so that an
+ * update only has to contain the nodes and scene fields that actually changed.
+ *
+ * <p>All paths returned by {@link #collect} are relative to the scene's {@code anchor;<shortCode>}
+ * node and can be passed to a single multi-path update.
+ */
+public class SceneDeltaTracker {
+
+  static final String PATH_CLOUD_ANCHOR_ID = "cloudAnchorId";
+  static final String PATH_INDEX = "index";
+  static final String PATH_NODE_DATA_MAP = "nodeDataMap/";
+
+  private final NodeTable syncedTransforms = new NodeTable();
+  private final float[] scratch = new float[NodeData.TRANSFORM_SIZE];
+  private int syncedShortCode = 0;
+  private String syncedCloudAnchorId;
+  private int syncedIndex = -1;
+
+  /**
+   * Takes the given scene as the state that is currently stored under {@code shortCode}. Called
+   * after a full write and whenever a snapshot arrives from the database.
+   */
+  public synchronized void reset(int shortCode, SceneData sceneData) {
+    syncedShortCode = shortCode;
+    syncedCloudAnchorId = sceneData.getCloudAnchorId();
+    syncedIndex = sceneData.getIndex();
+
+    NodeTable nodes = sceneData.nodes();
+    syncedTransforms.clear();
+    for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+      int index = nodes.indexAt(slot);
+      if (index == NodeTable.NO_INDEX) {
+        continue;
+      }
+      nodes.getTransform(slot, scratch);
+      syncedTransforms.setTransform(syncedTransforms.put(index), scratch);
+    }
+  }
+
+  /**
+   * Returns the relative paths and values that differ from the last synced state for the given
+   * node indices, and records them as synced. Returns an empty map if nothing changed.
+   */
+  public synchronized Map<String, Object> collect(int shortCode, SceneData sceneData, int... indices) {
+    Map<String, Object> updates = new HashMap<>();
+    if (shortCode != syncedShortCode) {
+      syncedTransforms.clear();
+      syncedCloudAnchorId = null;
+      syncedIndex = -1;
+      syncedShortCode = shortCode;
+    }
+
+    String cloudAnchorId = sceneData.getCloudAnchorId();
+    if (cloudAnchorId != null && !cloudAnchorId.equals(syncedCloudAnchorId)) {
+      updates.put(PATH_CLOUD_ANCHOR_ID, cloudAnchorId);
+      syncedCloudAnchorId = cloudAnchorId;
+    }
+    if (sceneData.getIndex() != syncedIndex) {
+      updates.put(PATH_INDEX, sceneData.getIndex());
+      syncedIndex = sceneData.getIndex();
+    }
+
+    for (int index : indices) {
+      if (!sceneData.getTransform(index, scratch)) {
+        continue;
+      }
+      boolean isNew = !syncedTransforms.contains(index);
+      int slot = syncedTransforms.put(index);
+      if (syncedTransforms.setTransformIfChanged(slot, scratch) || isNew) {
+        updates.put(PATH_NODE_DATA_MAP + SceneData.keyOf(index), sceneData.getNodeData(index));
+      }
+    }
+    return updates;
+  }
+
+  /** Forgets the synced state of one node, e.g. after a failed write, so it is sent again. */
+  public synchronized void invalidate(int index) {
+    syncedTransforms.remove(index);
+  }
+
+  /** Forgets the synced scene fields, so they are sent again with the next update. */
+  public synchronized void invalidateSceneFields() {
+    syncedCloudAnchorId = null;
+    syncedIndex = -1;
+  }
+}
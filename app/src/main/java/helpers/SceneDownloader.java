@@ -0,0 +1,374 @@
+package helpers;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.NodeDataMapper;
+import com.android.vrproject.NodeTable;
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneDataMapper;
+import com.android.vrproject.SceneStore;
+
+import java.util.Map;
+
+/**
+ * Downloads a scene in parts, so that joining a large scene does not wait for, and hold, the whole
+ * scene at once.
+ *
+ * <p>First the header of the scene, its cloud anchor ID and index counter, is read on its own and
+ * reported with {@link Listener#onHeader}, so the anchor can be resolved while the objects are
+ * still loading. The objects are read in pages of {@code pageSize} children, ordered by key, and
+ * every page is decoded and reported with {@link Listener#onPage} before the next one is requested.
+ * Scenes in any format of {@link FirebaseManager.SceneEncoding} can be downloaded, but a {@link
+ * FirebaseManager.SceneEncoding#BLOB} scene is a single value and arrives as one page. The format
+ * of a scene is not stored, so the first page of every format is requested together with the
+ * header; the formats the scene is not written in answer with nothing.
+ *
+ * <p>Listeners are called on the callback thread of the store, one at a time. A new {@link #download} or {@link
+ * #cancel} stops the running download; it does not call its listener anymore.
+ */
+public class SceneDownloader {
+
+  /** Receives the parts of a downloaded scene. */
+  public interface Listener {
+
+    /** The header of the scene; {@code cloudAnchorId} is null if there is no such scene. */
+    void onHeader(String cloudAnchorId, int index);
+
+    /** The objects of one page, along with the header. */
+    void onPage(SceneData page);
+
+    /** All objects have arrived; {@code sceneData} holds the header and all pages. */
+    void onComplete(SceneData sceneData);
+
+    /** The download failed and was stopped. */
+    void onError(Exception error);
+  }
+
+  /** Counter of the pages downloaded. */
+  public static final String METRIC_PAGES = "download.pages";
+
+  /** Counter of the objects downloaded. */
+  public static final String METRIC_NODES = "download.nodes";
+
+  /** Histogram of the time from the start of a download to its header. */
+  public static final String METRIC_HEADER_MS = "download.header_ms";
+
+  /** Histogram of the time from the start of a download to its first page. */
+  public static final String METRIC_FIRST_PAGE_MS = "download.first_page_ms";
+
+  /** Histogram of the time from the start of a download to its completion. */
+  public static final String METRIC_TOTAL_MS = "download.total_ms";
+
+  /* the children of a scene its objects may be stored under, in the order they are preferred */
+  private static final String[] NODE_KEYS = {
+    FirebaseManager.KEY_NODE_BLOBS, SceneDataMapper.KEY_NODE_DATA_MAP, FirebaseManager.KEY_BLOB
+  };
+
+  private final SceneStore store;
+  private final int pageSize;
+  /* blobs describe their own format, so any codec decodes them */
+  private final SceneCodec codec = new SceneCodec();
+
+  private final Counter pages;
+  private final Counter nodes;
+  private final Histogram headerLatency;
+  private final Histogram firstPageLatency;
+  private final Histogram totalLatency;
+
+  private Download running;
+
+  /** Creates a downloader that reads {@code pageSize} objects per request from {@code store}. */
+  public SceneDownloader(SceneStore store, int pageSize, MetricsRegistry metrics) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("pageSize must be at least 1");
+    }
+    this.store = store;
+    this.pageSize = pageSize;
+    pages = metrics.counter(METRIC_PAGES);
+    nodes = metrics.counter(METRIC_NODES);
+    headerLatency = metrics.histogram(METRIC_HEADER_MS, Histogram.MILLIS_BOUNDS);
+    firstPageLatency = metrics.histogram(METRIC_FIRST_PAGE_MS, Histogram.MILLIS_BOUNDS);
+    totalLatency = metrics.histogram(METRIC_TOTAL_MS, Histogram.MILLIS_BOUNDS);
+  }
+
+  /** Starts downloading the scene of {@code shortCode}, stopping any other download. */
+  public void download(int shortCode, Listener listener) {
+    Download download = new Download(FirebaseManager.KEY_PREFIX + shortCode, listener);
+    synchronized (this) {
+      cancel();
+      running = download;
+    }
+    // not under the lock, the store may call back with its own locks held, see Download#finish
+    download.start();
+  }
+
+  /** Stops the running download, if any. */
+  public synchronized void cancel() {
+    if (running != null) {
+      running.cancelled = true;
+      running = null;
+    }
+  }
+
+  public synchronized boolean isRunning() {
+    return running != null;
+  }
+
+  /** The state of one download. */
+  private class Download {
+    final String scenePath;
+    final Listener listener;
+    final long startNanos = System.nanoTime();
+    volatile boolean cancelled = false;
+
+    final SceneData sceneData = new SceneData();
+    final float[] transform = new float[NodeData.TRANSFORM_SIZE];
+
+    /* the header arrives in two reads */
+    String cloudAnchorId;
+    boolean cloudAnchorIdRead = false;
+    Integer index;
+    boolean headerReported = false;
+    /* the first responses of NODE_KEYS, used once all of them and the header have arrived */
+    final Object[] firstParts = new Object[NODE_KEYS.length];
+    int firstPartCount = 0;
+
+    /* the child of the scene the objects are paged from, once it is known */
+    String nodesKey;
+    int pageCount = 0;
+
+    Download(String scenePath, Listener listener) {
+      this.scenePath = scenePath;
+      this.listener = listener;
+    }
+
+    void start() {
+      store.read(
+          scenePath + "/" + SceneDeltaTracker.PATH_CLOUD_ANCHOR_ID,
+          listener(
+              value -> {
+                cloudAnchorId = value instanceof String ? (String) value : null;
+                cloudAnchorIdRead = true;
+                onHeaderPart();
+              }));
+      store.read(
+          scenePath + "/" + SceneDeltaTracker.PATH_INDEX,
+          listener(
+              value -> {
+                index = value instanceof Number ? ((Number) value).intValue() : 0;
+                onHeaderPart();
+              }));
+      for (int i = 0; i < NODE_KEYS.length; i++) {
+        int format = i;
+        String path = scenePath + "/" + NODE_KEYS[format];
+        SceneStore.ValueListener firstPart = listener(value -> onFirstPart(format, value));
+        if (NODE_KEYS[format].equals(FirebaseManager.KEY_BLOB)) {
+          store.read(path, firstPart);
+        } else {
+          store.readRange(path, null, pageSize, firstPart);
+        }
+      }
+    }
+
+    void onHeaderPart() {
+      if (!cloudAnchorIdRead || index == null) {
+        return;
+      }
+      headerReported = true;
+      headerLatency.record(millisSinceStart());
+      sceneData.setCloudAnchorId(cloudAnchorId);
+      sceneData.setIndex(index);
+      if (cloudAnchorId == null) {
+        // there is no such scene, the first page that is still on its way is dropped
+        cancelled = true;
+        finish();
+        listener.onHeader(null, index);
+        return;
+      }
+      listener.onHeader(cloudAnchorId, index);
+      onFirstParts();
+    }
+
+    void onFirstPart(int format, Object value) {
+      firstParts[format] = value;
+      firstPartCount++;
+      if (headerReported) {
+        onFirstParts();
+      }
+    }
+
+    /** Pages the objects of the first format the scene has objects in, once all have answered. */
+    void onFirstParts() {
+      if (firstPartCount < NODE_KEYS.length) {
+        return;
+      }
+      for (int format = 0; format < NODE_KEYS.length; format++) {
+        Object value = firstParts[format];
+        if (value == null) {
+          continue;
+        }
+        nodesKey = NODE_KEYS[format];
+        if (nodesKey.equals(FirebaseManager.KEY_BLOB)) {
+          onBlob(value);
+        } else {
+          onPage(value instanceof Map ? (Map<?, ?>) value : null);
+        }
+        return;
+      }
+      // no objects in any format
+      complete();
+    }
+
+    void requestPage(String startAfter) {
+      store.readRange(
+          scenePath + "/" + nodesKey,
+          startAfter,
+          pageSize,
+          listener(value -> onPage(value instanceof Map ? (Map<?, ?>) value : null)));
+    }
+
+    void onPage(Map<?, ?> page) {
+      if (page == null) {
+        complete();
+        return;
+      }
+
+      SceneData decoded = newPage();
+      String lastKey = null;
+      try {
+        for (Map.Entry<?, ?> entry : page.entrySet()) {
+          lastKey = entry.getKey().toString();
+          String model = decodeNode(entry.getValue(), transform);
+          int nodeIndex = SceneData.indexOf(lastKey);
+          decoded.setTransform(nodeIndex, transform);
+          decoded.setModel(nodeIndex, model);
+          sceneData.setTransform(nodeIndex, transform);
+          sceneData.setModel(nodeIndex, model);
+        }
+      } catch (RuntimeException e) {
+        // a corrupt blob or key
+        fail(e);
+        return;
+      }
+      report(decoded, page.size());
+
+      if (page.size() < pageSize) {
+        complete();
+      } else {
+        requestPage(lastKey);
+      }
+    }
+
+    /** The whole scene in the BLOB format, or no objects at all. */
+    void onBlob(Object value) {
+      if (value instanceof String) {
+        SceneData blob;
+        try {
+          blob = codec.decodeScene((String) value);
+        } catch (RuntimeException e) {
+          fail(e);
+          return;
+        }
+        SceneData decoded = newPage();
+        int count = 0;
+        for (int slot = 0; slot < blob.nodes().getSlotLimit(); slot++) {
+          int nodeIndex = blob.nodes().indexAt(slot);
+          if (nodeIndex == NodeTable.NO_INDEX) {
+            continue;
+          }
+          blob.nodes().getTransform(slot, transform);
+          String model = blob.nodes().getModel(slot);
+          decoded.setTransform(nodeIndex, transform);
+          decoded.setModel(nodeIndex, model);
+          sceneData.setTransform(nodeIndex, transform);
+          sceneData.setModel(nodeIndex, model);
+          count++;
+        }
+        report(decoded, count);
+      }
+      complete();
+    }
+
+    SceneData newPage() {
+      SceneData page = new SceneData();
+      page.setCloudAnchorId(cloudAnchorId);
+      page.setIndex(index);
+      return page;
+    }
+
+    void report(SceneData page, int count) {
+      if (pageCount == 0) {
+        firstPageLatency.record(millisSinceStart());
+      }
+      pageCount++;
+      pages.increment();
+      nodes.add(count);
+      listener.onPage(page);
+    }
+
+    void complete() {
+      totalLatency.record(millisSinceStart());
+      finish();
+      listener.onComplete(sceneData);
+    }
+
+    void finish() {
+      synchronized (SceneDownloader.this) {
+        if (running == this) {
+          running = null;
+        }
+      }
+    }
+
+    long millisSinceStart() {
+      return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * A store listener that drops values of a cancelled download and stops it on errors. Values are
+     * handled one at a time, in case the store calls back on more than one thread.
+     */
+    SceneStore.ValueListener listener(ValueHandler handler) {
+      return new SceneStore.ValueListener() {
+        @Override
+        public void onValue(Object value) {
+          synchronized (Download.this) {
+            if (!cancelled) {
+              handler.onValue(value);
+            }
+          }
+        }
+
+        @Override
+        public void onError(Exception error) {
+          synchronized (Download.this) {
+            if (!cancelled) {
+              fail(error);
+            }
+          }
+        }
+      };
+    }
+
+    void fail(Exception error) {
+      cancelled = true;
+      finish();
+      listener.onError(error);
+    }
+  }
+
+  private interface ValueHandler {
+    void onValue(Object value);
+  }
+
+  /**
+   * Writes the transform of a node in the NODE_BLOBS or POJO format into {@code out} and returns its
+   * model.
+   */
+  private static String decodeNode(Object value, float[] out) {
+    if (value instanceof String) {
+      return SceneCodec.decodeTransform(SceneCodec.fromBase64((String) value), out);
+    }
+    return NodeDataMapper.readTransform(value, out);
+  }
+}
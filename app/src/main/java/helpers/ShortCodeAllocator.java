@@ -0,0 +1,221 @@
+package helpers;
+
+import java.util.ArrayDeque;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out short codes from blocks that are leased from a shared counter, so that hosting a scene
+ * does not need a round trip to the counter.
+ *
+ * <p>Every lease reserves {@code blockSize} consecutive codes for this allocator. When the codes of
+ * the current block run low, the next block is leased in the background, so that usually a code is
+ * available right away. Requests that arrive while no code is left wait for the running lease.
+ * Codes that were leased but never handed out are lost when the allocator goes away; they are never
+ * handed out twice.
+ */
+public class ShortCodeAllocator {
+
+  /** Reserves blocks of codes on the shared counter. */
+  public interface BlockSource {
+
+    /**
+     * Reserves {@code size} consecutive codes and reports the first one to {@code listener}, or
+     * null if the lease failed.
+     */
+    void leaseBlock(int size, BlockListener listener);
+  }
+
+  /** Receives the outcome of {@link BlockSource#leaseBlock}. */
+  public interface BlockListener {
+    void onBlockLeased(Integer firstCode);
+  }
+
+  private final BlockSource source;
+  private final int blockSize;
+  private final int refillThreshold;
+  private final LongSupplier nanoClock;
+
+  /* leased codes in [nextCode, blockEnd), followed by the block that was leased ahead of time */
+  private int nextCode = 0;
+  private int blockEnd = 0;
+  private int spareStart = 0;
+  private int spareEnd = 0;
+  private boolean leasing = false;
+
+  private final ArrayDeque<FirebaseManager.ShortCodeListener> waiting = new ArrayDeque<>();
+  private final ArrayDeque<Long> waitingSince = new ArrayDeque<>();
+
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long leaseCount = 0;
+  private long failedLeaseCount = 0;
+  private long totalLatencyNanos = 0;
+  private long maxLatencyNanos = 0;
+
+  /**
+   * Creates an allocator that leases {@code blockSize} codes at a time from {@code source} and
+   * starts the next lease once no more than {@code refillThreshold} codes are left.
+   */
+  public ShortCodeAllocator(BlockSource source, int blockSize, int refillThreshold) {
+    this(source, blockSize, refillThreshold, System::nanoTime);
+  }
+
+  ShortCodeAllocator(
+      BlockSource source, int blockSize, int refillThreshold, LongSupplier nanoClock) {
+    if (blockSize < 1 || refillThreshold < 0 || refillThreshold >= blockSize) {
+      throw new IllegalArgumentException(
+          "Invalid block size " + blockSize + " or refill threshold " + refillThreshold);
+    }
+    this.source = source;
+    this.blockSize = blockSize;
+    this.refillThreshold = refillThreshold;
+    this.nanoClock = nanoClock;
+  }
+
+  /** Leases a block ahead of time if none is available yet. */
+  public void prefetch() {
+    boolean lease;
+    synchronized (this) {
+      lease = startLeaseIfNeeded();
+    }
+    if (lease) {
+      lease();
+    }
+  }
+
+  /**
+   * Reports a new short code to {@code listener}, from the current block if possible. Otherwise the
+   * listener is called once the next block is leased, with null if leasing it failed.
+   */
+  public void nextShortCode(FirebaseManager.ShortCodeListener listener) {
+    long start = nanoClock.getAsLong();
+    Integer shortCode = null;
+    boolean lease;
+    synchronized (this) {
+      if (hasCode()) {
+        shortCode = takeCode();
+        hitCount++;
+        recordLatency(nanoClock.getAsLong() - start);
+      } else {
+        missCount++;
+        waiting.add(listener);
+        waitingSince.add(start);
+      }
+      lease = startLeaseIfNeeded();
+    }
+    if (lease) {
+      lease();
+    }
+    if (shortCode != null) {
+      listener.onShortCodeAvailable(shortCode);
+    }
+  }
+
+  /** Share of requests that were served from a leased block without waiting. */
+  public synchronized double getHitRate() {
+    long requests = hitCount + missCount;
+    return requests == 0 ? 0 : (double) hitCount / requests;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getLeaseCount() {
+    return leaseCount;
+  }
+
+  public synchronized long getFailedLeaseCount() {
+    return failedLeaseCount;
+  }
+
+  /** Number of leased codes that have not been handed out yet. */
+  public synchronized int getAvailableCount() {
+    return blockEnd - nextCode + spareEnd - spareStart;
+  }
+
+  /** Average time from a request to its code, including the wait for a lease. */
+  public synchronized long getAverageLatencyNanos() {
+    long served = hitCount + missCount - waiting.size();
+    return served == 0 ? 0 : totalLatencyNanos / served;
+  }
+
+  public synchronized long getMaxLatencyNanos() {
+    return maxLatencyNanos;
+  }
+
+  /** Must be called while holding the lock. Returns true if the caller has to call lease(). */
+  private boolean startLeaseIfNeeded() {
+    if (leasing || getAvailableCount() > refillThreshold) {
+      return false;
+    }
+    leasing = true;
+    return true;
+  }
+
+  private void lease() {
+    source.leaseBlock(blockSize, this::onBlockLeased);
+  }
+
+  private void onBlockLeased(Integer firstCode) {
+    FirebaseManager.ShortCodeListener[] listeners;
+    Integer[] codes;
+    boolean lease;
+    synchronized (this) {
+      leasing = false;
+      leaseCount++;
+      if (firstCode == null) {
+        failedLeaseCount++;
+      } else if (nextCode < blockEnd) {
+        spareStart = firstCode;
+        spareEnd = firstCode + blockSize;
+      } else {
+        nextCode = firstCode;
+        blockEnd = firstCode + blockSize;
+      }
+
+      // a failed lease fails every waiting request, otherwise as many as the block allows are served
+      int served =
+          firstCode == null ? waiting.size() : Math.min(waiting.size(), getAvailableCount());
+      long now = nanoClock.getAsLong();
+      listeners = new FirebaseManager.ShortCodeListener[served];
+      codes = new Integer[served];
+      for (int i = 0; i < served; i++) {
+        listeners[i] = waiting.poll();
+        codes[i] = firstCode == null ? null : takeCode();
+        recordLatency(now - waitingSince.poll());
+      }
+      lease = firstCode != null && startLeaseIfNeeded();
+    }
+    if (lease) {
+      lease();
+    }
+    for (int i = 0; i < listeners.length; i++) {
+      listeners[i].onShortCodeAvailable(codes[i]);
+    }
+  }
+
+  private boolean hasCode() {
+    return nextCode < blockEnd || spareStart < spareEnd;
+  }
+
+  /** Must be called while holding the lock, and only if {@link #hasCode()}. */
+  private int takeCode() {
+    if (nextCode == blockEnd) {
+      nextCode = spareStart;
+      blockEnd = spareEnd;
+      spareStart = 0;
+      spareEnd = 0;
+    }
+    return nextCode++;
+  }
+
+  private void recordLatency(long nanos) {
+    totalLatencyNanos += nanos;
+    maxLatencyNanos = Math.max(maxLatencyNanos, nanos);
+  }
+}
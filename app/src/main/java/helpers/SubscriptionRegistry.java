@@ -0,0 +1,165 @@
+package helpers;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps at most one live Firebase value listener per short code.
+ *
+ * <p>Subscribers of the same short code share that listener. Every {@link #acquire} has to be
+ * matched by a {@link #release}; the Firebase listener is detached when the last subscriber is
+ * released or when the registry is cleared.
+ */
+public class SubscriptionRegistry {
+
+  /** Where value listeners are attached, a {@link DatabaseReference} outside of tests. */
+  interface Source {
+    void addValueEventListener(ValueEventListener listener);
+
+    void removeEventListener(ValueEventListener listener);
+  }
+
+  /** The Firebase listener of one short code and the subscribers it fans out to. */
+  private static class Subscription implements ValueEventListener {
+    private final Source ref;
+    private final Map<ValueEventListener, Integer> subscribers = new LinkedHashMap<>();
+    private int refCount = 0;
+    private long callbackCount = 0;
+
+    Subscription(Source ref) {
+      this.ref = ref;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+      ValueEventListener[] targets;
+      synchronized (this) {
+        callbackCount++;
+        targets = subscribers.keySet().toArray(new ValueEventListener[0]);
+      }
+      for (ValueEventListener target : targets) {
+        target.onDataChange(dataSnapshot);
+      }
+    }
+
+    @Override
+    public void onCancelled(DatabaseError error) {
+      ValueEventListener[] targets;
+      synchronized (this) {
+        targets = subscribers.keySet().toArray(new ValueEventListener[0]);
+      }
+      for (ValueEventListener target : targets) {
+        target.onCancelled(error);
+      }
+    }
+  }
+
+  private final Map<Integer, Subscription> subscriptions = new HashMap<>();
+
+  /**
+   * Subscribes {@code subscriber} to the scene of {@code shortCode} at {@code ref}. Attaches a
+   * Firebase listener only if there is none for this short code yet.
+   */
+  public void acquire(int shortCode, DatabaseReference ref, ValueEventListener subscriber) {
+    acquire(
+        shortCode,
+        new Source() {
+          @Override
+          public void addValueEventListener(ValueEventListener listener) {
+            ref.addValueEventListener(listener);
+          }
+
+          @Override
+          public void removeEventListener(ValueEventListener listener) {
+            ref.removeEventListener(listener);
+          }
+        },
+        subscriber);
+  }
+
+  synchronized void acquire(int shortCode, Source ref, ValueEventListener subscriber) {
+    Subscription subscription = subscriptions.get(shortCode);
+    if (subscription == null) {
+      subscription = new Subscription(ref);
+      subscriptions.put(shortCode, subscription);
+      ref.addValueEventListener(subscription);
+    }
+    synchronized (subscription) {
+      Integer count = subscription.subscribers.get(subscriber);
+      subscription.subscribers.put(subscriber, count == null ? 1 : count + 1);
+      subscription.refCount++;
+    }
+  }
+
+  /**
+   * Releases one {@link #acquire} of {@code subscriber}. Detaches the Firebase listener when no
+   * subscriber is left.
+   */
+  public synchronized void release(int shortCode, ValueEventListener subscriber) {
+    Subscription subscription = subscriptions.get(shortCode);
+    if (subscription == null) {
+      return;
+    }
+    synchronized (subscription) {
+      Integer count = subscription.subscribers.get(subscriber);
+      if (count == null) {
+        return;
+      }
+      if (count == 1) {
+        subscription.subscribers.remove(subscriber);
+      } else {
+        subscription.subscribers.put(subscriber, count - 1);
+      }
+      subscription.refCount--;
+      if (subscription.refCount > 0) {
+        return;
+      }
+    }
+    subscriptions.remove(shortCode);
+    subscription.ref.removeEventListener(subscription);
+  }
+
+  /** Detaches all Firebase listeners. */
+  public synchronized void clear() {
+    for (Subscription subscription : subscriptions.values()) {
+      subscription.ref.removeEventListener(subscription);
+    }
+    subscriptions.clear();
+  }
+
+  /** Number of Firebase listeners that are currently attached. */
+  public synchronized int getActiveCount() {
+    return subscriptions.size();
+  }
+
+  /** Number of subscribers of {@code shortCode}, counting repeated acquires. */
+  public synchronized int getRefCount(int shortCode) {
+    Subscription subscription = subscriptions.get(shortCode);
+    if (subscription == null) {
+      return 0;
+    }
+    synchronized (subscription) {
+      return subscription.refCount;
+    }
+  }
+
+  /**
+   * Number of callbacks the Firebase listener of {@code shortCode} has received. Every callback is
+   * delivered once to each distinct subscriber.
+   */
+  public synchronized long getCallbackCount(int shortCode) {
+    Subscription subscription = subscriptions.get(shortCode);
+    if (subscription == null) {
+      return 0;
+    }
+    synchronized (subscription) {
+      return subscription.callbackCount;
+    }
+  }
+}
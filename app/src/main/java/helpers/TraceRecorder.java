@@ -0,0 +1,270 @@
+package helpers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Records spans and events of the sync and gesture paths into a ring buffer, to be looked at in
+ * {@code chrome://tracing} or Perfetto.
+ *
+ * <p>Tracing is off until {@link #setEnabled} turns it on. While it is off, every call returns after
+ * reading one volatile field. The buffer is allocated when tracing is turned on for the first time
+ * and keeps the last {@code capacity} events; older ones are overwritten. Recording does not
+ * allocate, as long as names are constants:
+ *
+ * <pre>
+ *   trace.begin(TRACE_FLUSH);
+ *   ...
+ *   trace.end(TRACE_FLUSH);
+ * </pre>
+ *
+ * <p>{@link #writeChromeTrace} writes the recorded events in the Chrome trace event format. Spans
+ * are matched per thread by Chrome, so {@link #begin} and {@link #end} must be called on the same
+ * thread.
+ */
+public class TraceRecorder {
+
+  /** Events kept by a recorder created with the default constructor. */
+  public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+  private static final byte PHASE_BEGIN = 'B';
+  private static final byte PHASE_END = 'E';
+  private static final byte PHASE_INSTANT = 'i';
+  private static final byte PHASE_COUNTER = 'C';
+
+  private final int capacity;
+  private final LongSupplier nanoClock;
+  private volatile boolean enabled = false;
+
+  /* the ring buffer, one event per position, allocated on first use */
+  private long[] times;
+  private byte[] phases;
+  private String[] names;
+  private long[] values;
+  private boolean[] hasValue;
+  private long[] threadIds;
+  private String[] threadNames;
+
+  /* events recorded since the last clear, the next one goes to position total % capacity */
+  private long total = 0;
+  private final long startNanos;
+
+  public TraceRecorder() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public TraceRecorder(int capacity) {
+    this(capacity, System::nanoTime);
+  }
+
+  TraceRecorder(int capacity, LongSupplier nanoClock) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.nanoClock = nanoClock;
+    this.startNanos = nanoClock.getAsLong();
+  }
+
+  /** Turns recording on or off. The events recorded so far are kept. */
+  public synchronized void setEnabled(boolean enabled) {
+    if (enabled && times == null) {
+      times = new long[capacity];
+      phases = new byte[capacity];
+      names = new String[capacity];
+      values = new long[capacity];
+      hasValue = new boolean[capacity];
+      threadIds = new long[capacity];
+      threadNames = new String[capacity];
+    }
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts a span on the calling thread. */
+  public void begin(String name) {
+    if (enabled) {
+      record(PHASE_BEGIN, name, 0, false);
+    }
+  }
+
+  /** Ends the span of the calling thread that was begun last. */
+  public void end(String name) {
+    if (enabled) {
+      record(PHASE_END, name, 0, false);
+    }
+  }
+
+  /** Records that something happened, without a duration. */
+  public void instant(String name) {
+    if (enabled) {
+      record(PHASE_INSTANT, name, 0, false);
+    }
+  }
+
+  /** Records that something happened, with one number, e.g. the short code or an index. */
+  public void instant(String name, long value) {
+    if (enabled) {
+      record(PHASE_INSTANT, name, value, true);
+    }
+  }
+
+  /** Records the current value of a quantity, shown as a graph over time. */
+  public void counter(String name, long value) {
+    if (enabled) {
+      record(PHASE_COUNTER, name, value, true);
+    }
+  }
+
+  /** Events that are in the buffer right now. */
+  public synchronized int getEventCount() {
+    return (int) Math.min(total, capacity);
+  }
+
+  /** Events that were overwritten because the buffer was full. */
+  public synchronized long getDroppedCount() {
+    return Math.max(0, total - capacity);
+  }
+
+  /** Drops all recorded events. */
+  public synchronized void clear() {
+    total = 0;
+    if (names != null) {
+      Arrays.fill(names, null);
+      Arrays.fill(threadNames, null);
+    }
+  }
+
+  /**
+   * Writes the recorded events, oldest first, as a Chrome trace JSON object. Timestamps are in
+   * microseconds since the recorder was created.
+   */
+  public void writeChromeTrace(Writer out) throws IOException {
+    // copy the buffer, so recording can go on while the copy is written
+    long[] times;
+    byte[] phases;
+    String[] names;
+    long[] values;
+    boolean[] hasValue;
+    long[] threadIds;
+    String[] threadNames;
+    int count;
+    int first;
+    synchronized (this) {
+      count = getEventCount();
+      first = (int) ((total - count) % capacity);
+      times = new long[count];
+      phases = new byte[count];
+      names = new String[count];
+      values = new long[count];
+      hasValue = new boolean[count];
+      threadIds = new long[count];
+      threadNames = new String[count];
+      for (int i = 0; i < count; i++) {
+        int position = (first + i) % capacity;
+        times[i] = this.times[position];
+        phases[i] = this.phases[position];
+        names[i] = this.names[position];
+        values[i] = this.values[position];
+        hasValue[i] = this.hasValue[position];
+        threadIds[i] = this.threadIds[position];
+        threadNames[i] = this.threadNames[position];
+      }
+    }
+
+    out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+    Set<Long> namedThreads = new HashSet<>();
+    boolean separator = false;
+    for (int i = 0; i < count; i++) {
+      if (separator) {
+        out.write(",\n");
+      }
+      separator = true;
+
+      if (namedThreads.add(threadIds[i])) {
+        out.write(
+            String.format(
+                Locale.US,
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}},\n",
+                threadIds[i],
+                escape(threadNames[i])));
+      }
+
+      long micros = (times[i] - startNanos) / 1000;
+      long fraction = Math.abs((times[i] - startNanos) % 1000);
+      out.write(
+          String.format(
+              Locale.US,
+              "{\"name\":\"%s\",\"ph\":\"%c\",\"ts\":%d.%03d,\"pid\":1,\"tid\":%d",
+              escape(names[i]),
+              (char) phases[i],
+              micros,
+              fraction,
+              threadIds[i]));
+      if (phases[i] == PHASE_INSTANT) {
+        out.write(",\"s\":\"t\"");
+      }
+      if (hasValue[i]) {
+        out.write(",\"args\":{\"value\":" + values[i] + "}");
+      }
+      out.write("}");
+    }
+    out.write("]}\n");
+    out.flush();
+  }
+
+  /** Writes the recorded events to {@code file} as Chrome trace JSON, see {@link #writeChromeTrace}. */
+  public void dump(File file) throws IOException {
+    try (Writer out =
+        new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      writeChromeTrace(out);
+    }
+  }
+
+  private synchronized void record(byte phase, String name, long value, boolean withValue) {
+    if (times == null) {
+      // disabled while this call was on its way
+      return;
+    }
+    int position = (int) (total % capacity);
+    Thread thread = Thread.currentThread();
+    times[position] = nanoClock.getAsLong();
+    phases[position] = phase;
+    names[position] = name;
+    values[position] = value;
+    hasValue[position] = withValue;
+    threadIds[position] = thread.getId();
+    threadNames[position] = thread.getName();
+    total++;
+  }
+
+  private static String escape(String text) {
+    if (text == null) {
+      return "";
+    }
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format(Locale.US, "\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
@@ -0,0 +1,194 @@
+package helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects node transform writes and hands them to a {@link FlushListener} in batches.
+ *
+ * <p>Only the latest pending transform of every node index is kept, and a transform equal to the
+ * one that was last flushed for that index is dropped. Pending writes are flushed once they are
+ * {@code flushIntervalMillis} old (checked in {@link #onUpdate(long)}) or as soon as {@code
+ * maxPending} different nodes are waiting.
+ */
+public class WriteScheduler {
+
+  /** Listener that performs the actual write of a batch. */
+  public interface FlushListener {
+
+    /**
+     * Invoked with {@code count} pending writes; {@code transforms[i]} is the latest transform of
+     * node {@code indices[i]}. The arrays are reused, copy them if they are needed later.
+     */
+    void onFlush(int[] indices, float[][] transforms, int count);
+  }
+
+  private final long flushIntervalMillis;
+  private final int maxPending;
+  private final int transformSize;
+  private final FlushListener listener;
+
+  /* pending writes in submission order, plus the slot of every pending index */
+  private final int[] pendingIndices;
+  private final float[][] pendingTransforms;
+  private final Map<Integer, Integer> pendingSlots = new HashMap<>();
+  private int pendingCount = 0;
+  private long oldestPendingMillis = 0;
+
+  /* arrays handed to the listener, so it can run outside of the lock */
+  private final int[] flushIndices;
+  private final float[][] flushTransforms;
+
+  private final Map<Integer, float[]> lastFlushed = new HashMap<>();
+
+  private long submittedCount = 0;
+  private long coalescedCount = 0;
+  private long droppedCount = 0;
+  private long flushedCount = 0;
+  private long flushCount = 0;
+
+  public WriteScheduler(
+      long flushIntervalMillis, int maxPending, int transformSize, FlushListener listener) {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be at least 1");
+    }
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.maxPending = maxPending;
+    this.transformSize = transformSize;
+    this.listener = listener;
+
+    pendingIndices = new int[maxPending];
+    pendingTransforms = new float[maxPending][transformSize];
+    flushIndices = new int[maxPending];
+    flushTransforms = new float[maxPending][transformSize];
+  }
+
+  /**
+   * Submits the current transform of a node. The values are copied. Flushes right away if the
+   * number of pending nodes reaches the size threshold.
+   */
+  public void submit(int index, float[] transform, long nowMillis) {
+    boolean full;
+    synchronized (this) {
+      submittedCount++;
+
+      Integer slot = pendingSlots.get(index);
+      if (slot != null) {
+        // replace the older pending write of this node
+        System.arraycopy(transform, 0, pendingTransforms[slot], 0, transformSize);
+        coalescedCount++;
+        return;
+      }
+
+      float[] flushed = lastFlushed.get(index);
+      if (flushed != null && sameTransform(flushed, transform)) {
+        droppedCount++;
+        return;
+      }
+
+      if (pendingCount == 0) {
+        oldestPendingMillis = nowMillis;
+      }
+      pendingIndices[pendingCount] = index;
+      System.arraycopy(transform, 0, pendingTransforms[pendingCount], 0, transformSize);
+      pendingSlots.put(index, pendingCount);
+      pendingCount++;
+      full = pendingCount >= maxPending;
+    }
+    if (full) {
+      flush();
+    }
+  }
+
+  /** Should be called once per frame. Flushes if the oldest pending write is due. */
+  public void onUpdate(long nowMillis) {
+    synchronized (this) {
+      if (pendingCount == 0 || nowMillis - oldestPendingMillis < flushIntervalMillis) {
+        return;
+      }
+    }
+    flush();
+  }
+
+  /** Hands all pending writes to the listener. */
+  public void flush() {
+    int count;
+    synchronized (this) {
+      count = pendingCount;
+      if (count == 0) {
+        return;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = pendingIndices[i];
+        float[] transform = pendingTransforms[i];
+        flushIndices[i] = index;
+        System.arraycopy(transform, 0, flushTransforms[i], 0, transformSize);
+
+        float[] flushed = lastFlushed.get(index);
+        if (flushed == null) {
+          lastFlushed.put(index, transform.clone());
+        } else {
+          System.arraycopy(transform, 0, flushed, 0, transformSize);
+        }
+      }
+      pendingSlots.clear();
+      pendingCount = 0;
+      flushedCount += count;
+      flushCount++;
+    }
+    listener.onFlush(flushIndices, flushTransforms, count);
+  }
+
+  /**
+   * Drops all pending writes and forgets what was flushed. Used when the scene is cleared or
+   * replaced.
+   */
+  public synchronized void clear() {
+    pendingSlots.clear();
+    pendingCount = 0;
+    lastFlushed.clear();
+  }
+
+  /** Forgets the last flushed transform of one node, e.g. after it was changed remotely. */
+  public synchronized void forget(int index) {
+    lastFlushed.remove(index);
+  }
+
+  public synchronized int getPendingCount() {
+    return pendingCount;
+  }
+
+  /** Number of transforms passed to {@link #submit}. */
+  public synchronized long getSubmittedCount() {
+    return submittedCount;
+  }
+
+  /** Number of submitted transforms that replaced a pending write of the same node. */
+  public synchronized long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  /** Number of submitted transforms that were dropped since they changed nothing. */
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /** Number of node writes handed to the listener. */
+  public synchronized long getFlushedCount() {
+    return flushedCount;
+  }
+
+  /** Number of batches handed to the listener. */
+  public synchronized long getFlushCount() {
+    return flushCount;
+  }
+
+  private boolean sameTransform(float[] a, float[] b) {
+    for (int i = 0; i < transformSize; i++) {
+      if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,76 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HostPipelineTest {
+
+    private final HostPipeline pipeline = new HostPipeline();
+
+    @Test
+    public void run_passesThroughAllStatesAndIsTimed() {
+        int session = pipeline.start(100);
+        assertEquals(HostPipeline.State.HOSTING, pipeline.getState());
+
+        assertTrue(pipeline.onHosted(session, 400));
+        assertEquals(HostPipeline.State.ALLOCATING, pipeline.getState());
+        assertTrue(pipeline.onEditable(session, 450));
+
+        assertEquals(HostPipeline.State.EDITABLE, pipeline.getState());
+        assertFalse(pipeline.isRunning());
+        assertEquals(300, pipeline.getHostMillis());
+        assertEquals(50, pipeline.getHostToEditableMillis());
+        assertEquals(350, pipeline.getTotalMillis());
+    }
+
+    @Test
+    public void stepsOutOfOrder_areRejected() {
+        int session = pipeline.start(0);
+
+        assertFalse(pipeline.onEditable(session, 10));
+        assertTrue(pipeline.onHosted(session, 10));
+        assertFalse(pipeline.onHosted(session, 20));
+        assertEquals(HostPipeline.State.ALLOCATING, pipeline.getState());
+    }
+
+    @Test
+    public void callbacksOfAResetSession_areRejected() {
+        int session = pipeline.start(0);
+
+        pipeline.reset();
+
+        assertFalse(pipeline.onHosted(session, 10));
+        assertFalse(pipeline.fail(session));
+        assertEquals(HostPipeline.State.IDLE, pipeline.getState());
+    }
+
+    @Test
+    public void callbacksOfAnOlderSession_doNotChangeTheNewerOne() {
+        int old = pipeline.start(0);
+        pipeline.fail(old);
+        int session = pipeline.start(100);
+
+        assertFalse(pipeline.onHosted(old, 110));
+        assertFalse(pipeline.fail(old));
+        assertTrue(pipeline.onHosted(session, 120));
+        assertEquals(20, pipeline.getHostMillis());
+    }
+
+    @Test
+    public void fail_onlyFailsRunningSessions() {
+        int session = pipeline.start(0);
+        pipeline.onHosted(session, 10);
+
+        assertTrue(pipeline.fail(session));
+        assertFalse(pipeline.fail(session));
+        assertEquals(HostPipeline.State.FAILED, pipeline.getState());
+        assertEquals(HostPipeline.NO_TIME, pipeline.getTotalMillis());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void start_isNotAllowedWhileRunning() {
+        pipeline.start(0);
+        pipeline.start(10);
+    }
+}
@@ -0,0 +1,79 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JoinPipelineTest {
+
+    private final JoinPipeline pipeline = new JoinPipeline();
+
+    @Test
+    public void run_passesThroughAllStagesAndIsTimed() {
+        int session = pipeline.start(100);
+        assertEquals(JoinPipeline.State.FETCHING, pipeline.getState());
+
+        assertTrue(pipeline.onFetched(session, 150));
+        assertTrue(pipeline.isResolving());
+        pipeline.onBuilt(200);
+        pipeline.onBuilt(300);
+        assertTrue(pipeline.onResolved(session, 400));
+        assertTrue(pipeline.onJoined(session, 420));
+
+        assertEquals(JoinPipeline.State.JOINED, pipeline.getState());
+        assertFalse(pipeline.isRunning());
+        assertEquals(50, pipeline.getFetchMillis());
+        assertEquals(50, pipeline.getBuildMillis());
+        assertEquals(250, pipeline.getResolveMillis());
+        assertEquals(20, pipeline.getAttachMillis());
+        assertEquals(320, pipeline.getTotalMillis());
+    }
+
+    @Test
+    public void stepsOutOfOrder_areRejected() {
+        int session = pipeline.start(0);
+
+        assertFalse(pipeline.onResolved(session, 10));
+        assertFalse(pipeline.onJoined(session, 10));
+        pipeline.onBuilt(10);
+        assertEquals(JoinPipeline.NO_TIME, pipeline.getBuildMillis());
+        assertEquals(JoinPipeline.State.FETCHING, pipeline.getState());
+    }
+
+    @Test
+    public void callbacksOfAResetSession_areRejected() {
+        int session = pipeline.start(0);
+        pipeline.onFetched(session, 10);
+
+        pipeline.reset();
+
+        assertFalse(pipeline.onResolved(session, 20));
+        assertFalse(pipeline.fail(session));
+        assertEquals(JoinPipeline.State.IDLE, pipeline.getState());
+    }
+
+    @Test
+    public void start_abandonsTheRunningSession() {
+        int old = pipeline.start(0);
+        pipeline.onFetched(old, 10);
+
+        int session = pipeline.start(100);
+
+        assertFalse(pipeline.onResolved(old, 110));
+        assertFalse(pipeline.fail(old));
+        assertEquals(JoinPipeline.State.FETCHING, pipeline.getState());
+        assertTrue(pipeline.onFetched(session, 120));
+        assertEquals(20, pipeline.getFetchMillis());
+    }
+
+    @Test
+    public void fail_onlyFailsRunningSessions() {
+        int session = pipeline.start(0);
+        pipeline.onFetched(session, 10);
+
+        assertTrue(pipeline.fail(session));
+        assertFalse(pipeline.fail(session));
+        assertFalse(pipeline.onResolved(session, 20));
+        assertEquals(JoinPipeline.State.FAILED, pipeline.getState());
+    }
+}
@@ -0,0 +1,180 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ModelCache}, with a loader whose loads are finished by the test.
+ */
+public class ModelCacheTest {
+
+    /* models are their keys, loads complete when the test finishes them */
+    private static class FakeLoader implements ModelCache.Loader<String> {
+        final Map<String, CompletableFuture<String>> running = new HashMap<>();
+        final Map<String, Long> sizes = new HashMap<>();
+        int loadCount = 0;
+
+        @Override
+        public CompletableFuture<String> load(String key) {
+            loadCount++;
+            CompletableFuture<String> future = new CompletableFuture<>();
+            running.put(key, future);
+            return future;
+        }
+
+        @Override
+        public long sizeOf(String key) {
+            return sizes.getOrDefault(key, 100L);
+        }
+
+        void finish(String key) {
+            running.remove(key).complete(key);
+        }
+
+        void fail(String key) {
+            running.remove(key).completeExceptionally(new IllegalStateException(key));
+        }
+    }
+
+    private final FakeLoader loader = new FakeLoader();
+    private final ArrayDeque<Runnable> sizeTasks = new ArrayDeque<>();
+    private final ModelCache<String> cache = new ModelCache<>(loader, "andy", 300, Runnable::run, Runnable::run);
+
+    @Test
+    public void load_sharesRunningLoadsAndCachesTheResult() {
+        CompletableFuture<String> first = cache.load("chair");
+        CompletableFuture<String> second = cache.load("chair");
+        loader.finish("chair");
+
+        assertEquals("chair", first.join());
+        assertEquals("chair", second.join());
+        assertEquals("chair", cache.load("chair").join());
+        assertEquals(1, loader.loadCount);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getSharedLoadCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(100, cache.getCachedBytes());
+    }
+
+    @Test
+    public void nullKey_loadsTheDefaultModel() {
+        cache.load(null);
+        loader.finish("andy");
+
+        assertEquals("andy", cache.getIfLoaded(null));
+    }
+
+    @Test
+    public void budget_dropsTheLeastRecentlyUsedModels() {
+        for (String key : new String[] {"a", "b", "c"}) {
+            cache.load(key);
+            loader.finish(key);
+        }
+        // a is used again, so b is the least recently used one
+        cache.load("a");
+
+        cache.load("d");
+        loader.finish("d");
+
+        assertNull(cache.getIfLoaded("b"));
+        assertEquals("a", cache.getIfLoaded("a"));
+        assertEquals("c", cache.getIfLoaded("c"));
+        assertEquals("d", cache.getIfLoaded("d"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(300, cache.getCachedBytes());
+    }
+
+    @Test
+    public void modelLargerThanTheBudget_isKept() {
+        loader.sizes.put("huge", 1000L);
+
+        cache.load("huge");
+        loader.finish("huge");
+
+        assertEquals("huge", cache.getIfLoaded("huge"));
+        assertEquals(1, cache.getCachedCount());
+    }
+
+    @Test
+    public void model_isOnlyCachedOnceItsSizeIsKnown() {
+        ModelCache<String> deferred = new ModelCache<>(loader, "andy", 300, sizeTasks::add, Runnable::run);
+
+        CompletableFuture<String> future = deferred.load("chair");
+        loader.finish("chair");
+        assertFalse(future.isDone());
+        assertNull(deferred.getIfLoaded("chair"));
+
+        sizeTasks.poll().run();
+
+        assertEquals("chair", future.join());
+        assertEquals(100, deferred.getCachedBytes());
+    }
+
+    @Test
+    public void failedLoad_isLoadedAgainByTheNextRequest() {
+        CompletableFuture<String> failed = cache.load("chair");
+        loader.fail("chair");
+
+        assertTrue(failed.isCompletedExceptionally());
+        cache.load("chair");
+        assertEquals(2, loader.loadCount);
+    }
+
+    @Test
+    public void request_ofACachedModel_countsOneHit() {
+        cache.load("chair");
+        loader.finish("chair");
+        long hits = cache.getHitCount();
+
+        String model = cache.request(new Object(), "chair", loaded -> fail());
+
+        assertEquals("chair", model);
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    @Test
+    public void request_passesTheModelOnceLoaded() {
+        List<String> shown = new ArrayList<>();
+
+        assertNull(cache.request("node", "chair", shown::add));
+        loader.finish("chair");
+
+        assertEquals(1, shown.size());
+        assertEquals("chair", shown.get(0));
+    }
+
+    @Test
+    public void request_ofAnOwnerThatWasAskedForAnotherModel_isDropped() {
+        List<String> shown = new ArrayList<>();
+        cache.request("node", "chair", shown::add);
+        cache.request("node", "table", shown::add);
+
+        loader.finish("chair");
+        assertTrue(shown.isEmpty());
+        loader.finish("table");
+
+        assertEquals(1, shown.size());
+        assertEquals("table", shown.get(0));
+    }
+
+    @Test
+    public void request_ofAnOwnerThatGotACachedModelSince_isDropped() {
+        cache.load("table");
+        loader.finish("table");
+        List<String> shown = new ArrayList<>();
+        cache.request("node", "chair", shown::add);
+
+        assertEquals("table", cache.request("node", "table", shown::add));
+        loader.finish("chair");
+
+        assertTrue(shown.isEmpty());
+    }
+}
@@ -0,0 +1,140 @@
+package helpers;
+
+import com.android.vrproject.AnchorCells;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link CellLoader}. */
+public class CellLoaderTest {
+
+  private final AnchorCells cells = new AnchorCells();
+  private final Map<String, CompletableFuture<String>> resolving = new HashMap<>();
+  private final List<String> detached = new ArrayList<>();
+  private final List<Integer> loaded = new ArrayList<>();
+  private final List<Integer> unloaded = new ArrayList<>();
+  private final MetricsRegistry metrics = new MetricsRegistry();
+
+  private final CellLoader<String> loader =
+      new CellLoader<>(
+          cells,
+          new CellLoader.Resolver<String>() {
+            @Override
+            public CompletableFuture<String> resolve(String cloudAnchorId) {
+              CompletableFuture<String> future = new CompletableFuture<>();
+              resolving.put(cloudAnchorId, future);
+              return future;
+            }
+
+            @Override
+            public void detach(String anchor) {
+              detached.add(anchor);
+            }
+          },
+          new CellLoader.Listener<String>() {
+            @Override
+            public void onCellLoaded(int cell, String anchor) {
+              loaded.add(cell);
+            }
+
+            @Override
+            public void onCellUnloaded(int cell) {
+              unloaded.add(cell);
+            }
+          },
+          10,
+          20,
+          2,
+          metrics);
+
+  @Test
+  public void update_resolvesTheClosestCellsNearTheCamera() {
+    cells.add("far", 15, 0, 0);
+    cells.add("near", 5, 0, 0);
+    cells.add("nearer", 2, 0, 0);
+    cells.add("outside", 30, 0, 0);
+
+    loader.update(0, 0, 0);
+
+    assertEquals(2, loader.getResolvingCount());
+    assertTrue(resolving.containsKey("nearer"));
+    assertTrue(resolving.containsKey("near"));
+
+    resolving.get("near").complete("anchor-near");
+    loader.update(0, 0, 0);
+
+    assertEquals(Arrays.asList(2), loaded);
+    assertEquals("anchor-near", loader.getAnchor(2));
+    // the far cell is out of the load radius
+    assertEquals(2, resolving.size());
+  }
+
+  @Test
+  public void update_unloadsCellsFarFromTheCamera() {
+    int cell = cells.add("a", 5, 0, 0);
+    loader.update(0, 0, 0);
+    resolving.get("a").complete("anchor-a");
+
+    // between the radii the cell stays loaded
+    loader.update(20, 0, 0);
+    assertTrue(loader.isLoaded(cell));
+
+    loader.update(30, 0, 0);
+    assertFalse(loader.isLoaded(cell));
+    assertEquals(Arrays.asList(cell), unloaded);
+    assertEquals(Arrays.asList("anchor-a"), detached);
+    assertEquals(1, metrics.getCounter(CellLoader.METRIC_UNLOADS).get());
+  }
+
+  @Test
+  public void unloading_cancelsTheResolve() {
+    cells.add("a", 5, 0, 0);
+    loader.update(0, 0, 0);
+
+    loader.update(100, 0, 0);
+    resolving.get("a").complete("late");
+
+    assertTrue(resolving.get("a").isDone());
+    assertEquals(0, loader.getResolvingCount());
+    assertTrue(loaded.isEmpty());
+  }
+
+  @Test
+  public void failedCell_isRetriedAfterLeavingTheUnloadRadius() {
+    cells.add("a", 5, 0, 0);
+    loader.update(0, 0, 0);
+    resolving.remove("a").completeExceptionally(new IllegalStateException());
+
+    loader.update(0, 0, 0);
+    assertFalse(resolving.containsKey("a"));
+    assertEquals(1, metrics.getCounter(CellLoader.METRIC_FAILURES).get());
+
+    loader.update(100, 0, 0);
+    loader.update(0, 0, 0);
+    assertTrue(resolving.containsKey("a"));
+  }
+
+  @Test
+  public void setLoaded_andClear() {
+    int cell = cells.add("hosted", 5, 0, 0);
+
+    loader.setLoaded(cell, "hosted-anchor");
+    loader.update(0, 0, 0);
+
+    assertTrue(resolving.isEmpty());
+    assertEquals(1, loader.getLoadedCount());
+
+    loader.clear();
+    assertEquals(Arrays.asList("hosted-anchor"), detached);
+    assertTrue(unloaded.isEmpty());
+    assertEquals(0, loader.getLoadedCount());
+  }
+}
@@ -0,0 +1,170 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link FrameScheduler}. */
+public class FrameSchedulerTest {
+
+  private static final long MILLIS = 1_000_000;
+
+  private long nowNanos = 0;
+  private final List<Integer> ran = new ArrayList<>();
+
+  /** A worker that takes {@code costNanos} per item. */
+  private FrameScheduler scheduler(long budgetNanos, long costNanos) {
+    return new FrameScheduler(
+        budgetNanos,
+        key -> {
+          ran.add(key);
+          nowNanos += costNanos;
+        },
+        () -> nowNanos);
+  }
+
+  @Test
+  public void runFrame_runsTheLowestPriorityFirst() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    scheduler.schedule(1, 3f);
+    scheduler.schedule(2, 1f);
+    scheduler.schedule(3, 2f);
+    scheduler.schedule(4, 0.5f);
+
+    scheduler.runFrame();
+
+    assertEquals(Arrays.asList(4, 2, 3, 1), ran);
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+
+  @Test
+  public void runFrame_stopsAtTheBudget() {
+    FrameScheduler scheduler = scheduler(4 * MILLIS, MILLIS);
+    for (int key = 0; key < 10; key++) {
+      scheduler.schedule(key, key);
+    }
+
+    scheduler.runFrame();
+
+    assertEquals(4, ran.size());
+    assertEquals(6, scheduler.getQueueDepth());
+    assertEquals(10, scheduler.getMaxQueueDepth());
+    assertEquals(0, scheduler.getOverrunCount());
+
+    scheduler.runFrame();
+    scheduler.runFrame();
+    assertEquals(10, ran.size());
+    assertEquals(3, scheduler.getFrameCount());
+  }
+
+  @Test
+  public void slowItem_runsAndCountsAsOverrun() {
+    FrameScheduler scheduler = scheduler(2 * MILLIS, 5 * MILLIS);
+    scheduler.schedule(7, 0);
+    scheduler.schedule(8, 1);
+
+    scheduler.runFrame();
+
+    assertEquals(Arrays.asList(7), ran);
+    assertEquals(1, scheduler.getOverrunCount());
+    assertEquals(3 * MILLIS, scheduler.getTotalOverrunNanos());
+    assertEquals(5 * MILLIS, scheduler.getMaxFrameNanos());
+  }
+
+  @Test
+  public void schedule_ofAQueuedKeyChangesItsPriority() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    scheduler.schedule(1, 1f);
+    scheduler.schedule(2, 2f);
+    scheduler.schedule(2, 0f);
+
+    scheduler.runFrame();
+
+    assertEquals(Arrays.asList(2, 1), ran);
+    assertEquals(2, scheduler.getScheduledCount());
+  }
+
+  @Test
+  public void cancel_removesTheItem() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    for (int key = 0; key < 5; key++) {
+      scheduler.schedule(key, key);
+    }
+
+    assertTrue(scheduler.cancel(0));
+    assertTrue(scheduler.cancel(3));
+    assertFalse(scheduler.cancel(3));
+    assertFalse(scheduler.cancel(99));
+    scheduler.runFrame();
+
+    assertEquals(Arrays.asList(1, 2, 4), ran);
+  }
+
+  @Test
+  public void prioritizer_ordersByTheCurrentPriorities() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    for (int key = 0; key < 50; key++) {
+      scheduler.schedule(key, key);
+    }
+    // e.g. the camera moved to the other end of the scene
+    scheduler.setPrioritizer(key -> -key);
+
+    scheduler.runFrame();
+
+    for (int i = 0; i < 50; i++) {
+      assertEquals(49 - i, (int) ran.get(i));
+    }
+  }
+
+  @Test
+  public void prioritizer_countsAgainstTheBudget() {
+    FrameScheduler scheduler = scheduler(4 * MILLIS, MILLIS);
+    for (int key = 0; key < 10; key++) {
+      scheduler.schedule(key, key);
+    }
+    scheduler.setPrioritizer(
+        key -> {
+          nowNanos += MILLIS / 2;
+          return key;
+        });
+
+    scheduler.runFrame();
+
+    // the 10 priorities take 5 ms, so only the one item that always runs fits
+    assertEquals(Arrays.asList(0), ran);
+    assertEquals(1, scheduler.getOverrunCount());
+    assertEquals(6 * MILLIS, scheduler.getMaxFrameNanos());
+  }
+
+  @Test
+  public void largeKeys_areQueuedLikeSmallOnes() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    scheduler.schedule(Integer.MAX_VALUE, 2f);
+    scheduler.schedule(1_000_000_000, 1f);
+    scheduler.schedule(3, 3f);
+
+    assertTrue(scheduler.isQueued(Integer.MAX_VALUE));
+    assertFalse(scheduler.isQueued(1_000_000_001));
+    scheduler.runFrame();
+
+    assertEquals(Arrays.asList(1_000_000_000, Integer.MAX_VALUE, 3), ran);
+  }
+
+  @Test
+  public void clear_dropsEverything() {
+    FrameScheduler scheduler = scheduler(100 * MILLIS, MILLIS);
+    scheduler.schedule(1, 1f);
+    scheduler.schedule(2000, 2f);
+
+    scheduler.clear();
+    scheduler.runFrame();
+
+    assertTrue(ran.isEmpty());
+    assertFalse(scheduler.isQueued(2000));
+    assertEquals(0, scheduler.getFrameCount());
+  }
+}
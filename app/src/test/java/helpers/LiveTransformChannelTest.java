@@ -0,0 +1,116 @@
+package helpers;
+
+import com.android.vrproject.InMemorySceneStore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link LiveTransformChannel}, on an {@link InMemorySceneStore} without latency. */
+public class LiveTransformChannelTest {
+
+  private static final long TIMEOUT_MS = 5000;
+  private static final long INTERVAL_MS = 80;
+
+  private final InMemorySceneStore store = new InMemorySceneStore();
+  private final MetricsRegistry metrics = new MetricsRegistry();
+  private final LiveTransformChannel sender =
+      new LiveTransformChannel(store.connect(), "a", INTERVAL_MS, metrics);
+  private final LiveTransformChannel receiver =
+      new LiveTransformChannel(store.connect(), "b", INTERVAL_MS, new MetricsRegistry());
+  private final List<float[]> received = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void shutdown() {
+    store.shutdown();
+  }
+
+  @Test
+  public void offer_isRateLimited() throws InterruptedException {
+    sender.open(142, (index, transform) -> {});
+
+    for (long now = 0; now <= 120; now += 30) {
+      sender.offer(3, transform(now), now);
+    }
+    awaitIdle();
+
+    assertEquals(2, sender.getSentCount());
+    assertEquals(3, sender.getSkippedCount());
+    assertEquals(2, metrics.getCounter(LiveTransformChannel.METRIC_UPDATES).get());
+    assertEquals(1, metrics.getHistogram(LiveTransformChannel.METRIC_INTERVAL_MS).getCount());
+  }
+
+  @Test
+  public void offer_skipsUnchangedTransforms() {
+    sender.open(142, (index, transform) -> {});
+
+    sender.offer(3, transform(1), 0);
+    sender.offer(3, transform(1), 100);
+
+    assertEquals(1, sender.getSentCount());
+  }
+
+  @Test
+  public void receiver_seesChangesOfOtherClientsOnly() throws InterruptedException {
+    List<Integer> reportedToSender = Collections.synchronizedList(new ArrayList<>());
+    sender.open(142, (index, transform) -> reportedToSender.add(index));
+    receiver.open(142, (index, transform) -> received.add(new float[] {index, transform[0]}));
+    awaitIdle();
+
+    sender.offer(3, transform(1), 0);
+    awaitIdle();
+    sender.offer(3, transform(2), 100);
+    awaitIdle();
+    sender.end(3, 150);
+    awaitIdle();
+
+    assertTrue(reportedToSender.isEmpty());
+    assertEquals(2, received.size());
+    assertEquals(3, received.get(0)[0], 0);
+    assertEquals(1, received.get(0)[1], 0.001f);
+    assertEquals(2, received.get(1)[1], 0.001f);
+    assertNull(store.getValue("live;142"));
+  }
+
+  @Test
+  public void rates_coverFinishedGestures() throws InterruptedException {
+    sender.open(142, (index, transform) -> {});
+
+    for (long now = 0; now < 1000; now += 100) {
+      sender.offer(3, transform(now), now);
+    }
+    sender.end(3, 1000);
+    awaitIdle();
+
+    assertEquals(10, sender.getUpdateRate(), 0.001);
+    assertEquals(sender.getSentBytes(), sender.getBytesPerSecond(), 0.001);
+    assertFalse(sender.isStreaming());
+  }
+
+  @Test
+  public void close_endsTheGestureInProgress() throws InterruptedException {
+    sender.open(142, (index, transform) -> {});
+    sender.offer(3, transform(1), 0);
+    awaitIdle();
+    assertTrue(store.getValue("live;142/a") instanceof Map);
+
+    sender.close();
+    awaitIdle();
+
+    assertNull(store.getValue("live;142"));
+  }
+
+  private void awaitIdle() throws InterruptedException {
+    assertTrue(store.awaitIdle(TIMEOUT_MS));
+  }
+
+  private static float[] transform(float x) {
+    return new float[] {x, 0, 0, 1, 1, 1, 0, 0, 0, 1};
+  }
+}
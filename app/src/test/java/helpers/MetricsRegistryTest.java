@@ -0,0 +1,99 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link MetricsRegistry} and its metric types. */
+public class MetricsRegistryTest {
+
+  @Test
+  public void registry_returnsTheSameMetricForTheSameName() {
+    MetricsRegistry metrics = new MetricsRegistry();
+
+    metrics.counter("writes").increment();
+    metrics.counter("writes").add(2);
+
+    assertSame(metrics.counter("writes"), metrics.getCounter("writes"));
+    assertEquals(3, metrics.getCounter("writes").get());
+    assertNull(metrics.getCounter("reads"));
+  }
+
+  @Test
+  public void gauge_readsItsSupplierWhenQueried() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    AtomicLong listeners = new AtomicLong(1);
+    metrics.gauge("listeners", listeners::get);
+
+    listeners.set(4);
+
+    assertEquals(4, metrics.getGauge("listeners").get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void gauge_withSupplierCannotBeSet() {
+    new Gauge(() -> 1).set(2);
+  }
+
+  @Test
+  public void histogram_countsValuesIntoBuckets() {
+    Histogram histogram = new Histogram(new long[] {10, 100, 1000});
+
+    histogram.record(5);
+    histogram.record(10);
+    histogram.record(11);
+    histogram.record(5000);
+
+    assertEquals(4, histogram.getBucketCount());
+    assertEquals(2, histogram.getBucket(0));
+    assertEquals(1, histogram.getBucket(1));
+    assertEquals(0, histogram.getBucket(2));
+    assertEquals(1, histogram.getBucket(3));
+    assertEquals(4, histogram.getCount());
+    assertEquals(5, histogram.getMin());
+    assertEquals(5000, histogram.getMax());
+    assertEquals(5026 / 4, histogram.getMean());
+  }
+
+  @Test
+  public void histogram_estimatesPercentilesFromBucketBounds() {
+    Histogram histogram = new Histogram(Histogram.exponentialBounds(1, 2, 10));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(64, histogram.getPercentile(0.5));
+    assertEquals(100, histogram.getPercentile(0.99));
+    assertEquals(1, histogram.getPercentile(0));
+  }
+
+  @Test
+  public void histogram_isEmptyBeforeTheFirstValue() {
+    Histogram histogram = new Histogram(Histogram.MICROS_BOUNDS);
+
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(0.5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void histogram_rejectsUnsortedBounds() {
+    new Histogram(new long[] {10, 5});
+  }
+
+  @Test
+  public void dump_listsEveryMetric() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    metrics.counter("sync.writes").add(3);
+    metrics.gauge("firebase.listeners").set(1);
+    metrics.histogram("frame.update_us", Histogram.MICROS_BOUNDS).record(120);
+
+    String dump = metrics.dump();
+
+    assertTrue(dump, dump.contains("sync.writes 3\n"));
+    assertTrue(dump, dump.contains("firebase.listeners 1\n"));
+    assertTrue(dump, dump.contains("frame.update_us count=1 mean=120 min=120"));
+  }
+}
@@ -0,0 +1,80 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link ObjectPool}. */
+public class ObjectPoolTest {
+
+  private static class Item {
+    boolean recycled = false;
+  }
+
+  @Test
+  public void acquire_reusesReleasedObjects() {
+    ObjectPool<Item> pool = new ObjectPool<>(4, Item::new, item -> item.recycled = true);
+
+    Item first = pool.acquire();
+    pool.release(first);
+    Item second = pool.acquire();
+
+    assertSame(first, second);
+    assertTrue(second.recycled);
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(1, pool.getReusedCount());
+    assertEquals(0.5, pool.getReuseRate(), 1e-9);
+  }
+
+  @Test
+  public void rebuild_createsNoNewObjects() {
+    ObjectPool<Item> pool = new ObjectPool<>(1024, Item::new, item -> {});
+    List<Item> scene = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      scene.add(pool.acquire());
+    }
+
+    for (Item item : scene) {
+      pool.release(item);
+    }
+    scene.clear();
+    for (int i = 0; i < 1000; i++) {
+      scene.add(pool.acquire());
+    }
+
+    assertEquals(1000, pool.getCreatedCount());
+    assertEquals(1000, pool.getReusedCount());
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void release_discardsBeyondMaxIdle() {
+    ObjectPool<Item> pool = new ObjectPool<>(2, Item::new, item -> item.recycled = true);
+    Item discarded = new Item();
+
+    pool.release(new Item());
+    pool.release(new Item());
+    pool.release(discarded);
+
+    assertEquals(2, pool.getIdleCount());
+    assertEquals(1, pool.getDiscardedCount());
+    // it is reset all the same, the caller gave it up
+    assertTrue(discarded.recycled);
+  }
+
+  @Test
+  public void prewarm_fillsUpToMaxIdle() {
+    ObjectPool<Item> pool = new ObjectPool<>(8, Item::new, item -> {});
+
+    pool.prewarm(5);
+    pool.prewarm(20);
+    pool.acquire();
+
+    assertEquals(8, pool.getCreatedCount());
+    assertEquals(7, pool.getIdleCount());
+    assertEquals(1, pool.getReusedCount());
+  }
+}
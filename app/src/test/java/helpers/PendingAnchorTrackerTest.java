@@ -0,0 +1,342 @@
+package helpers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PendingAnchorTracker}, driven by fake anchors and a fake clock instead of an
+ * ARCore session.
+ */
+public class PendingAnchorTrackerTest {
+
+  /** Stands in for an ARCore anchor whose cloud operation is finished by the test. */
+  private static class FakeAnchor {
+    final String id;
+    boolean done = false;
+    Exception failure = null;
+    boolean detached = false;
+
+    FakeAnchor(String id) {
+      this.id = id;
+    }
+
+    void succeed() {
+      done = true;
+    }
+
+    void fail(Exception failure) {
+      this.failure = failure;
+      done = true;
+    }
+  }
+
+  private static final PendingAnchorTracker.AnchorOps<FakeAnchor> OPS =
+      new PendingAnchorTracker.AnchorOps<FakeAnchor>() {
+        @Override
+        public boolean isDone(FakeAnchor anchor) {
+          return anchor.done;
+        }
+
+        @Override
+        public Exception failureOf(FakeAnchor anchor) {
+          return anchor.failure;
+        }
+
+        @Override
+        public void detach(FakeAnchor anchor) {
+          anchor.detached = true;
+        }
+      };
+
+  /** Records what happened to the operations it was added for. */
+  private static class RecordingCallback implements PendingAnchorTracker.Callback<FakeAnchor> {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void onComplete(FakeAnchor anchor) {
+      events.add("complete " + anchor.id);
+    }
+
+    @Override
+    public void onTimeout(FakeAnchor anchor) {
+      events.add("timeout " + anchor.id);
+    }
+
+    @Override
+    public void onCleared(FakeAnchor anchor) {
+      events.add("cleared " + anchor.id);
+    }
+  }
+
+  private long now;
+  private PendingAnchorTracker<FakeAnchor> tracker;
+
+  @Before
+  public void setUp() {
+    now = 0;
+    tracker = new PendingAnchorTracker<>(4, OPS, () -> now);
+  }
+
+  @Test
+  public void future_completesOnPollOnceDone() throws Exception {
+    FakeAnchor anchor = new FakeAnchor("a");
+    CompletableFuture<FakeAnchor> future = tracker.track(anchor, seconds(10));
+
+    tracker.poll();
+    assertFalse(future.isDone());
+
+    anchor.succeed();
+    tracker.poll();
+
+    assertSame(anchor, future.get());
+    assertFalse(anchor.detached);
+    assertEquals(0, tracker.getPendingCount());
+  }
+
+  @Test
+  public void future_failsAndDetachesOnError() {
+    FakeAnchor anchor = new FakeAnchor("a");
+    CompletableFuture<FakeAnchor> future = tracker.track(anchor, seconds(10));
+    Exception failure = new Exception("not found");
+
+    anchor.fail(failure);
+    tracker.poll();
+
+    assertSame(failure, causeOf(future));
+    assertTrue(anchor.detached);
+  }
+
+  @Test
+  public void future_timesOutAtDeadline() {
+    FakeAnchor anchor = new FakeAnchor("a");
+    CompletableFuture<FakeAnchor> future = tracker.track(anchor, seconds(10));
+
+    now = seconds(10) - 1;
+    tracker.poll();
+    assertFalse(future.isDone());
+
+    now = seconds(10);
+    tracker.poll();
+
+    assertTrue(causeOf(future) instanceof TimeoutException);
+    assertTrue(anchor.detached);
+    assertEquals(0, tracker.getPendingCount());
+  }
+
+  @Test
+  public void future_cancelDetachesOnlyThatAnchor() throws Exception {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    CompletableFuture<FakeAnchor> firstFuture = tracker.track(first, seconds(10));
+    CompletableFuture<FakeAnchor> secondFuture = tracker.track(second, seconds(10));
+
+    firstFuture.cancel(false);
+
+    assertTrue(first.detached);
+    assertEquals(1, tracker.getPendingCount());
+
+    first.succeed();
+    second.succeed();
+    tracker.poll();
+
+    assertSame(second, secondFuture.get());
+    assertFalse(second.detached);
+  }
+
+  @Test
+  public void allOf_completesWithAllResultsInOrder() throws Exception {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    CompletableFuture<List<FakeAnchor>> all =
+        CloudAnchorManager.allOf(
+            Arrays.asList(tracker.track(first, seconds(10)), tracker.track(second, seconds(10))));
+
+    second.succeed();
+    tracker.poll();
+    assertFalse(all.isDone());
+
+    first.succeed();
+    tracker.poll();
+
+    assertEquals(Arrays.asList(first, second), all.get());
+  }
+
+  @Test
+  public void allOf_failsAndCancelsTheRestWhenOneFails() {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    CompletableFuture<FakeAnchor> secondFuture = tracker.track(second, seconds(10));
+    CompletableFuture<List<FakeAnchor>> all =
+        CloudAnchorManager.allOf(Arrays.asList(tracker.track(first, seconds(10)), secondFuture));
+    Exception failure = new Exception("no match");
+
+    first.fail(failure);
+    tracker.poll();
+
+    assertSame(failure, causeOf(all));
+    assertTrue(secondFuture.isCancelled());
+    assertTrue(second.detached);
+    assertEquals(0, tracker.getPendingCount());
+  }
+
+  @Test
+  public void clear_cancelsFuturesAndSkipsListeners() {
+    FakeAnchor futureAnchor = new FakeAnchor("future");
+    FakeAnchor listenerAnchor = new FakeAnchor("listener");
+    RecordingCallback callback = new RecordingCallback();
+    CompletableFuture<FakeAnchor> future = tracker.track(futureAnchor, seconds(10));
+    tracker.add(listenerAnchor, callback, PendingAnchorTracker.NO_DEADLINE);
+
+    tracker.clear();
+    listenerAnchor.succeed();
+    tracker.poll();
+
+    assertTrue(future.isCancelled());
+    assertTrue(futureAnchor.detached);
+    assertEquals(Arrays.asList("cleared listener"), callback.events);
+  }
+
+  @Test
+  public void poll_clearFromCallbackClearsRemainingOperations() {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    RecordingCallback clearing =
+        new RecordingCallback() {
+          @Override
+          public void onComplete(FakeAnchor anchor) {
+            super.onComplete(anchor);
+            tracker.clear();
+          }
+        };
+    RecordingCallback other = new RecordingCallback();
+    tracker.add(first, clearing, PendingAnchorTracker.NO_DEADLINE);
+    tracker.add(second, other, PendingAnchorTracker.NO_DEADLINE);
+
+    first.succeed();
+    second.succeed();
+    tracker.poll();
+
+    assertEquals(Arrays.asList("complete first"), clearing.events);
+    assertEquals(Arrays.asList("cleared second"), other.events);
+  }
+
+  @Test
+  public void poll_clearFromCallbackCancelsRemainingFutures() {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    CompletableFuture<FakeAnchor> clearing = tracker.track(first, PendingAnchorTracker.NO_DEADLINE);
+    CompletableFuture<FakeAnchor> other = tracker.track(second, PendingAnchorTracker.NO_DEADLINE);
+    clearing.thenRun(tracker::clear);
+
+    first.succeed();
+    second.succeed();
+    tracker.poll();
+
+    assertTrue(clearing.isDone() && !clearing.isCompletedExceptionally());
+    assertTrue(other.isCancelled());
+    assertTrue(second.detached);
+    assertFalse(first.detached);
+  }
+
+  @Test
+  public void poll_addFromCallbackIsPolledNextTime() {
+    FakeAnchor first = new FakeAnchor("first");
+    FakeAnchor second = new FakeAnchor("second");
+    RecordingCallback secondCallback = new RecordingCallback();
+    tracker.add(
+        first,
+        new RecordingCallback() {
+          @Override
+          public void onComplete(FakeAnchor anchor) {
+            tracker.add(second, secondCallback, PendingAnchorTracker.NO_DEADLINE);
+          }
+        },
+        PendingAnchorTracker.NO_DEADLINE);
+
+    first.succeed();
+    tracker.poll();
+    assertEquals(1, tracker.getPendingCount());
+
+    second.succeed();
+    tracker.poll();
+
+    assertEquals(Arrays.asList("complete second"), secondCallback.events);
+  }
+
+  @Test
+  public void poll_recordsNothingWhenIdle() {
+    tracker.poll();
+
+    assertEquals(0, tracker.getLastPollNanos());
+    assertEquals(0, tracker.getAveragePollNanos());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void add_failsBeyondCapacity() {
+    for (int i = 0; i < 5; i++) {
+      tracker.add(
+          new FakeAnchor("a" + i), new RecordingCallback(), PendingAnchorTracker.NO_DEADLINE);
+    }
+  }
+
+  @Test
+  public void track_beyondCapacityFailsTheFutureAndDetachesTheAnchor() {
+    for (int i = 0; i < 4; i++) {
+      tracker.track(new FakeAnchor("a" + i), seconds(10));
+    }
+    assertEquals(0, tracker.getRemainingCapacity());
+    FakeAnchor rejected = new FakeAnchor("rejected");
+
+    CompletableFuture<FakeAnchor> future = tracker.track(rejected, seconds(10));
+
+    assertTrue(causeOf(future) instanceof IllegalStateException);
+    assertTrue(rejected.detached);
+    assertEquals(4, tracker.getPendingCount());
+  }
+
+  @Test
+  public void allOf_beyondCapacityCancelsAndDetachesTheStartedOperations() {
+    tracker.track(new FakeAnchor("a0"), seconds(10));
+    tracker.track(new FakeAnchor("a1"), seconds(10));
+    List<FakeAnchor> anchors = new ArrayList<>();
+    List<CompletableFuture<FakeAnchor>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      FakeAnchor anchor = new FakeAnchor("b" + i);
+      anchors.add(anchor);
+      futures.add(tracker.track(anchor, seconds(10)));
+    }
+
+    CompletableFuture<List<FakeAnchor>> all = CloudAnchorManager.allOf(futures);
+
+    assertTrue(causeOf(all) instanceof IllegalStateException);
+    for (FakeAnchor anchor : anchors) {
+      assertTrue(anchor.detached);
+    }
+    assertEquals(2, tracker.getPendingCount());
+  }
+
+  private static long seconds(long seconds) {
+    return TimeUnit.SECONDS.toNanos(seconds);
+  }
+
+  private static Throwable causeOf(CompletableFuture<?> future) {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+    throw new AssertionError("future did not fail");
+  }
+}
@@ -0,0 +1,212 @@
+package helpers;
+
+import com.android.vrproject.SceneData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link SceneCache}. */
+public class SceneCacheTest {
+
+  private static final long BUDGET = 1024 * 1024;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void get_returnsThePutScene() throws IOException {
+    SceneCache cache = new SceneCache(folder.newFolder(), BUDGET, Runnable::run);
+
+    cache.put(142, scene("ua-1", 3));
+    SceneData cached = cache.get(142).join();
+
+    assertEquals("ua-1", cached.getCloudAnchorId());
+    assertEquals(3, cached.nodes().size());
+    assertEquals("chair", cached.getModel(1));
+    assertEquals(1, cache.getHitCount());
+    assertNull(cache.get(143).join());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void scenes_surviveANewInstance() throws IOException {
+    File directory = folder.newFolder();
+    new SceneCache(directory, BUDGET, Runnable::run).put(142, scene("ua-1", 3));
+
+    SceneCache reopened = new SceneCache(directory, BUDGET, Runnable::run);
+
+    assertTrue(reopened.contains(142));
+    assertEquals("ua-1", reopened.get(142).join().getCloudAnchorId());
+  }
+
+  @Test
+  public void damagedFile_isAMissAndDeleted() throws IOException {
+    File directory = folder.newFolder();
+    SceneCache cache = new SceneCache(directory, BUDGET, Runnable::run);
+    cache.put(142, scene("ua-1", 3));
+
+    File file = new File(directory, "scene_142.bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(raf.length() - 1);
+      raf.write(raf.read() ^ 0xff);
+    }
+
+    assertNull(cache.get(142).join());
+    assertEquals(1, cache.getCorruptCount());
+    assertFalse(file.exists());
+    assertFalse(cache.contains(142));
+  }
+
+  @Test
+  public void truncatedFile_isAMiss() throws IOException {
+    File directory = folder.newFolder();
+    SceneCache cache = new SceneCache(directory, BUDGET, Runnable::run);
+    cache.put(142, scene("ua-1", 3));
+
+    File file = new File(directory, "scene_142.bin");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() / 2);
+    }
+
+    assertNull(cache.get(142).join());
+  }
+
+  @Test
+  public void unfinishedWrites_areDeletedOnOpen() throws IOException {
+    File directory = folder.newFolder();
+    File temp = new File(directory, "scene_142.tmp");
+    assertTrue(temp.createNewFile());
+
+    SceneCache cache = new SceneCache(directory, BUDGET, Runnable::run);
+
+    assertFalse(temp.exists());
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  @Test
+  public void pendingPuts_areCoalesced() throws IOException {
+    List<Runnable> queued = new ArrayList<>();
+    SceneCache cache = new SceneCache(folder.newFolder(), BUDGET, queued::add);
+
+    cache.put(142, scene("ua-1", 1));
+    cache.put(142, scene("ua-1", 2));
+    cache.put(142, scene("ua-1", 3));
+    // the index and one write
+    assertEquals(2, queued.size());
+    runAll(queued);
+
+    assertEquals(1, cache.getWriteCount());
+    CompletableFuture<SceneData> cached = cache.get(142);
+    runAll(queued);
+    assertEquals(3, cached.join().nodes().size());
+  }
+
+  @Test
+  public void put_writesACopyOfTheScene() throws IOException {
+    List<Runnable> queued = new ArrayList<>();
+    SceneCache cache = new SceneCache(folder.newFolder(), BUDGET, queued::add);
+    SceneData sceneData = scene("ua-1", 3);
+
+    cache.put(142, sceneData);
+    sceneData.addNew("table");
+    runAll(queued);
+
+    CompletableFuture<SceneData> cached = cache.get(142);
+    assertFalse(cached.isDone());
+    runAll(queued);
+    assertEquals(3, cached.join().nodes().size());
+  }
+
+  @Test
+  public void overBudget_evictsTheLeastRecentlyUsedScene() throws IOException {
+    File directory = folder.newFolder();
+    SceneCache probe = new SceneCache(folder.newFolder(), BUDGET, Runnable::run);
+    probe.put(1, scene("ua-0", 10));
+    long sceneBytes = probe.getSizeBytes();
+
+    SceneCache cache = new SceneCache(directory, sceneBytes * 2, Runnable::run);
+    cache.put(1, scene("ua-1", 10));
+    cache.put(2, scene("ua-2", 10));
+    cache.get(1).join();
+    cache.put(3, scene("ua-3", 10));
+
+    assertEquals(1, cache.getEvictionCount());
+    assertTrue(cache.contains(1));
+    assertFalse(cache.contains(2));
+    assertTrue(cache.contains(3));
+    assertFalse(new File(directory, "scene_2.bin").exists());
+    assertTrue(cache.getSizeBytes() <= sceneBytes * 2);
+  }
+
+  @Test
+  public void remove_dropsPendingWriteAndFile() throws IOException {
+    List<Runnable> queued = new ArrayList<>();
+    SceneCache cache = new SceneCache(folder.newFolder(), BUDGET, queued::add);
+
+    cache.put(142, scene("ua-1", 3));
+    cache.remove(142);
+    runAll(queued);
+
+    assertFalse(cache.contains(142));
+    assertEquals(0, cache.getWriteCount());
+  }
+
+  @Test
+  public void remove_whileTheSceneIsWritten_dropsTheWrite() throws IOException {
+    File directory = folder.newFolder();
+    List<Runnable> queued = new ArrayList<>();
+    SceneCache cache = new SceneCache(directory, BUDGET, queued::add);
+    // removes the scene while the write encodes it
+    SceneData removing =
+        new SceneData() {
+          @Override
+          public SceneData copy() {
+            return this;
+          }
+
+          @Override
+          public String getCloudAnchorId() {
+            cache.remove(142);
+            return "ua-1";
+          }
+        };
+
+    cache.put(142, removing);
+    runAll(queued);
+
+    assertFalse(cache.contains(142));
+    assertEquals(0, cache.getWriteCount());
+    assertFalse(new File(directory, "scene_142.bin").exists());
+
+    cache.put(142, scene("ua-2", 3));
+    runAll(queued);
+    assertTrue(cache.contains(142));
+  }
+
+  /** Runs the queued tasks in order, including the ones they queue. */
+  private static void runAll(List<Runnable> queued) {
+    while (!queued.isEmpty()) {
+      queued.remove(0).run();
+    }
+  }
+
+  private static SceneData scene(String cloudAnchorId, int nodeCount) {
+    SceneData sceneData = new SceneData();
+    sceneData.setCloudAnchorId(cloudAnchorId);
+    float[] transform = {0.1f, 0.2f, 0.3f, 1, 1, 1, 0, 0, 0, 1};
+    for (int i = 0; i < nodeCount; i++) {
+      transform[0] = i;
+      sceneData.setTransform(sceneData.addNew(i == 1 ? "chair" : null), transform);
+    }
+    return sceneData;
+  }
+}
@@ -0,0 +1,104 @@
+package helpers;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.SceneData;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link SceneDeltaTracker}. */
+public class SceneDeltaTrackerTest {
+
+  private final SceneDeltaTracker tracker = new SceneDeltaTracker();
+
+  @Test
+  public void collect_sendsOnlyChangedNodes() {
+    SceneData scene = scene("ua-1", 3);
+    tracker.reset(142, scene);
+
+    move(scene, 1, 5);
+    Map<String, Object> updates = tracker.collect(142, scene, 0, 1, 2);
+
+    assertEquals(1, updates.size());
+    NodeData moved = (NodeData) updates.get(SceneDeltaTracker.PATH_NODE_DATA_MAP + "ID_1");
+    assertEquals(5, moved.getPosition().x, 0);
+  }
+
+  @Test
+  public void collect_recordsWhatItReturnsAsSynced() {
+    SceneData scene = scene("ua-1", 2);
+    tracker.reset(142, scene);
+    move(scene, 0, 1);
+
+    assertEquals(1, tracker.collect(142, scene, 0).size());
+    assertTrue(tracker.collect(142, scene, 0).isEmpty());
+  }
+
+  @Test
+  public void collect_sendsNewNodesAndChangedSceneFields() {
+    SceneData scene = scene("ua-1", 1);
+    tracker.reset(142, scene);
+
+    int added = scene.addNew();
+    scene.setCloudAnchorId("ua-2");
+    Map<String, Object> updates = tracker.collect(142, scene, added);
+
+    assertEquals(3, updates.size());
+    assertEquals("ua-2", updates.get(SceneDeltaTracker.PATH_CLOUD_ANCHOR_ID));
+    assertEquals(2, updates.get(SceneDeltaTracker.PATH_INDEX));
+    assertTrue(updates.containsKey(SceneDeltaTracker.PATH_NODE_DATA_MAP + SceneData.keyOf(added)));
+  }
+
+  @Test
+  public void collect_skipsRemovedNodes() {
+    SceneData scene = scene("ua-1", 2);
+    tracker.reset(142, scene);
+
+    scene.removeNode(1);
+
+    assertTrue(tracker.collect(142, scene, 1).isEmpty());
+  }
+
+  @Test
+  public void collect_forAnotherShortCode_sendsEverything() {
+    SceneData scene = scene("ua-1", 2);
+    tracker.reset(142, scene);
+
+    Map<String, Object> updates = tracker.collect(143, scene, 0, 1);
+
+    assertEquals(4, updates.size());
+  }
+
+  @Test
+  public void invalidate_sendsTheNodeAgain() {
+    SceneData scene = scene("ua-1", 2);
+    tracker.reset(142, scene);
+
+    tracker.invalidate(1);
+    tracker.invalidateSceneFields();
+    Map<String, Object> updates = tracker.collect(142, scene, 0, 1);
+
+    assertEquals(3, updates.size());
+    assertTrue(updates.containsKey(SceneDeltaTracker.PATH_NODE_DATA_MAP + "ID_1"));
+    assertFalse(updates.containsKey(SceneDeltaTracker.PATH_NODE_DATA_MAP + "ID_0"));
+  }
+
+  private static SceneData scene(String cloudAnchorId, int nodeCount) {
+    SceneData scene = new SceneData();
+    scene.setCloudAnchorId(cloudAnchorId);
+    for (int i = 0; i < nodeCount; i++) {
+      scene.addNew();
+    }
+    return scene;
+  }
+
+  private static void move(SceneData scene, int index, float x) {
+    float[] transform = new float[NodeData.TRANSFORM_SIZE];
+    scene.getTransform(index, transform);
+    transform[0] = x;
+    scene.setTransform(index, transform);
+  }
+}
@@ -0,0 +1,233 @@
+package helpers;
+
+import com.android.vrproject.InMemorySceneStore;
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneDataMapper;
+import com.android.vrproject.SceneStore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link SceneDownloader}. */
+public class SceneDownloaderTest {
+
+  private static final long TIMEOUT_MS = 5000;
+
+  private final InMemorySceneStore store = new InMemorySceneStore(2, 2, 0, 7);
+  private final MetricsRegistry metrics = new MetricsRegistry();
+  private final SceneCodec codec = new SceneCodec();
+
+  @After
+  public void shutdown() {
+    store.shutdown();
+  }
+
+  @Test
+  public void download_deliversTheHeaderThenThePages() throws InterruptedException {
+    Map<String, Object> nodeBlobs = new HashMap<>();
+    for (int index = 0; index < 5; index++) {
+      nodeBlobs.put(
+          SceneData.keyOf(index),
+          SceneCodec.toBase64(codec.encodeTransform(transform(index), "model" + index)));
+    }
+    store.set("anchor;142", scene("ua-1", 5, FirebaseManager.KEY_NODE_BLOBS, nodeBlobs), null);
+
+    Recorder recorder = download(142, 2);
+
+    assertEquals(Collections.singletonList("ua-1"), recorder.headers);
+    assertEquals(3, recorder.pages.size());
+    assertEquals(2, recorder.pages.get(0).nodes().size());
+    assertEquals(1, recorder.pages.get(2).nodes().size());
+    assertEquals("ua-1", recorder.pages.get(2).getCloudAnchorId());
+
+    SceneData scene = recorder.complete;
+    assertEquals(5, scene.nodes().size());
+    assertEquals(5, scene.getIndex());
+    assertEquals("model3", scene.getModel(3));
+    float[] out = new float[10];
+    scene.getTransform(3, out);
+    assertArrayEquals(transform(3), out, 0f);
+
+    assertEquals(3, metrics.getCounter(SceneDownloader.METRIC_PAGES).get());
+    assertEquals(5, metrics.getCounter(SceneDownloader.METRIC_NODES).get());
+    assertEquals(1, metrics.getHistogram(SceneDownloader.METRIC_TOTAL_MS).getCount());
+  }
+
+  @Test
+  public void download_readsPojoScenes() throws InterruptedException {
+    Map<String, Object> rotation = new HashMap<>();
+    rotation.put("y", 1);
+    Map<String, Object> node = new HashMap<>();
+    node.put("rotation", rotation);
+    node.put("model", "chair");
+    Map<String, Object> nodeDataMap = new HashMap<>();
+    nodeDataMap.put(SceneData.keyOf(7), node);
+    store.set("anchor;142", scene("ua-1", 8, "nodeDataMap", nodeDataMap), null);
+
+    Recorder recorder = download(142, 2);
+
+    assertEquals(1, recorder.pages.size());
+    float[] out = new float[10];
+    recorder.complete.getTransform(7, out);
+    // missing values are zero, a rotation without w has w = 1
+    assertArrayEquals(new float[] {0, 0, 0, 0, 0, 0, 0, 1, 0, 1}, out, 0f);
+    assertEquals("chair", recorder.complete.getModel(7));
+  }
+
+  @Test
+  public void download_readsBlobScenes() throws InterruptedException {
+    SceneData blob = new SceneData();
+    blob.setCloudAnchorId("ua-1");
+    blob.addNew("chair");
+    blob.addNew("table");
+    store.set(
+        "anchor;142",
+        scene("ua-1", 2, FirebaseManager.KEY_BLOB, codec.encodeSceneToString(blob)),
+        null);
+
+    Recorder recorder = download(142, 1);
+
+    assertEquals(1, recorder.pages.size());
+    assertEquals(2, recorder.complete.nodes().size());
+    assertEquals("table", recorder.complete.getModel(1));
+  }
+
+  @Test
+  public void download_requestsTheFirstPageOfEveryFormatWithTheHeader() {
+    List<String> paths = new ArrayList<>();
+    SceneStore recording =
+        new SceneStore() {
+          @Override
+          public void increment(
+              String path, long delta, long initialValue, CounterListener listener) {}
+
+          @Override
+          public void set(String path, Object value, CompletionListener listener) {}
+
+          @Override
+          public void update(Map<String, Object> updates, CompletionListener listener) {}
+
+          @Override
+          public void read(String path, ValueListener listener) {
+            paths.add(path);
+          }
+
+          @Override
+          public void readRange(
+              String path, String startAfter, int limit, ValueListener listener) {
+            paths.add(path);
+          }
+
+          @Override
+          public Subscription subscribe(String path, ValueListener listener) {
+            return null;
+          }
+        };
+
+    new SceneDownloader(recording, 2, metrics).download(142, new Recorder());
+
+    // nothing has answered yet, so a POJO scene does not wait for the other formats first
+    assertTrue(paths.contains("anchor;142/" + FirebaseManager.KEY_NODE_BLOBS));
+    assertTrue(paths.contains("anchor;142/" + SceneDataMapper.KEY_NODE_DATA_MAP));
+    assertTrue(paths.contains("anchor;142/" + FirebaseManager.KEY_BLOB));
+    assertEquals(5, paths.size());
+  }
+
+  @Test
+  public void download_ofAMissingSceneReportsANullHeader() throws InterruptedException {
+    Recorder recorder = download(143, 2);
+
+    assertEquals(Collections.singletonList(null), recorder.headers);
+    assertTrue(recorder.pages.isEmpty());
+    // the first page was requested with the header and answers after it
+    assertEquals(0, recorder.completeCount.get());
+    assertNull(recorder.complete);
+  }
+
+  @Test
+  public void cancel_stopsTheListener() throws InterruptedException {
+    store.set("anchor;142", scene("ua-1", 0, "x", "y"), null);
+    SceneDownloader downloader = new SceneDownloader(store, 2, metrics);
+    Recorder recorder = new Recorder();
+
+    downloader.download(142, recorder);
+    downloader.cancel();
+    assertTrue(store.awaitIdle(TIMEOUT_MS));
+
+    assertFalse(downloader.isRunning());
+    assertTrue(recorder.headers.isEmpty());
+  }
+
+  private Recorder download(int shortCode, int pageSize) throws InterruptedException {
+    SceneDownloader downloader = new SceneDownloader(store, pageSize, metrics);
+    Recorder recorder = new Recorder();
+    downloader.download(shortCode, recorder);
+    assertTrue(recorder.done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    // reads that are still on their way must not call the listener anymore
+    assertTrue(store.awaitIdle(TIMEOUT_MS));
+    assertFalse(downloader.isRunning());
+    assertEquals(Collections.emptyList(), recorder.errors);
+    return recorder;
+  }
+
+  private static Map<String, Object> scene(
+      String cloudAnchorId, int index, String nodesKey, Object nodes) {
+    Map<String, Object> scene = new HashMap<>();
+    scene.put("cloudAnchorId", cloudAnchorId);
+    scene.put("index", index);
+    scene.put(nodesKey, nodes);
+    return scene;
+  }
+
+  private static float[] transform(int index) {
+    return new float[] {index, 0.5f, -index, 1, 1, 1, 0, 0, 0, 1};
+  }
+
+  /** Records the calls of the store threads, so that the test thread can read them. */
+  private static class Recorder implements SceneDownloader.Listener {
+    final List<String> headers = Collections.synchronizedList(new ArrayList<>());
+    final List<SceneData> pages = Collections.synchronizedList(new ArrayList<>());
+    volatile SceneData complete;
+    final AtomicInteger completeCount = new AtomicInteger();
+    final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch done = new CountDownLatch(1);
+
+    @Override
+    public void onHeader(String cloudAnchorId, int index) {
+      headers.add(cloudAnchorId);
+      if (cloudAnchorId == null) {
+        done.countDown();
+      }
+    }
+
+    @Override
+    public void onPage(SceneData page) {
+      pages.add(page);
+    }
+
+    @Override
+    public void onComplete(SceneData sceneData) {
+      completeCount.incrementAndGet();
+      complete = sceneData;
+      done.countDown();
+    }
+
+    @Override
+    public void onError(Exception error) {
+      // thrown on a store thread, an assertion would not fail the test
+      errors.add(error);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link ShortCodeAllocator}, with a block source that is answered by the test. */
+public class ShortCodeAllocatorTest {
+
+  /** Records lease requests until the test answers them. */
+  private static class FakeSource implements ShortCodeAllocator.BlockSource {
+    final List<ShortCodeAllocator.BlockListener> leases = new ArrayList<>();
+    int nextCode = 142;
+
+    @Override
+    public void leaseBlock(int size, ShortCodeAllocator.BlockListener listener) {
+      leases.add(listener);
+    }
+
+    void grant(int size) {
+      leases.remove(0).onBlockLeased(nextCode);
+      nextCode += size;
+    }
+
+    void fail() {
+      leases.remove(0).onBlockLeased(null);
+    }
+  }
+
+  private final FakeSource source = new FakeSource();
+  private final List<Integer> codes = new ArrayList<>();
+  private long nowNanos = 0;
+  private final ShortCodeAllocator allocator =
+      new ShortCodeAllocator(source, 4, 1, () -> nowNanos);
+
+  @Test
+  public void nothingIsLeasedBeforeTheFirstRequest() {
+    assertTrue(source.leases.isEmpty());
+    assertEquals(0, allocator.getLeaseCount());
+  }
+
+  @Test
+  public void firstRequest_waitsForTheLease() {
+    allocator.nextShortCode(codes::add);
+    assertTrue(codes.isEmpty());
+
+    nowNanos = 50;
+    source.grant(4);
+
+    assertEquals(Arrays.asList(142), codes);
+    assertEquals(0, allocator.getHitCount());
+    assertEquals(1, allocator.getMissCount());
+    assertEquals(3, allocator.getAvailableCount());
+    assertEquals(50, allocator.getMaxLatencyNanos());
+  }
+
+  @Test
+  public void codesOfABlockAreHandedOutWithoutALease() {
+    allocator.prefetch();
+    source.grant(4);
+
+    allocator.nextShortCode(codes::add);
+    allocator.nextShortCode(codes::add);
+
+    assertEquals(Arrays.asList(142, 143), codes);
+    assertEquals(2, allocator.getHitCount());
+    assertTrue(source.leases.isEmpty());
+  }
+
+  @Test
+  public void nextBlockIsLeasedAtTheThreshold_andUsedAfterTheCurrentOne() {
+    allocator.prefetch();
+    source.grant(4);
+    source.nextCode = 500;
+
+    for (int i = 0; i < 3; i++) {
+      allocator.nextShortCode(codes::add);
+    }
+    assertEquals(1, source.leases.size());
+    source.grant(4);
+    allocator.nextShortCode(codes::add);
+    allocator.nextShortCode(codes::add);
+
+    assertEquals(Arrays.asList(142, 143, 144, 145, 500), codes);
+    assertEquals(5, allocator.getHitCount());
+  }
+
+  @Test
+  public void prefetch_leasesOnlyOnce() {
+    allocator.prefetch();
+    allocator.prefetch();
+    allocator.nextShortCode(codes::add);
+
+    assertEquals(1, source.leases.size());
+  }
+
+  @Test
+  public void failedLease_failsWaitingRequests_andIsRetriedByTheNextRequest() {
+    allocator.nextShortCode(codes::add);
+    allocator.nextShortCode(codes::add);
+
+    source.fail();
+    assertEquals(Arrays.asList(null, null), codes);
+    assertEquals(1, allocator.getFailedLeaseCount());
+    assertTrue(source.leases.isEmpty());
+
+    allocator.nextShortCode(codes::add);
+    source.grant(4);
+
+    assertEquals(Arrays.asList(null, null, 142), codes);
+  }
+
+  @Test
+  public void waitingRequestsBeyondTheBlock_waitForTheNextLease() {
+    for (int i = 0; i < 6; i++) {
+      allocator.nextShortCode(codes::add);
+    }
+
+    source.grant(4);
+    assertEquals(Arrays.asList(142, 143, 144, 145), codes);
+    source.grant(4);
+
+    assertEquals(Arrays.asList(142, 143, 144, 145, 146, 147), codes);
+    assertEquals(2, allocator.getAvailableCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refillThresholdMustBeBelowTheBlockSize() {
+    new ShortCodeAllocator(source, 4, 4);
+  }
+}
@@ -0,0 +1,126 @@
+package helpers;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link SubscriptionRegistry}, with a fake database reference. */
+public class SubscriptionRegistryTest {
+
+  /** Stands in for a database reference and delivers values to the attached listeners. */
+  private static class FakeSource implements SubscriptionRegistry.Source {
+    final List<ValueEventListener> listeners = new ArrayList<>();
+
+    @Override
+    public void addValueEventListener(ValueEventListener listener) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void removeEventListener(ValueEventListener listener) {
+      listeners.remove(listener);
+    }
+
+    void deliver() {
+      for (ValueEventListener listener : new ArrayList<>(listeners)) {
+        listener.onDataChange(null);
+      }
+    }
+  }
+
+  /** Counts the values it receives. */
+  private static class Subscriber implements ValueEventListener {
+    int received = 0;
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot) {
+      received++;
+    }
+
+    @Override
+    public void onCancelled(DatabaseError error) {}
+  }
+
+  private final SubscriptionRegistry registry = new SubscriptionRegistry();
+  private final FakeSource source = new FakeSource();
+
+  @Test
+  public void acquire_sharesOneListenerPerShortCode() {
+    Subscriber first = new Subscriber();
+    Subscriber second = new Subscriber();
+
+    registry.acquire(142, source, first);
+    registry.acquire(142, source, second);
+    source.deliver();
+
+    assertEquals(1, source.listeners.size());
+    assertEquals(1, registry.getActiveCount());
+    assertEquals(2, registry.getRefCount(142));
+    assertEquals(1, first.received);
+    assertEquals(1, second.received);
+    assertEquals(1, registry.getCallbackCount(142));
+  }
+
+  @Test
+  public void repeatedAcquire_deliversOnceAndNeedsAsManyReleases() {
+    Subscriber subscriber = new Subscriber();
+    registry.acquire(142, source, subscriber);
+    registry.acquire(142, source, subscriber);
+
+    source.deliver();
+    registry.release(142, subscriber);
+
+    assertEquals(1, subscriber.received);
+    assertEquals(1, source.listeners.size());
+    assertEquals(1, registry.getRefCount(142));
+  }
+
+  @Test
+  public void releaseOfTheLastSubscriber_detachesTheListener() {
+    Subscriber first = new Subscriber();
+    Subscriber second = new Subscriber();
+    registry.acquire(142, source, first);
+    registry.acquire(142, source, second);
+
+    registry.release(142, first);
+    source.deliver();
+    registry.release(142, second);
+
+    assertEquals(0, first.received);
+    assertEquals(1, second.received);
+    assertTrue(source.listeners.isEmpty());
+    assertEquals(0, registry.getActiveCount());
+  }
+
+  @Test
+  public void releaseOfAnUnknownSubscriber_isIgnored() {
+    Subscriber subscriber = new Subscriber();
+    registry.acquire(142, source, subscriber);
+
+    registry.release(142, new Subscriber());
+    registry.release(143, subscriber);
+
+    assertEquals(1, registry.getRefCount(142));
+    assertEquals(1, source.listeners.size());
+  }
+
+  @Test
+  public void clear_detachesAllListeners() {
+    FakeSource other = new FakeSource();
+    registry.acquire(142, source, new Subscriber());
+    registry.acquire(143, other, new Subscriber());
+
+    registry.clear();
+
+    assertTrue(source.listeners.isEmpty());
+    assertTrue(other.listeners.isEmpty());
+    assertEquals(0, registry.getActiveCount());
+  }
+}
@@ -0,0 +1,91 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link TraceRecorder}. */
+public class TraceRecorderTest {
+
+  private long nowNanos = 0;
+
+  @Test
+  public void disabled_recordsNothing() throws IOException {
+    TraceRecorder trace = new TraceRecorder(8, () -> nowNanos);
+
+    trace.begin("sync.flush");
+    trace.end("sync.flush");
+    trace.instant("gesture.commit", 3);
+
+    assertEquals(0, trace.getEventCount());
+    assertEquals("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[]}\n", chromeTrace(trace));
+  }
+
+  @Test
+  public void spans_areWrittenAsChromeTraceEvents() throws IOException {
+    TraceRecorder trace = new TraceRecorder(8, () -> nowNanos);
+    trace.setEnabled(true);
+
+    nowNanos = 1_500;
+    trace.begin("sync.flush");
+    nowNanos = 2_250_001;
+    trace.end("sync.flush");
+    trace.counter("sync.pending", 7);
+
+    String json = chromeTrace(trace);
+    long tid = Thread.currentThread().getId();
+    assertTrue(json.contains("\"ph\":\"M\",\"pid\":1,\"tid\":" + tid));
+    assertTrue(json.contains("{\"name\":\"sync.flush\",\"ph\":\"B\",\"ts\":1.500,\"pid\":1,\"tid\":" + tid + "}"));
+    assertTrue(json.contains("{\"name\":\"sync.flush\",\"ph\":\"E\",\"ts\":2250.001,\"pid\":1,\"tid\":" + tid + "}"));
+    assertTrue(json.contains("\"ph\":\"C\",\"ts\":2250.001,\"pid\":1,\"tid\":" + tid + ",\"args\":{\"value\":7}}"));
+    assertTrue(json.indexOf("\"ph\":\"B\"") < json.indexOf("\"ph\":\"E\""));
+  }
+
+  @Test
+  public void fullBuffer_keepsTheNewestEvents() throws IOException {
+    TraceRecorder trace = new TraceRecorder(3, () -> nowNanos);
+    trace.setEnabled(true);
+
+    for (int i = 0; i < 5; i++) {
+      trace.instant("event", i);
+    }
+
+    assertEquals(3, trace.getEventCount());
+    assertEquals(2, trace.getDroppedCount());
+    String json = chromeTrace(trace);
+    assertFalse(json.contains("\"value\":1}"));
+    assertTrue(json.indexOf("\"value\":2}") < json.indexOf("\"value\":4}"));
+  }
+
+  @Test
+  public void disabling_keepsTheRecordedEvents() {
+    TraceRecorder trace = new TraceRecorder(8, () -> nowNanos);
+    trace.setEnabled(true);
+    trace.instant("a");
+    trace.setEnabled(false);
+    trace.instant("b");
+
+    assertEquals(1, trace.getEventCount());
+    trace.clear();
+    assertEquals(0, trace.getEventCount());
+  }
+
+  @Test
+  public void names_areEscaped() throws IOException {
+    TraceRecorder trace = new TraceRecorder(8, () -> nowNanos);
+    trace.setEnabled(true);
+
+    trace.instant("say \"hi\"\\");
+
+    assertTrue(chromeTrace(trace).contains("\"name\":\"say \\\"hi\\\"\\\\\""));
+  }
+
+  private static String chromeTrace(TraceRecorder trace) throws IOException {
+    StringWriter out = new StringWriter();
+    trace.writeChromeTrace(out);
+    return out.toString();
+  }
+}
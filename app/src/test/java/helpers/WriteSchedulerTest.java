@@ -0,0 +1,112 @@
+package helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for {@link WriteScheduler}. */
+public class WriteSchedulerTest {
+
+  private static final long INTERVAL = 100;
+
+  private final Recorder recorder = new Recorder();
+  private final WriteScheduler scheduler = new WriteScheduler(INTERVAL, 3, 2, recorder);
+
+  @Test
+  public void submit_keepsOnlyTheLatestTransformOfANode() {
+    scheduler.submit(7, new float[] {1, 0}, 0);
+    scheduler.submit(7, new float[] {2, 0}, 10);
+    scheduler.flush();
+
+    assertEquals(1, recorder.batches.size());
+    assertArrayEquals(new int[] {7}, recorder.indices(0));
+    assertEquals(2, recorder.transforms(0)[0][0], 0);
+    assertEquals(1, scheduler.getCoalescedCount());
+  }
+
+  @Test
+  public void submit_dropsTheLastFlushedTransform() {
+    scheduler.submit(7, new float[] {1, 0}, 0);
+    scheduler.flush();
+
+    scheduler.submit(7, new float[] {1, 0}, 10);
+
+    assertEquals(0, scheduler.getPendingCount());
+    assertEquals(1, scheduler.getDroppedCount());
+  }
+
+  @Test
+  public void submit_flushesWhenFull() {
+    scheduler.submit(1, new float[] {1, 0}, 0);
+    scheduler.submit(2, new float[] {1, 0}, 0);
+    assertTrue(recorder.batches.isEmpty());
+
+    scheduler.submit(3, new float[] {1, 0}, 0);
+
+    assertArrayEquals(new int[] {1, 2, 3}, recorder.indices(0));
+    assertEquals(0, scheduler.getPendingCount());
+  }
+
+  @Test
+  public void onUpdate_flushesOnceTheOldestWriteIsDue() {
+    scheduler.submit(1, new float[] {1, 0}, 0);
+    scheduler.submit(2, new float[] {1, 0}, 50);
+
+    scheduler.onUpdate(INTERVAL - 1);
+    assertTrue(recorder.batches.isEmpty());
+    scheduler.onUpdate(INTERVAL);
+
+    assertArrayEquals(new int[] {1, 2}, recorder.indices(0));
+    assertEquals(2, scheduler.getFlushedCount());
+    assertEquals(1, scheduler.getFlushCount());
+  }
+
+  @Test
+  public void forget_sendsTheSameTransformAgain() {
+    scheduler.submit(7, new float[] {1, 0}, 0);
+    scheduler.flush();
+
+    scheduler.forget(7);
+    scheduler.submit(7, new float[] {1, 0}, 10);
+
+    assertEquals(1, scheduler.getPendingCount());
+  }
+
+  @Test
+  public void clear_dropsPendingWrites() {
+    scheduler.submit(7, new float[] {1, 0}, 0);
+
+    scheduler.clear();
+    scheduler.onUpdate(INTERVAL);
+
+    assertTrue(recorder.batches.isEmpty());
+  }
+
+  private static class Recorder implements WriteScheduler.FlushListener {
+    final List<int[]> batches = new ArrayList<>();
+    final List<float[][]> batchTransforms = new ArrayList<>();
+
+    @Override
+    public void onFlush(int[] indices, float[][] transforms, int count) {
+      int[] copiedIndices = new int[count];
+      float[][] copiedTransforms = new float[count][];
+      for (int i = 0; i < count; i++) {
+        copiedIndices[i] = indices[i];
+        copiedTransforms[i] = transforms[i].clone();
+      }
+      batches.add(copiedIndices);
+      batchTransforms.add(copiedTransforms);
+    }
+
+    int[] indices(int batch) {
+      return batches.get(batch);
+    }
+
+    float[][] transforms(int batch) {
+      return batchTransforms.get(batch);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.android.vrproject.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+A reflective bean mapper that works like firebase's class mapping behind DataSnapshot.getValue(Class),
+which is not available outside of Android: properties are found once per class, through setters and
+public fields, and every value is converted by its declared type and set by reflection.
+Only has what SceneData and NodeData need, for comparison with SceneDataMapper.
+ */
+final class ReflectiveMapper {
+
+    private static final Map<Class<?>, Map<String, Property>> PROPERTIES = new ConcurrentHashMap<>();
+
+    private ReflectiveMapper() {
+
+    }
+
+    static <T> T convert(Object value, Class<T> type) {
+        return type.cast(convert(value, (Type) type));
+    }
+
+    private static Object convert(Object value, Type type) {
+        if (value == null) return null;
+        if (type instanceof ParameterizedType) {
+            // Map<String, T>
+            Type valueType = ((ParameterizedType) type).getActualTypeArguments()[1];
+            Map<String, Object> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey().toString(), convert(entry.getValue(), valueType));
+            }
+            return map;
+        }
+        Class<?> clazz = (Class<?>) type;
+        if (clazz == String.class) return value.toString();
+        if (clazz == float.class || clazz == Float.class) return ((Number) value).floatValue();
+        if (clazz == int.class || clazz == Integer.class) return ((Number) value).intValue();
+        return toBean((Map<?, ?>) value, clazz);
+    }
+
+    private static Object toBean(Map<?, ?> value, Class<?> type) {
+        try {
+            Object bean = type.getConstructor().newInstance();
+            Map<String, Property> properties = PROPERTIES.computeIfAbsent(type, ReflectiveMapper::properties);
+            for (Map.Entry<?, ?> entry : value.entrySet()) {
+                Property property = properties.get(entry.getKey().toString());
+                if (property != null) property.set(bean, convert(entry.getValue(), property.type));
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot map " + type, e);
+        }
+    }
+
+    /*
+    the setters of a class, plus its public fields that have no setter
+     */
+    private static Map<String, Property> properties(Class<?> type) {
+        Map<String, Property> properties = new HashMap<>();
+        for (Field field : type.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            properties.put(field.getName(), new Property(field.getGenericType(), field, null));
+        }
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if (!name.startsWith("set") || name.length() == 3 || method.getParameterCount() != 1) continue;
+            String property = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+            properties.put(property, new Property(method.getGenericParameterTypes()[0], null, method));
+        }
+        return properties;
+    }
+
+    private static final class Property {
+        final Type type;
+        final Field field;
+        final Method setter;
+
+        Property(Type type, Field field, Method setter) {
+            this.type = type;
+            this.field = field;
+            this.setter = setter;
+        }
+
+        void set(Object bean, Object value) throws ReflectiveOperationException {
+            if (setter != null) {
+                setter.invoke(bean, value);
+            } else {
+                field.set(bean, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Encoding and decoding whole scene snapshots with SceneCodec, lossless and quantized.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneCodecBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int nodeCount;
+
+    @Param({"false", "true"})
+    public boolean quantized;
+
+    private SceneCodec codec;
+    private SceneData sceneData;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        codec = new SceneCodec(quantized, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER);
+        sceneData = Scenes.random(nodeCount, 1);
+        encoded = codec.encodeScene(sceneData);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encodeScene(sceneData);
+    }
+
+    @Benchmark
+    public SceneData decode() {
+        return codec.decodeScene(encoded);
+    }
+
+    /*
+    the string form that is stored in firebase
+     */
+    @Benchmark
+    public SceneData decodeBase64() {
+        return codec.decodeScene(SceneCodec.toBase64(encoded));
+    }
+}
@@ -0,0 +1,83 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.SceneData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+Adding objects to a SceneData and looking up their transforms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SceneDataBenchmark {
+
+    /* lookups cycle through this many random indices, a power of two */
+    private static final int LOOKUP_COUNT = 4096;
+
+    @Param({"10", "1000", "50000"})
+    public int nodeCount;
+
+    private SceneData sceneData;
+    private float[][] transforms;
+    private int[] lookups;
+    private int lookupCursor = 0;
+    private final float[] out = new float[NodeData.TRANSFORM_SIZE];
+
+    @Setup
+    public void setUp() {
+        sceneData = Scenes.random(nodeCount, 1);
+
+        Random random = new Random(2);
+        transforms = new float[nodeCount][NodeData.TRANSFORM_SIZE];
+        for (float[] transform : transforms) {
+            Scenes.randomTransform(random, transform);
+        }
+        lookups = new int[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            lookups[i] = random.nextInt(nodeCount);
+        }
+    }
+
+    /*
+    builds a scene of nodeCount objects from scratch
+     */
+    @Benchmark
+    public SceneData add() {
+        SceneData scene = new SceneData();
+        for (float[] transform : transforms) {
+            scene.setTransform(scene.addNew(), transform);
+        }
+        return scene;
+    }
+
+    /*
+    reads the transform of one random object
+     */
+    @Benchmark
+    public float lookup() {
+        int index = lookups[lookupCursor++ & (LOOKUP_COUNT - 1)];
+        sceneData.getTransform(index, out);
+        return out[0];
+    }
+
+    /*
+    builds the map firebase serializes, for comparison with the table lookups
+     */
+    @Benchmark
+    public void nodeDataMap(Blackhole blackhole) {
+        blackhole.consume(sceneData.getNodeDataMap());
+    }
+}
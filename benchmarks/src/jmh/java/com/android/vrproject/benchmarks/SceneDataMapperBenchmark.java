@@ -0,0 +1,56 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneDataMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Decoding the plain value of a POJO scene snapshot, with SceneDataMapper and with reflective class mapping.
+Divide by nodeCount / 1000 for the time per 1k nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneDataMapperBenchmark {
+
+    @Param({"1000", "50000"})
+    public int nodeCount;
+
+    private SceneData sceneData;
+    private Map<String, Object> value;
+
+    @Setup
+    public void setUp() {
+        sceneData = Scenes.random(nodeCount, 1);
+        value = SceneDataMapper.toValue(sceneData);
+    }
+
+    @Benchmark
+    public SceneData mapper() {
+        return SceneDataMapper.fromValue(value);
+    }
+
+    @Benchmark
+    public SceneData reflective() {
+        return ReflectiveMapper.convert(value, SceneData.class);
+    }
+
+    /*
+    the value written for a POJO scene
+     */
+    @Benchmark
+    public Map<String, Object> encode() {
+        return SceneDataMapper.toValue(sceneData);
+    }
+}
@@ -0,0 +1,299 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.InMemorySceneStore;
+import com.android.vrproject.NodeData;
+import com.android.vrproject.NodeTable;
+import com.android.vrproject.SceneCodec;
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneReconciler;
+import com.android.vrproject.SceneStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Simulates editors that work on one shared scene at the same time, on an InMemorySceneStore.
+
+The host writes a scene in the NODE_BLOBS format of FirebaseManager. Every client subscribes to it, decodes
+every snapshot it receives and reconciles it like the app does, and moves random objects at a fixed rate.
+Once the editing stops and all messages arrived, it checks that every client ended up with the scene of the store
+and reports the write throughput, the latency until a write is acknowledged and until the other clients see it,
+how long the clients took to converge after the last edit, and the callback load of each client.
+
+Run with ./gradlew :benchmarks:loadTest, arguments are passed as key=value, e.g.
+./gradlew :benchmarks:loadTest --args="clients=32 nodes=5000 latency=80"
+ */
+public class SceneLoadGenerator {
+
+    /* the keys FirebaseManager writes scenes with */
+    private static final String SCENE_PATH = "anchor;142";
+    private static final String KEY_CLOUD_ANCHOR_ID = "cloudAnchorId";
+    private static final String KEY_INDEX = "index";
+    private static final String KEY_NODE_BLOBS = "nodeBlobs";
+
+    private final int clientCount;
+    private final int nodeCount;
+    private final double editsPerSecond;
+    private final int seconds;
+    private final InMemorySceneStore store;
+    private final SceneCodec codec = new SceneCodec();
+
+    /* send time of every blob written by an editor, to find the propagation latency */
+    private final Map<String, Long> sentAtNanos = new ConcurrentHashMap<>();
+    private final List<Long> ackMillis = new ArrayList<>();
+    private final List<Long> propagationMillis = new ArrayList<>();
+    private final AtomicLong writesSent = new AtomicLong();
+    private final AtomicLong writesAcknowledged = new AtomicLong();
+    private volatile long lastSendNanos = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            options.put(option[0], option[1]);
+        }
+
+        SceneLoadGenerator generator = new SceneLoadGenerator(
+                intOption(options, "clients", 8),
+                intOption(options, "nodes", 1000),
+                Double.parseDouble(options.getOrDefault("rate", "10")),
+                intOption(options, "seconds", 10),
+                new InMemorySceneStore(
+                        intOption(options, "latency", 40),
+                        intOption(options, "jitter", 20),
+                        intOption(options, "fanout", 100),
+                        intOption(options, "seed", 1)));
+        generator.run();
+    }
+
+    /*
+    editsPerSecond is the rate of every single client
+     */
+    public SceneLoadGenerator(int clientCount, int nodeCount, double editsPerSecond, int seconds, InMemorySceneStore store) {
+        this.clientCount = clientCount;
+        this.nodeCount = nodeCount;
+        this.editsPerSecond = editsPerSecond;
+        this.seconds = seconds;
+        this.store = store;
+    }
+
+    public void run() throws InterruptedException {
+        System.out.printf("%d clients, %d nodes, %.1f edits/s per client for %d s%n",
+                clientCount, nodeCount, editsPerSecond, seconds);
+
+        SceneData scene = Scenes.random(nodeCount, 42);
+        store.set(SCENE_PATH, toValue(scene), null);
+        store.awaitIdle(TimeUnit.MINUTES.toMillis(1));
+
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new Client(store.connect(), i));
+        }
+        store.awaitIdle(TimeUnit.MINUTES.toMillis(1));
+
+        ScheduledExecutorService editors = Executors.newScheduledThreadPool(Math.min(clientCount, 4));
+        long periodMicros = (long) (1_000_000 / editsPerSecond);
+        long startNanos = System.nanoTime();
+        for (Client client : clients) {
+            editors.scheduleAtFixedRate(client::edit,
+                    client.random.nextInt((int) Math.max(1, periodMicros)), periodMicros, TimeUnit.MICROSECONDS);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        editors.shutdown();
+        editors.awaitTermination(1, TimeUnit.MINUTES);
+        long editNanos = System.nanoTime() - startNanos;
+
+        if (!store.awaitIdle(TimeUnit.MINUTES.toMillis(1))) {
+            System.out.println("store did not become idle, " + store.getPendingCount() + " messages pending");
+        }
+        report(clients, editNanos);
+        store.shutdown();
+    }
+
+    private void report(List<Client> clients, long editNanos) {
+        Object expected = store.getValue(SCENE_PATH + "/" + KEY_NODE_BLOBS);
+        int consistent = 0;
+        long convergenceNanos = 0;
+        for (Client client : clients) {
+            if (expected.equals(client.lastBlobs)) consistent++;
+            convergenceNanos = Math.max(convergenceNanos, client.lastCallbackNanos - lastSendNanos);
+        }
+
+        double editSeconds = editNanos / 1e9;
+        System.out.printf("writes       %d sent, %d acknowledged, %d applied by the store, %.1f writes/s%n",
+                writesSent.get(), writesAcknowledged.get(), store.getWriteCount(),
+                writesAcknowledged.get() / editSeconds);
+        System.out.println("ack          " + percentiles(ackMillis));
+        System.out.println("propagation  " + percentiles(propagationMillis));
+        System.out.printf("convergence  %.1f ms after the last edit, %d of %d clients consistent%n",
+                convergenceNanos / 1e6, consistent, clients.size());
+        System.out.printf("notifications %d sent by the store%n", store.getNotificationCount());
+
+        long[] callbacks = new long[clients.size()];
+        long[] operations = new long[clients.size()];
+        long[] applyMicros = new long[clients.size()];
+        for (int i = 0; i < clients.size(); i++) {
+            Client client = clients.get(i);
+            callbacks[i] = client.callbackCount;
+            operations[i] = client.appliedOperations;
+            applyMicros[i] = client.callbackCount == 0 ? 0 : client.applyNanos / client.callbackCount / 1000;
+        }
+        System.out.println("callbacks    per client " + spread(callbacks)
+                + String.format(", %.1f/s on average", Arrays.stream(callbacks).average().orElse(0) / editSeconds));
+        System.out.println("callback us  decode and apply per client " + spread(applyMicros));
+        System.out.println("node ops     added, removed or updated per client " + spread(operations));
+    }
+
+    /*
+    CLIENT
+     */
+
+    private class Client implements SceneStore.ValueListener, SceneReconciler.Target {
+        final SceneStore store;
+        final Random random;
+        final SceneReconciler reconciler = new SceneReconciler();
+        final float[] transform = new float[NodeData.TRANSFORM_SIZE];
+
+        /* only touched in callbacks, which never run concurrently for one client */
+        Map<?, ?> lastBlobs = null;
+        long lastCallbackNanos = 0;
+        long callbackCount = 0;
+        long applyNanos = 0;
+        long appliedOperations = 0;
+
+        Client(SceneStore store, int id) {
+            this.store = store;
+            this.random = new Random(id);
+            store.subscribe(SCENE_PATH, this);
+        }
+
+        void edit() {
+            int index = random.nextInt(nodeCount);
+            Scenes.randomTransform(random, transform);
+            String blob = SceneCodec.toBase64(codec.encodeTransform(transform));
+
+            long sentNanos = System.nanoTime();
+            sentAtNanos.put(blob, sentNanos);
+            lastSendNanos = sentNanos;
+            writesSent.incrementAndGet();
+            store.set(SCENE_PATH + "/" + KEY_NODE_BLOBS + "/" + SceneData.keyOf(index), blob, error -> {
+                writesAcknowledged.incrementAndGet();
+                record(ackMillis, System.nanoTime() - sentNanos);
+            });
+        }
+
+        @Override
+        public void onValue(Object value) {
+            long startNanos = System.nanoTime();
+            Map<?, ?> scene = (Map<?, ?>) value;
+            Map<?, ?> blobs = (Map<?, ?>) scene.get(KEY_NODE_BLOBS);
+
+            SceneData sceneData = new SceneData();
+            sceneData.setCloudAnchorId((String) scene.get(KEY_CLOUD_ANCHOR_ID));
+            float[] decoded = new float[NodeData.TRANSFORM_SIZE];
+            for (Map.Entry<?, ?> entry : blobs.entrySet()) {
+                String model = SceneCodec.decodeTransform(SceneCodec.fromBase64((String) entry.getValue()), decoded);
+                int index = SceneData.indexOf((String) entry.getKey());
+                sceneData.setTransform(index, decoded);
+                sceneData.setModel(index, model);
+            }
+            reconciler.reconcile(sceneData, this);
+
+            long endNanos = System.nanoTime();
+            if (lastBlobs != null) {
+                // values of unchanged nodes are the same objects in every snapshot
+                for (Map.Entry<?, ?> entry : blobs.entrySet()) {
+                    if (lastBlobs.get(entry.getKey()) == entry.getValue()) continue;
+                    Long sentNanos = sentAtNanos.get(entry.getValue());
+                    if (sentNanos != null) record(propagationMillis, endNanos - sentNanos);
+                }
+            }
+            lastBlobs = blobs;
+            lastCallbackNanos = endNanos;
+            callbackCount++;
+            applyNanos += endNanos - startNanos;
+        }
+
+        @Override
+        public void onError(Exception error) {
+            System.out.println("subscription failed: " + error);
+        }
+
+        @Override
+        public void onNodeAdded(int index, float[] transform) {
+            appliedOperations++;
+        }
+
+        @Override
+        public void onNodeRemoved(int index) {
+            appliedOperations++;
+        }
+
+        @Override
+        public void onNodeUpdated(int index, float[] transform) {
+            appliedOperations++;
+        }
+    }
+
+    /*
+    HELPERS
+     */
+
+    /* the value FirebaseManager writes for a scene in the NODE_BLOBS format */
+    private Map<String, Object> toValue(SceneData sceneData) {
+        Map<String, Object> value = new HashMap<>();
+        value.put(KEY_CLOUD_ANCHOR_ID, sceneData.getCloudAnchorId());
+        value.put(KEY_INDEX, sceneData.getIndex());
+
+        Map<String, Object> blobs = new HashMap<>();
+        NodeTable nodes = sceneData.nodes();
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+            nodes.getTransform(slot, transform);
+            blobs.put(SceneData.keyOf(index), SceneCodec.toBase64(codec.encodeTransform(transform, nodes.getModel(slot))));
+        }
+        value.put(KEY_NODE_BLOBS, blobs);
+        return value;
+    }
+
+    private static void record(List<Long> samples, long nanos) {
+        synchronized (samples) {
+            samples.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    private static String percentiles(List<Long> samples) {
+        long[] sorted;
+        synchronized (samples) {
+            sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        if (sorted.length == 0) return "no samples";
+        return String.format("p50 %d ms, p90 %d ms, p99 %d ms, max %d ms (%d samples)",
+                sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.9)],
+                sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1], sorted.length);
+    }
+
+    private static String spread(long[] values) {
+        return String.format("min %d, avg %.1f, max %d",
+                Arrays.stream(values).min().orElse(0),
+                Arrays.stream(values).average().orElse(0),
+                Arrays.stream(values).max().orElse(0));
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,97 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.SceneData;
+import com.android.vrproject.SceneReconciler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Diffing incoming snapshots against the applied scene and applying the differences.
+The target only consumes the operations, so the numbers are the cost of the reconciler itself.
+Every benchmark starts with base applied.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneReconcilerBenchmark {
+
+    /* share of objects moved, removed and added between the two snapshots */
+    private static final double CHANGED_FRACTION = 0.01;
+
+    @Param({"10", "1000", "50000"})
+    public int nodeCount;
+
+    private SceneData base;
+    private SceneData changed;
+    private SceneReconciler reconciler;
+    private boolean showingChanged = false;
+    private ConsumingTarget target;
+
+    private static class ConsumingTarget implements SceneReconciler.Target {
+        private final Blackhole blackhole;
+
+        ConsumingTarget(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onNodeAdded(int index, float[] transform) {
+            blackhole.consume(transform[0]);
+        }
+
+        @Override
+        public void onNodeRemoved(int index) {
+            blackhole.consume(index);
+        }
+
+        @Override
+        public void onNodeUpdated(int index, float[] transform) {
+            blackhole.consume(transform[0]);
+        }
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        base = Scenes.random(nodeCount, 1);
+        changed = Scenes.withChanges(base, CHANGED_FRACTION, 2);
+        target = new ConsumingTarget(blackhole);
+        reconciler = new SceneReconciler();
+        reconciler.reconcile(base, target);
+    }
+
+    /*
+    alternates between the two snapshots, every call applies about 3% of the objects
+     */
+    @Benchmark
+    public void diffAndApplyChanges() {
+        showingChanged = !showingChanged;
+        reconciler.reconcile(showingChanged ? changed : base, target);
+    }
+
+    /*
+    a snapshot equal to the applied scene, e.g. the echo of a local write
+     */
+    @Benchmark
+    public void diffUnchanged() {
+        reconciler.reconcile(base, target);
+    }
+
+    /*
+    builds the whole scene, as after resolving an anchor
+     */
+    @Benchmark
+    public void applyFullScene() {
+        reconciler.reset();
+        reconciler.reconcile(base, target);
+    }
+}
@@ -0,0 +1,84 @@
+package com.android.vrproject.benchmarks;
+
+import com.android.vrproject.NodeData;
+import com.android.vrproject.NodeTable;
+import com.android.vrproject.SceneData;
+
+import java.util.Random;
+
+/*
+Generates the scenes the benchmarks run on. Scenes with the same arguments are identical.
+ */
+final class Scenes {
+
+    private Scenes() {
+
+    }
+
+    /*
+    nodeCount objects spread over 10 x 2 x 10 meters, with random scale and normalized rotation
+     */
+    static SceneData random(int nodeCount, long seed) {
+        Random random = new Random(seed);
+        SceneData sceneData = new SceneData();
+        sceneData.setCloudAnchorId("ua-" + Long.toHexString(random.nextLong()));
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        for (int i = 0; i < nodeCount; i++) {
+            randomTransform(random, transform);
+            sceneData.setTransform(sceneData.addNew(), transform);
+        }
+        return sceneData;
+    }
+
+    /*
+    a copy of base in which the given fraction of objects was moved, and the same fraction was removed and added
+     */
+    static SceneData withChanges(SceneData base, double fraction, long seed) {
+        Random random = new Random(seed);
+        SceneData changed = new SceneData();
+        changed.setCloudAnchorId(base.getCloudAnchorId());
+        changed.setIndex(base.getIndex());
+
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        NodeTable nodes = base.nodes();
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+
+            double roll = random.nextDouble();
+            if (roll < fraction) continue; // removed
+
+            nodes.getTransform(slot, transform);
+            if (roll < 2 * fraction) {
+                transform[0] += 0.1f;
+                transform[2] -= 0.1f;
+            }
+            changed.setTransform(index, transform);
+        }
+
+        int added = (int) Math.round(nodes.size() * fraction);
+        for (int i = 0; i < added; i++) {
+            randomTransform(random, transform);
+            changed.setTransform(changed.addNew(), transform);
+        }
+        return changed;
+    }
+
+    static void randomTransform(Random random, float[] transform) {
+        transform[0] = random.nextFloat() * 10 - 5;
+        transform[1] = random.nextFloat() * 2;
+        transform[2] = random.nextFloat() * 10 - 5;
+        for (int i = 3; i < 6; i++) {
+            transform[i] = 0.2f + random.nextFloat() * 4;
+        }
+        float norm = 0;
+        for (int i = 6; i < 10; i++) {
+            transform[i] = random.nextFloat() * 2 - 1;
+            norm += transform[i] * transform[i];
+        }
+        norm = (float) Math.sqrt(norm);
+        for (int i = 6; i < 10; i++) {
+            transform[i] /= norm;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.android.vrproject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+The cells of a scene that is spread over more than one cloud anchor, so that objects far from the main anchor
+do not drift and do not have to wait for it.
+Cell MAIN is the main anchor of the scene (SceneData.cloudAnchorId) at the origin of the scene. Every other cell
+has its own cloud anchor at an offset from the origin. Cell anchors are hosted with the rotation of the main anchor,
+so the position of an object in its cell is its position in the scene minus the offset of the cell.
+Objects belong to the cell whose anchor is closest to them, they keep their position in the scene either way.
+
+Cells are only added, never moved or removed. Their numbers are local to this client, in firebase cells are stored
+by their cloud anchor ID: cells/<cloud anchor id>: {x, y, z}
+ */
+public class AnchorCells {
+
+    public static final int MAIN = 0;
+    public static final int NO_CELL = -1;
+
+    private final List<String> cloudAnchorIds = new ArrayList<>();
+    private final Map<String, Integer> cellsById = new HashMap<>();
+    /* x, y, z of every cell */
+    private float[] offsets = new float[3 * 8];
+
+    public AnchorCells() {
+        clear();
+    }
+
+    /*
+    adds a cell, or returns the existing cell with that cloud anchor ID
+     */
+    public int add(String cloudAnchorId, float x, float y, float z) {
+        Integer existing = cellsById.get(cloudAnchorId);
+        if (existing != null) return existing;
+
+        int cell = cloudAnchorIds.size();
+        if (3 * cell + 3 > offsets.length) {
+            float[] grown = new float[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, offsets.length);
+            offsets = grown;
+        }
+        cloudAnchorIds.add(cloudAnchorId);
+        cellsById.put(cloudAnchorId, cell);
+        offsets[3 * cell] = x;
+        offsets[3 * cell + 1] = y;
+        offsets[3 * cell + 2] = z;
+        return cell;
+    }
+
+    /*
+    adds the cells of the value firebase stores the cells of a scene as, returns the number of new cells
+     */
+    public int addAll(Object value) {
+        if (!(value instanceof Map)) return 0;
+
+        int size = size();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            if (!(entry.getValue() instanceof Map)) continue;
+
+            Map<?, ?> offset = (Map<?, ?>) entry.getValue();
+            add(entry.getKey().toString(), number(offset, "x"), number(offset, "y"), number(offset, "z"));
+        }
+        return size() - size;
+    }
+
+    /*
+    the value firebase stores a cell with the given offset as
+     */
+    public static Map<String, Object> toValue(float x, float y, float z) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("x", (double) x);
+        value.put("y", (double) y);
+        value.put("z", (double) z);
+        return value;
+    }
+
+    /*
+    removes all cells but MAIN
+     */
+    public void clear() {
+        cloudAnchorIds.clear();
+        cellsById.clear();
+        cloudAnchorIds.add(null);
+        offsets[0] = 0;
+        offsets[1] = 0;
+        offsets[2] = 0;
+    }
+
+    /*
+    number of cells, including MAIN
+     */
+    public int size() {
+        return cloudAnchorIds.size();
+    }
+
+    /*
+    cloud anchor ID of a cell, null for MAIN
+     */
+    public String getCloudAnchorId(int cell) {
+        return cloudAnchorIds.get(cell);
+    }
+
+    public int indexOf(String cloudAnchorId) {
+        Integer cell = cellsById.get(cloudAnchorId);
+        return cell == null ? NO_CELL : cell;
+    }
+
+    public float getOffsetX(int cell) {
+        return offsets[3 * cell];
+    }
+
+    public float getOffsetY(int cell) {
+        return offsets[3 * cell + 1];
+    }
+
+    public float getOffsetZ(int cell) {
+        return offsets[3 * cell + 2];
+    }
+
+    /*
+    the cell whose anchor is closest to the position x, y, z in the scene
+     */
+    public int nearest(float x, float y, float z) {
+        int nearest = MAIN;
+        float nearestDistance = distanceSquared(MAIN, x, y, z);
+        for (int cell = 1; cell < size(); cell++) {
+            float distance = distanceSquared(cell, x, y, z);
+            if (distance < nearestDistance) {
+                nearest = cell;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /*
+    squared distance of the anchor of a cell to the position x, y, z in the scene
+     */
+    public float distanceSquared(int cell, float x, float y, float z) {
+        float dx = x - offsets[3 * cell];
+        float dy = y - offsets[3 * cell + 1];
+        float dz = z - offsets[3 * cell + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static float number(Map<?, ?> offset, String key) {
+        Object value = offset.get(key);
+        return value instanceof Number ? ((Number) value).floatValue() : 0;
+    }
+}
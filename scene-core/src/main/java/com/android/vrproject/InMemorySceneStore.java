@@ -0,0 +1,432 @@
+package com.android.vrproject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+A SceneStore that keeps the data in memory and simulates the network between clients and the database,
+for tests and load tests without Firebase.
+
+Every client has its own connection, see connect. Requests travel to the server in latency +- jitter milliseconds,
+are applied there on a single server thread, and their results travel back the same way. Like on a real connection,
+the requests of one client arrive in the order they were sent, and so do its responses and notifications.
+Callbacks of one client never run concurrently, like on its main thread.
+After a change the server notifies every subscription whose path overlaps the changed paths. It sends the
+notifications one after the other, each one fanOutMicros later than the previous, like a server that has to
+serialize a snapshot per listener.
+
+The data is a tree of unmodifiable maps that is copied on write, so every value handed out is a consistent
+snapshot that later writes do not change. Like in Firebase, integers are stored as Long, floats as Double,
+lists as maps keyed by their index, and empty maps and nulls are removed.
+
+The store itself is a SceneStore on a connection of its own.
+ */
+public class InMemorySceneStore implements SceneStore {
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final long fanOutNanos;
+    private final Random random;
+
+    private final ScheduledExecutorService server;
+    private final ScheduledExecutorService clients;
+    private final Connection defaultConnection;
+
+    /* only written on the server thread */
+    private volatile Object root = null;
+    private final List<Sub> subscriptions = new ArrayList<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong notificationCount = new AtomicLong();
+
+    /*
+    a store without latency
+     */
+    public InMemorySceneStore() {
+        this(0, 0, 0, 0);
+    }
+
+    public InMemorySceneStore(long latencyMillis, long jitterMillis, long fanOutMicros, long seed) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+        this.fanOutNanos = TimeUnit.MICROSECONDS.toNanos(fanOutMicros);
+        this.random = new Random(seed);
+
+        server = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "scene-store-server"));
+        clients = Executors.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors(), runnable -> daemon(runnable, "scene-store-client"));
+        defaultConnection = new Connection();
+    }
+
+    /*
+    a new client of this store
+     */
+    public SceneStore connect() {
+        return new Connection();
+    }
+
+    /*
+    SCENE STORE
+     */
+
+    @Override
+    public void increment(String path, long delta, long initialValue, CounterListener listener) {
+        defaultConnection.increment(path, delta, initialValue, listener);
+    }
+
+    @Override
+    public void set(String path, Object value, CompletionListener listener) {
+        defaultConnection.set(path, value, listener);
+    }
+
+    @Override
+    public void update(Map<String, Object> updates, CompletionListener listener) {
+        defaultConnection.update(updates, listener);
+    }
+
+    @Override
+    public void read(String path, ValueListener listener) {
+        defaultConnection.read(path, listener);
+    }
+
+    @Override
+    public void readRange(String path, String startAfter, int limit, ValueListener listener) {
+        defaultConnection.readRange(path, startAfter, limit, listener);
+    }
+
+    @Override
+    public Subscription subscribe(String path, ValueListener listener) {
+        return defaultConnection.subscribe(path, listener);
+    }
+
+    /*
+    SIMULATION
+     */
+
+    /*
+    the value at path as the server has it right now
+     */
+    public Object getValue(String path) {
+        return get(root, split(path));
+    }
+
+    /*
+    requests, responses and notifications that have not arrived yet
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /*
+    waits until no requests, responses or notifications are in flight. returns false on timeout.
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (pendingCount.get() > 0) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /*
+    changes applied by the server, a multi-path update counts once
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getNotificationCount() {
+        return notificationCount.get();
+    }
+
+    public void shutdown() {
+        server.shutdownNow();
+        clients.shutdownNow();
+    }
+
+    /*
+    CONNECTION
+     */
+
+    /*
+    one client. up carries its requests to the server, down its responses and notifications back.
+    every message is queued and a task is scheduled for its arrival time that takes the oldest message of the queue,
+    so messages keep their order even if two of them are due at the same time.
+     */
+    private class Connection implements SceneStore {
+        final Queue<Runnable> up = new ConcurrentLinkedQueue<>();
+        final Queue<Runnable> down = new ConcurrentLinkedQueue<>();
+        long lastUpArrivalNanos = 0;
+        long lastDownArrivalNanos = 0;
+
+        @Override
+        public void increment(String path, long delta, long initialValue, CounterListener listener) {
+            String[] segments = split(path);
+            send(() -> {
+                Object current = get(root, segments);
+                if (current != null && !(current instanceof Number)) {
+                    Exception error = new IllegalStateException("Not a number at " + path);
+                    respond(() -> listener.onComplete(null, error), 0);
+                    return;
+                }
+
+                long value = (current == null ? initialValue : ((Number) current).longValue()) + delta;
+                apply(Collections.singletonMap(segments, value));
+                respond(() -> listener.onComplete(value, null), 0);
+            });
+        }
+
+        @Override
+        public void set(String path, Object value, CompletionListener listener) {
+            update(Collections.singletonMap(path, value), listener);
+        }
+
+        @Override
+        public void update(Map<String, Object> updates, CompletionListener listener) {
+            // normalized here, so that the caller may change its objects once the call returned
+            Map<String[], Object> normalized = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                normalized.put(split(entry.getKey()), normalize(entry.getValue()));
+            }
+
+            send(() -> {
+                apply(normalized);
+                if (listener != null) respond(() -> listener.onComplete(null), 0);
+            });
+        }
+
+        @Override
+        public void read(String path, ValueListener listener) {
+            String[] segments = split(path);
+            send(() -> {
+                Object value = get(root, segments);
+                respond(() -> listener.onValue(value), 0);
+            });
+        }
+
+        @Override
+        public void readRange(String path, String startAfter, int limit, ValueListener listener) {
+            String[] segments = split(path);
+            send(() -> {
+                Object value = range(get(root, segments), startAfter, limit);
+                respond(() -> listener.onValue(value), 0);
+            });
+        }
+
+        @Override
+        public Subscription subscribe(String path, ValueListener listener) {
+            Sub sub = new Sub(this, split(path), listener);
+            send(() -> {
+                if (sub.cancelled) return;
+                subscriptions.add(sub);
+                sub.notify(get(root, sub.segments), 0);
+            });
+            return sub;
+        }
+
+        /* called by the client */
+        synchronized void send(Runnable request) {
+            lastUpArrivalNanos = Math.max(System.nanoTime() + delayNanos(), lastUpArrivalNanos);
+            up.add(request);
+            schedule(server, () -> up.poll().run(), lastUpArrivalNanos);
+        }
+
+        /* called on the server thread, after the server worked for extraNanos */
+        synchronized void respond(Runnable response, long extraNanos) {
+            lastDownArrivalNanos = Math.max(System.nanoTime() + extraNanos + delayNanos(), lastDownArrivalNanos);
+            down.add(response);
+            schedule(clients, this::receive, lastDownArrivalNanos);
+        }
+
+        /* the lock keeps the callbacks of this client from running concurrently or out of order */
+        private synchronized void receive() {
+            down.poll().run();
+        }
+    }
+
+    /*
+    SERVER
+     */
+
+    private class Sub implements Subscription {
+        final Connection connection;
+        final String[] segments;
+        final ValueListener listener;
+        volatile boolean cancelled = false;
+
+        Sub(Connection connection, String[] segments, ValueListener listener) {
+            this.connection = connection;
+            this.segments = segments;
+            this.listener = listener;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            connection.send(() -> subscriptions.remove(this));
+        }
+
+        /* position is the number of notifications the server sent before this one for the same change */
+        void notify(Object value, int position) {
+            notificationCount.incrementAndGet();
+            connection.respond(() -> {
+                if (!cancelled) listener.onValue(value);
+            }, position * fanOutNanos);
+        }
+    }
+
+    private void apply(Map<String[], Object> updates) {
+        Object before = root;
+        Object after = before;
+        for (Map.Entry<String[], Object> entry : updates.entrySet()) {
+            after = with(after, entry.getKey(), 0, entry.getValue());
+        }
+        root = after;
+        writeCount.incrementAndGet();
+
+        // unchanged subtrees are not copied, so a subscription only has to compare references
+        int sent = 0;
+        for (Sub sub : subscriptions) {
+            Object value = get(after, sub.segments);
+            if (value != get(before, sub.segments)) {
+                sub.notify(value, sent++);
+            }
+        }
+    }
+
+    private void schedule(ScheduledExecutorService executor, Runnable task, long arrivalNanos) {
+        pendingCount.incrementAndGet();
+        executor.schedule(() -> {
+            try {
+                task.run();
+            } finally {
+                pendingCount.decrementAndGet();
+            }
+        }, Math.max(0, arrivalNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private long delayNanos() {
+        if (jitterNanos == 0) return latencyNanos;
+        double offset;
+        synchronized (random) {
+            offset = random.nextDouble() * 2 - 1;
+        }
+        return Math.max(0, latencyNanos + (long) (offset * jitterNanos));
+    }
+
+    /*
+    TREE
+     */
+
+    private static Object get(Object node, String[] segments) {
+        for (String segment : segments) {
+            if (!(node instanceof Map)) return null;
+            node = ((Map<?, ?>) node).get(segment);
+        }
+        return node;
+    }
+
+    /*
+    at most limit children of node after the key startAfter, in key order
+     */
+    private static Object range(Object node, String startAfter, int limit) {
+        if (!(node instanceof Map)) return null;
+
+        TreeMap<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+            sorted.put((String) entry.getKey(), entry.getValue());
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry
+                : (startAfter == null ? sorted : sorted.tailMap(startAfter, false)).entrySet()) {
+            if (page.size() == limit) break;
+            page.put(entry.getKey(), entry.getValue());
+        }
+        return page.isEmpty() ? null : Collections.unmodifiableMap(page);
+    }
+
+    /*
+    a copy of node with value at segments[depth..]. returns node itself if nothing changes.
+     */
+    private static Object with(Object node, String[] segments, int depth, Object value) {
+        if (depth == segments.length) {
+            return Objects.equals(node, value) ? node : value;
+        }
+
+        Map<?, ?> children = node instanceof Map ? (Map<?, ?>) node : Collections.emptyMap();
+        Object child = children.get(segments[depth]);
+        Object changed = with(child, segments, depth + 1, value);
+        if (changed == child) return node;
+
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<?, ?> entry : children.entrySet()) {
+            copy.put((String) entry.getKey(), entry.getValue());
+        }
+        if (changed == null) {
+            copy.remove(segments[depth]);
+        } else {
+            copy.put(segments[depth], changed);
+        }
+        return copy.isEmpty() ? null : Collections.unmodifiableMap(copy);
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            Map<String, Object> map = new HashMap<>();
+            for (int i = 0; i < list.size(); i++) {
+                map.put(Integer.toString(i), list.get(i));
+            }
+            return normalize(map);
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object child = normalize(entry.getValue());
+                if (child != null) map.put(entry.getKey().toString(), child);
+            }
+            return map.isEmpty() ? null : Collections.unmodifiableMap(map);
+        }
+        if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Long || value instanceof Double) {
+            return value;
+        }
+        throw new IllegalArgumentException("Unsupported value " + value.getClass().getName());
+    }
+
+    private static String[] split(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') start++;
+        while (end > start && path.charAt(end - 1) == '/') end--;
+        return start == end ? new String[0] : path.substring(start, end).split("/+");
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
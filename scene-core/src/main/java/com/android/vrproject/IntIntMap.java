@@ -0,0 +1,146 @@
+package com.android.vrproject;
+
+import java.util.Arrays;
+
+/*
+Maps non-negative int keys to int values without boxing, with open addressing and linear probing.
+
+Its memory grows with the number of entries, not with the largest key, so keys read from the database
+(e.g. object indices, which only grow) can not make it allocate more than the entries need.
+The table is kept at most half full. Looking up, putting and removing existing keys do not allocate.
+ */
+public class IntIntMap {
+
+    private static final int FREE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    /*
+    a map whose get returns missingValue for keys that are not in it
+     */
+    public IntIntMap(int missingValue) {
+        this.missingValue = missingValue;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /*
+    a map with the same entries as other
+     */
+    public IntIntMap(IntIntMap other) {
+        missingValue = other.missingValue;
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        size = other.size;
+    }
+
+    public int get(int key) {
+        if (key < 0) return missingValue;
+
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == key) return values[i];
+            if (candidate == FREE) return missingValue;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key < 0) return false;
+
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == key) return true;
+            if (candidate == FREE) return false;
+        }
+    }
+
+    public void put(int key, int value) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+
+        int i = hash(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (2 * size > keys.length) rehash(keys.length * 2);
+    }
+
+    /*
+    removes key and returns its value, or missingValue if it was not in the map
+     */
+    public int remove(int key) {
+        if (key < 0) return missingValue;
+
+        int i = hash(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE) return missingValue;
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+        size--;
+
+        // move later entries of the same probe sequence into the gap, so that lookups do not stop at it
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = hash(keys[j]);
+            // the entry at j may move to the gap unless its home lies cyclically in (gap, j]
+            boolean homeAfterGap = gap <= j ? gap < home && home <= j : gap < home || home <= j;
+            if (!homeAfterGap) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        return value;
+    }
+
+    /*
+    removes all entries, keeping the capacity for the next ones
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+
+            int j = hash(oldKeys[i]);
+            while (keys[j] != FREE) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
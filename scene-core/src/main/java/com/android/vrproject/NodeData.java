@@ -0,0 +1,91 @@
+package com.android.vrproject;
+
+/*
+Contains all information corresponding to one specific object in the scene
+Uses plain Vec3 and Quat instead of the Sceneform types, so that the scene model does not depend on Android
+ */
+public class NodeData {
+
+    /* number of floats written by copyTransformTo: position, scale, rotation */
+    public static final int TRANSFORM_SIZE = 10;
+
+    public Vec3 position;
+    public Vec3 scale;
+    public Quat rotation;
+
+    /* key of the model in the RenderableRegistry, null for the default model */
+    public String model;
+
+    public NodeData() {
+
+    }
+
+    public NodeData(Vec3 position, Vec3 scale, Quat rotation){
+        this.position = position;
+        this.scale = scale;
+        this.rotation = rotation;
+    }
+
+    public Vec3 getPosition() {
+        return position;
+    }
+
+    public void setPosition(Vec3 position) {
+        this.position = position;
+    }
+
+    public Vec3 getScale() {
+        return scale;
+    }
+
+    public void setScale(Vec3 scale) {
+        this.scale = scale;
+    }
+
+    public Quat getRotation() {
+        return rotation;
+    }
+
+    public void setRotation(Quat rotation) {
+        this.rotation = rotation;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /*
+    writes position (x,y,z), scale (x,y,z) and rotation (x,y,z,w) into out.
+    missing values are written as 0.
+     */
+    public void copyTransformTo(float[] out) {
+        if (position != null) {
+            out[0] = position.x; out[1] = position.y; out[2] = position.z;
+        } else {
+            out[0] = 0; out[1] = 0; out[2] = 0;
+        }
+        if (scale != null) {
+            out[3] = scale.x; out[4] = scale.y; out[5] = scale.z;
+        } else {
+            out[3] = 0; out[4] = 0; out[5] = 0;
+        }
+        if (rotation != null) {
+            out[6] = rotation.x; out[7] = rotation.y; out[8] = rotation.z; out[9] = rotation.w;
+        } else {
+            out[6] = 0; out[7] = 0; out[8] = 0; out[9] = 0;
+        }
+    }
+
+    /*
+    inverse of copyTransformTo
+     */
+    public void setTransform(float[] in) {
+        position = new Vec3(in[0], in[1], in[2]);
+        scale = new Vec3(in[3], in[4], in[5]);
+        rotation = new Quat(in[6], in[7], in[8], in[9]);
+    }
+}
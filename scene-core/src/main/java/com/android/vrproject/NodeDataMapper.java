@@ -0,0 +1,83 @@
+package com.android.vrproject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Maps objects to and from the plain values firebase reads and writes (Map, String, Long, Double),
+in the same layout as firebase's class mapping of NodeData:
+{position: {x, y, z}, scale: {x, y, z}, rotation: {x, y, z, w}, model}.
+Unlike the class mapping it uses no reflection and reads straight into transform arrays, so decoding
+does not create a NodeData, Vec3 and Quat per object. See SceneDataMapper for whole scenes.
+ */
+public final class NodeDataMapper {
+
+    private static final String KEY_POSITION = "position";
+    private static final String KEY_SCALE = "scale";
+    private static final String KEY_ROTATION = "rotation";
+    private static final String KEY_MODEL = "model";
+
+    private NodeDataMapper() {
+
+    }
+
+    /*
+    writes the transform of an object into out (NodeData.TRANSFORM_SIZE floats) and returns its model.
+    missing values are read like the class mapping reads them: a missing vector is all zeros,
+    a rotation without w has the default w of Quat.
+     */
+    public static String readTransform(Object value, float[] out) {
+        Map<?, ?> node = value instanceof Map ? (Map<?, ?>) value : null;
+        readVector(child(node, KEY_POSITION), out, 0);
+        readVector(child(node, KEY_SCALE), out, 3);
+        Map<?, ?> rotation = child(node, KEY_ROTATION);
+        readVector(rotation, out, 6);
+        out[9] = rotation == null ? 0 : number(rotation, "w", 1);
+        Object model = node == null ? null : node.get(KEY_MODEL);
+        return model instanceof String ? (String) model : null;
+    }
+
+    /*
+    the value firebase stores an object with the given transform and model as
+     */
+    public static Map<String, Object> toValue(float[] transform, String model) {
+        Map<String, Object> value = new HashMap<>();
+        value.put(KEY_POSITION, vector(transform[0], transform[1], transform[2]));
+        value.put(KEY_SCALE, vector(transform[3], transform[4], transform[5]));
+        Map<String, Object> rotation = vector(transform[6], transform[7], transform[8]);
+        rotation.put("w", (double) transform[9]);
+        value.put(KEY_ROTATION, rotation);
+        if (model != null) value.put(KEY_MODEL, model);
+        return value;
+    }
+
+    public static Map<String, Object> toValue(NodeData nodeData) {
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        nodeData.copyTransformTo(transform);
+        return toValue(transform, nodeData.getModel());
+    }
+
+    private static void readVector(Map<?, ?> vector, float[] out, int offset) {
+        out[offset] = number(vector, "x", 0);
+        out[offset + 1] = number(vector, "y", 0);
+        out[offset + 2] = number(vector, "z", 0);
+    }
+
+    private static Map<String, Object> vector(float x, float y, float z) {
+        Map<String, Object> vector = new HashMap<>();
+        vector.put("x", (double) x);
+        vector.put("y", (double) y);
+        vector.put("z", (double) z);
+        return vector;
+    }
+
+    private static Map<?, ?> child(Map<?, ?> node, String key) {
+        Object child = node == null ? null : node.get(key);
+        return child instanceof Map ? (Map<?, ?>) child : null;
+    }
+
+    private static float number(Map<?, ?> vector, String key, float missing) {
+        Object value = vector == null ? null : vector.get(key);
+        return value instanceof Number ? ((Number) value).floatValue() : missing;
+    }
+}
@@ -0,0 +1,243 @@
+package com.android.vrproject;
+
+import java.util.Arrays;
+
+/*
+Stores the transforms of the objects of a scene in primitive arrays, addressed by object index.
+
+Every object occupies one slot. Position, scale and rotation of all slots are kept in three float arrays,
+the model key of every slot in a String array, and slots of removed objects are reused through a free list. Reads and writes of existing objects do not allocate,
+the arrays only grow when a new object needs more room. The slots of the object indices are kept in an IntIntMap, so memory grows
+with the number of objects and not with their largest index.
+
+Iterate over all objects like this:
+    for (int slot = 0; slot < table.getSlotLimit(); slot++) {
+        int index = table.indexAt(slot);
+        if (index == NodeTable.NO_INDEX) continue;
+        ...
+    }
+ */
+public class NodeTable {
+
+    public static final int NO_SLOT = -1;
+    public static final int NO_INDEX = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /* object index of every slot, NO_INDEX if the slot is free */
+    private int[] indices;
+    private float[] positions;  // x, y, z per slot
+    private float[] scales;     // x, y, z per slot
+    private float[] rotations;  // x, y, z, w per slot
+    private String[] models;    // model key per slot, null for the default model
+
+    /* slot of every object index in the table */
+    private final IntIntMap slotsByIndex;
+
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int slotLimit = 0;
+    private int size = 0;
+
+    public NodeTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public NodeTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        indices = new int[capacity];
+        positions = new float[capacity * 3];
+        scales = new float[capacity * 3];
+        rotations = new float[capacity * 4];
+        models = new String[capacity];
+        freeSlots = new int[capacity];
+        slotsByIndex = new IntIntMap(NO_SLOT);
+    }
+
+    /*
+    a table with the same objects in the same slots as other. copies the arrays as a whole, without iterating the objects
+     */
+    public NodeTable(NodeTable other) {
+        indices = other.indices.clone();
+        positions = other.positions.clone();
+        scales = other.scales.clone();
+        rotations = other.rotations.clone();
+        models = other.models.clone();
+        freeSlots = other.freeSlots.clone();
+        slotsByIndex = new IntIntMap(other.slotsByIndex);
+        freeCount = other.freeCount;
+        slotLimit = other.slotLimit;
+        size = other.size;
+    }
+
+    /*
+    returns the slot of index, adding it with the identity transform (scale 1, no rotation) and the default model
+    if it is not in the table yet
+     */
+    public int put(int index) {
+        int slot = slotOf(index);
+        if (slot != NO_SLOT) return slot;
+
+        if (index < 0) throw new IllegalArgumentException("Negative object index " + index);
+
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotLimit == indices.length) grow(indices.length * 2);
+            slot = slotLimit++;
+        }
+        indices[slot] = index;
+        slotsByIndex.put(index, slot);
+        size++;
+
+        positions[slot * 3] = 0;
+        positions[slot * 3 + 1] = 0;
+        positions[slot * 3 + 2] = 0;
+        scales[slot * 3] = 1;
+        scales[slot * 3 + 1] = 1;
+        scales[slot * 3 + 2] = 1;
+        rotations[slot * 4] = 0;
+        rotations[slot * 4 + 1] = 0;
+        rotations[slot * 4 + 2] = 0;
+        rotations[slot * 4 + 3] = 1;
+        models[slot] = null;
+        return slot;
+    }
+
+    /*
+    slot of index, or NO_SLOT if it is not in the table
+     */
+    public int slotOf(int index) {
+        return slotsByIndex.get(index);
+    }
+
+    public boolean contains(int index) {
+        return slotOf(index) != NO_SLOT;
+    }
+
+    /*
+    removes index from the table, its slot is reused by the next put
+     */
+    public boolean remove(int index) {
+        int slot = slotsByIndex.remove(index);
+        if (slot == NO_SLOT) return false;
+
+        indices[slot] = NO_INDEX;
+        models[slot] = null;
+        freeSlots[freeCount++] = slot;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        slotsByIndex.clear();
+        Arrays.fill(indices, 0, slotLimit, NO_INDEX);
+        Arrays.fill(models, 0, slotLimit, null);
+        freeCount = 0;
+        slotLimit = 0;
+        size = 0;
+    }
+
+    /*
+    number of objects in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+    all used slots are below this limit
+     */
+    public int getSlotLimit() {
+        return slotLimit;
+    }
+
+    /*
+    object index stored in slot, or NO_INDEX if the slot is free
+     */
+    public int indexAt(int slot) {
+        return indices[slot];
+    }
+
+
+
+    /*
+    TRANSFORMS
+    transforms are NodeData.TRANSFORM_SIZE floats: position (x,y,z), scale (x,y,z), rotation (x,y,z,w)
+     */
+
+
+    public void getTransform(int slot, float[] out) {
+        System.arraycopy(positions, slot * 3, out, 0, 3);
+        System.arraycopy(scales, slot * 3, out, 3, 3);
+        System.arraycopy(rotations, slot * 4, out, 6, 4);
+    }
+
+    public void setTransform(int slot, float[] in) {
+        System.arraycopy(in, 0, positions, slot * 3, 3);
+        System.arraycopy(in, 3, scales, slot * 3, 3);
+        System.arraycopy(in, 6, rotations, slot * 4, 4);
+    }
+
+    /*
+    copies in into slot and returns true if anything changed
+     */
+    public boolean setTransformIfChanged(int slot, float[] in) {
+        boolean changed = copyIfChanged(in, 0, positions, slot * 3, 3);
+        changed |= copyIfChanged(in, 3, scales, slot * 3, 3);
+        changed |= copyIfChanged(in, 6, rotations, slot * 4, 4);
+        return changed;
+    }
+
+    public void setPosition(int slot, float x, float y, float z) {
+        positions[slot * 3] = x;
+        positions[slot * 3 + 1] = y;
+        positions[slot * 3 + 2] = z;
+    }
+
+    public float getPositionX(int slot) {
+        return positions[slot * 3];
+    }
+
+    public float getPositionY(int slot) {
+        return positions[slot * 3 + 1];
+    }
+
+    public float getPositionZ(int slot) {
+        return positions[slot * 3 + 2];
+    }
+
+    /*
+    model key of slot, null for the default model
+     */
+    public String getModel(int slot) {
+        return models[slot];
+    }
+
+    public void setModel(int slot, String model) {
+        models[slot] = model;
+    }
+
+    private static boolean copyIfChanged(float[] from, int fromOffset, float[] to, int toOffset, int length) {
+        boolean changed = false;
+        for (int i = 0; i < length; i++) {
+            float value = from[fromOffset + i];
+            if (Float.floatToIntBits(to[toOffset + i]) != Float.floatToIntBits(value)) {
+                to[toOffset + i] = value;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void grow(int capacity) {
+        int oldCapacity = indices.length;
+        indices = Arrays.copyOf(indices, capacity);
+        Arrays.fill(indices, oldCapacity, capacity, NO_INDEX);
+        positions = Arrays.copyOf(positions, capacity * 3);
+        scales = Arrays.copyOf(scales, capacity * 3);
+        rotations = Arrays.copyOf(rotations, capacity * 4);
+        models = Arrays.copyOf(models, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
@@ -0,0 +1,25 @@
+package com.android.vrproject;
+
+/*
+A rotation quaternion, used for the rotation of a NodeData.
+Has the same public fields as the Sceneform Quaternion it replaces, so firebase stores it the same way.
+Unlike Quaternion it does not normalize its values, they are stored as given.
+ */
+public class Quat {
+
+    public float x;
+    public float y;
+    public float z;
+    public float w = 1;
+
+    public Quat() {
+
+    }
+
+    public Quat(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+    }
+}
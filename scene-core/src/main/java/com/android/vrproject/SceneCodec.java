@@ -0,0 +1,503 @@
+package com.android.vrproject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+Compact, versioned binary encoding of SceneData and NodeData that does not go through reflection.
+
+Scene layout:
+    byte    version
+    byte    flags (FLAG_QUANTIZED, FLAG_MODELS)
+    varint  position units per meter (only if quantized)
+    varint  index
+    varint  length of cloudAnchorId + 1 (0 if there is none), followed by its UTF-8 bytes
+    varint  number of nodes
+    per node: varint node index, transform, model key as string (only if FLAG_MODELS)
+
+Node blob layout:
+    byte    version
+    byte    flags
+    varint  position units per meter (only if quantized)
+    transform
+    model key as string (only if FLAG_MODELS)
+
+FLAG_MODELS is only set if at least one node has a model key. Version 2 added it, version 1 blobs are still read.
+
+Transforms are either 10 big endian floats (position, scale, rotation), or quantized:
+the position as zigzag varints in fixed point relative to the anchor, the scale as 3 floats
+and the rotation as one int holding the smallest three components of the quaternion.
+ */
+public class SceneCodec {
+
+    public static final int VERSION = 2;
+    public static final int MIN_VERSION = 1;
+    public static final int DEFAULT_POSITION_UNITS_PER_METER = 1000; // millimeters
+
+    private static final int FLAG_QUANTIZED = 1;
+    private static final int FLAG_MODELS = 2;
+
+    /* smallest three: the three smallest components lie within +-1/sqrt(2), stored with 10 bits each */
+    private static final float SQRT_2 = (float) Math.sqrt(2);
+    private static final int ROTATION_BITS = 10;
+    private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+
+    private static final char[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_ALPHABET.length; i++) {
+            BASE64_VALUES[BASE64_ALPHABET[i]] = i;
+        }
+    }
+
+    private final boolean quantized;
+    private final int positionUnitsPerMeter;
+    private final float[] transformScratch = new float[NodeData.TRANSFORM_SIZE];
+
+    /*
+    codec that stores transforms without loss
+     */
+    public SceneCodec() {
+        this(false, DEFAULT_POSITION_UNITS_PER_METER);
+    }
+
+    /*
+    if quantized, positions are rounded to 1 / positionUnitsPerMeter and rotations to about 0.0015 per component.
+    decoding does not depend on these settings, every blob says how it was encoded.
+     */
+    public SceneCodec(boolean quantized, int positionUnitsPerMeter) {
+        if (positionUnitsPerMeter < 1) throw new IllegalArgumentException("positionUnitsPerMeter must be positive");
+
+        this.quantized = quantized;
+        this.positionUnitsPerMeter = positionUnitsPerMeter;
+    }
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+
+
+    /*
+    SCENES
+     */
+
+
+    public synchronized byte[] encodeScene(SceneData sceneData) {
+        NodeTable nodes = sceneData.nodes();
+        int nodeCount = nodes.size();
+
+        boolean models = hasModels(nodes);
+
+        Output out = new Output(32 + nodeCount * (quantized ? 24 : 44));
+        writeHeader(out, models);
+        out.writeVarint(sceneData.getIndex());
+        out.writeString(sceneData.getCloudAnchorId());
+        out.writeVarint(nodeCount);
+
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+
+            out.writeVarint(index);
+            nodes.getTransform(slot, transformScratch);
+            writeTransform(out, transformScratch, quantized, positionUnitsPerMeter);
+            if (models) out.writeString(nodes.getModel(slot));
+        }
+        return out.toByteArray();
+    }
+
+    public synchronized SceneData decodeScene(byte[] data) {
+        Input in = new Input(data);
+        int flags = readHeader(in);
+        boolean quantized = (flags & FLAG_QUANTIZED) != 0;
+        boolean models = (flags & FLAG_MODELS) != 0;
+        int unitsPerMeter = quantized ? in.readVarint() : 0;
+
+        SceneData sceneData = new SceneData();
+        sceneData.setIndex(in.readVarint());
+        sceneData.setCloudAnchorId(in.readString());
+
+        int nodeCount = in.readVarint();
+        for (int i = 0; i < nodeCount; i++) {
+            int index = in.readVarint();
+            readTransform(in, transformScratch, quantized, unitsPerMeter);
+            sceneData.setTransform(index, transformScratch);
+            if (models) sceneData.setModel(index, in.readString());
+        }
+        return sceneData;
+    }
+
+    public String encodeSceneToString(SceneData sceneData) {
+        return toBase64(encodeScene(sceneData));
+    }
+
+    public SceneData decodeScene(String data) {
+        return decodeScene(fromBase64(data));
+    }
+
+
+
+    /*
+    NODES
+     */
+
+
+    public synchronized byte[] encodeNode(NodeData nodeData) {
+        nodeData.copyTransformTo(transformScratch);
+        return encodeTransform(transformScratch, nodeData.getModel());
+    }
+
+    /*
+    encodes a transform of NodeData.TRANSFORM_SIZE floats as a node blob with the default model
+     */
+    public byte[] encodeTransform(float[] transform) {
+        return encodeTransform(transform, null);
+    }
+
+    /*
+    encodes a transform of NodeData.TRANSFORM_SIZE floats and a model key (null for the default model) as a node blob
+     */
+    public byte[] encodeTransform(float[] transform, String model) {
+        Output out = new Output(quantized ? 24 : 44);
+        writeHeader(out, model != null);
+        writeTransform(out, transform, quantized, positionUnitsPerMeter);
+        if (model != null) out.writeString(model);
+        return out.toByteArray();
+    }
+
+    public synchronized NodeData decodeNode(byte[] data) {
+        NodeData nodeData = new NodeData();
+        nodeData.setModel(decodeTransform(data, transformScratch));
+        nodeData.setTransform(transformScratch);
+        return nodeData;
+    }
+
+    /*
+    decodes a node blob straight into a transform of NodeData.TRANSFORM_SIZE floats, without creating a NodeData.
+    returns the model key of the node, null for the default model.
+     */
+    public static String decodeTransform(byte[] data, float[] out) {
+        Input in = new Input(data);
+        int flags = readHeader(in);
+        boolean quantized = (flags & FLAG_QUANTIZED) != 0;
+        int unitsPerMeter = quantized ? in.readVarint() : 0;
+        readTransform(in, out, quantized, unitsPerMeter);
+        return (flags & FLAG_MODELS) != 0 ? in.readString() : null;
+    }
+
+    public String encodeNodeToString(NodeData nodeData) {
+        return toBase64(encodeNode(nodeData));
+    }
+
+    public NodeData decodeNode(String data) {
+        return decodeNode(fromBase64(data));
+    }
+
+
+
+    /*
+    HELPER FUNCTIONS
+     */
+
+
+    private void writeHeader(Output out, boolean models) {
+        out.writeByte(VERSION);
+        out.writeByte((quantized ? FLAG_QUANTIZED : 0) | (models ? FLAG_MODELS : 0));
+        if (quantized) out.writeVarint(positionUnitsPerMeter);
+    }
+
+    private static boolean hasModels(NodeTable nodes) {
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            if (nodes.indexAt(slot) != NodeTable.NO_INDEX && nodes.getModel(slot) != null) return true;
+        }
+        return false;
+    }
+
+    /*
+    checks the version and returns the flags
+     */
+    private static int readHeader(Input in) {
+        int version = in.readByte();
+        if (version < MIN_VERSION || version > VERSION) throw new IllegalArgumentException("Unsupported scene codec version " + version);
+        return in.readByte();
+    }
+
+    private static void writeTransform(Output out, float[] transform, boolean quantized, int unitsPerMeter) {
+        if (!quantized) {
+            for (int i = 0; i < NodeData.TRANSFORM_SIZE; i++) {
+                out.writeFloat(transform[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            out.writeVarint(zigzag(Math.round(transform[i] * unitsPerMeter)));
+        }
+        for (int i = 3; i < 6; i++) {
+            out.writeFloat(transform[i]);
+        }
+        out.writeInt(packRotation(transform[6], transform[7], transform[8], transform[9]));
+    }
+
+    private static void readTransform(Input in, float[] transform, boolean quantized, int unitsPerMeter) {
+        if (!quantized) {
+            for (int i = 0; i < NodeData.TRANSFORM_SIZE; i++) {
+                transform[i] = in.readFloat();
+            }
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            transform[i] = (float) unzigzag(in.readVarint()) / unitsPerMeter;
+        }
+        for (int i = 3; i < 6; i++) {
+            transform[i] = in.readFloat();
+        }
+        unpackRotation(in.readInt(), transform, 6);
+    }
+
+    /*
+    packs a quaternion into 2 bits for the index of its largest component and 10 bits for each of the others.
+    the quaternion is normalized first, a zero quaternion is stored as identity.
+     */
+    static int packRotation(float x, float y, float z, float w) {
+        float norm = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (norm < 1e-6f) {
+            x = 0; y = 0; z = 0; w = 1;
+            norm = 1;
+        }
+
+        int largest = 0;
+        float largestAbs = Math.abs(x);
+        if (Math.abs(y) > largestAbs) { largest = 1; largestAbs = Math.abs(y); }
+        if (Math.abs(z) > largestAbs) { largest = 2; largestAbs = Math.abs(z); }
+        if (Math.abs(w) > largestAbs) { largest = 3; }
+
+        // q and -q are the same rotation, so the largest component can always be taken as positive
+        float sign = component(x, y, z, w, largest) < 0 ? -1f : 1f;
+        float scale = sign / norm;
+
+        int packed = largest << (3 * ROTATION_BITS);
+        int shift = 2 * ROTATION_BITS;
+        for (int i = 0; i < 4; i++) {
+            if (i == largest) continue;
+            packed |= quantizeComponent(component(x, y, z, w, i) * scale) << shift;
+            shift -= ROTATION_BITS;
+        }
+        return packed;
+    }
+
+    /*
+    inverse of packRotation, writes x, y, z, w to out starting at offset
+     */
+    static void unpackRotation(int packed, float[] out, int offset) {
+        int largest = packed >>> (3 * ROTATION_BITS);
+        int shift = 2 * ROTATION_BITS;
+        float sumOfSquares = 0;
+        for (int i = 0; i < 4; i++) {
+            if (i == largest) continue;
+            float value = dequantizeComponent((packed >>> shift) & ROTATION_MAX);
+            out[offset + i] = value;
+            sumOfSquares += value * value;
+            shift -= ROTATION_BITS;
+        }
+        out[offset + largest] = (float) Math.sqrt(Math.max(0f, 1f - sumOfSquares));
+    }
+
+    private static float component(float x, float y, float z, float w, int i) {
+        switch (i) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return z;
+            default: return w;
+        }
+    }
+
+    private static int quantizeComponent(float value) {
+        int quantized = Math.round((value * SQRT_2 + 1f) * 0.5f * ROTATION_MAX);
+        return Math.max(0, Math.min(ROTATION_MAX, quantized));
+    }
+
+    private static float dequantizeComponent(int quantized) {
+        return ((float) quantized / ROTATION_MAX * 2f - 1f) / SQRT_2;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+
+    /*
+    BASE64
+    java.util.Base64 needs API level 26, android.util.Base64 is not available in unit tests.
+     */
+
+
+    public static String toBase64(byte[] data) {
+        char[] out = new char[(data.length + 2) / 3 * 4];
+        int o = 0;
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = BASE64_ALPHABET[bits >>> 18];
+            out[o++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = BASE64_ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = BASE64_ALPHABET[bits & 0x3f];
+        }
+        int remaining = data.length - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = BASE64_ALPHABET[bits >>> 18];
+            out[o++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            out[o] = '=';
+        }
+        return new String(out);
+    }
+
+    public static byte[] fromBase64(String data) {
+        int length = data.length();
+        if (length % 4 != 0) throw new IllegalArgumentException("Invalid base64 length " + length);
+
+        int padding = length == 0 ? 0 : (data.charAt(length - 1) == '=' ? (data.charAt(length - 2) == '=' ? 2 : 1) : 0);
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int o = 0;
+        for (int i = 0; i < length; i += 4) {
+            int bits = base64Value(data.charAt(i)) << 18
+                    | base64Value(data.charAt(i + 1)) << 12
+                    | (data.charAt(i + 2) == '=' ? 0 : base64Value(data.charAt(i + 2)) << 6)
+                    | (data.charAt(i + 3) == '=' ? 0 : base64Value(data.charAt(i + 3)));
+            out[o++] = (byte) (bits >>> 16);
+            if (o < out.length) out[o++] = (byte) (bits >>> 8);
+            if (o < out.length) out[o++] = (byte) bits;
+        }
+        return out;
+    }
+
+    private static int base64Value(char c) {
+        int value = c < 128 ? BASE64_VALUES[c] : -1;
+        if (value < 0) throw new IllegalArgumentException("Invalid base64 character " + c);
+        return value;
+    }
+
+
+
+    /*
+    BYTE BUFFERS
+     */
+
+
+    private static class Output {
+        private byte[] buffer;
+        private int size = 0;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buffer;
+        private int position = 0;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            checkAvailable(1);
+            return buffer[position++] & 0xff;
+        }
+
+        int readInt() {
+            checkAvailable(4);
+            return (buffer[position++] & 0xff) << 24
+                    | (buffer[position++] & 0xff) << 16
+                    | (buffer[position++] & 0xff) << 8
+                    | (buffer[position++] & 0xff);
+        }
+
+        float readFloat() {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint at " + position);
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) return null;
+
+            checkAvailable(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private void checkAvailable(int count) {
+            if (position + count > buffer.length) throw new IllegalArgumentException("Truncated scene data");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.android.vrproject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/*
+Contains all information in the scene
+Provides functions to get and set scene information
+
+The objects are stored in a NodeTable. The map of NodeData objects that firebase reads and writes
+is only created in getNodeDataMap and setNodeDataMap.
+ */
+public class SceneData {
+
+    private static final String INDEX_PREFIX= "ID_";
+
+    public String cloudAnchorId;
+    public int index = 0;
+    private final NodeTable nodes;
+    private final float[] transformScratch = new float[NodeData.TRANSFORM_SIZE];
+
+    public SceneData(){
+        nodes = new NodeTable();
+    }
+
+    private SceneData(SceneData other) {
+        cloudAnchorId = other.cloudAnchorId;
+        index = other.index;
+        nodes = new NodeTable(other.nodes);
+    }
+
+    /*
+    an independent copy of the scene, e.g. to encode it on another thread
+     */
+    public SceneData copy() {
+        return new SceneData(this);
+    }
+
+    public int add(NodeData nodeData){
+        int slot = nodes.put(index);
+        nodeData.copyTransformTo(transformScratch);
+        nodes.setTransform(slot, transformScratch);
+        nodes.setModel(slot, nodeData.getModel());
+        return index++;
+    }
+
+    /*
+    adds an object with the default model at the anchor with scale 1 and no rotation
+     */
+    public int addNew(){
+        return addNew(null);
+    }
+
+    /*
+    adds an object with the given model at the anchor with scale 1 and no rotation
+     */
+    public int addNew(String model){
+        nodes.setModel(nodes.put(index), model);
+        return index++;
+    }
+
+
+    /*
+    getter and setter functions necessary for firebase if fields not public
+     */
+    public int getIndex(){
+        return index;
+    }
+
+    public void setIndex(int index){this.index = index;}
+
+
+    /*
+    creates a NodeData for the object, or returns null if there is no such object.
+    use getTransform to read objects without allocating.
+     */
+    public NodeData getNodeData(int index) {
+        if (!getTransform(index, transformScratch)) return null;
+
+        NodeData nodeData = new NodeData();
+        nodeData.setTransform(transformScratch);
+        nodeData.setModel(getModel(index));
+        return nodeData;
+    }
+
+    /*
+    replaces an existing object, does nothing if there is no such object
+     */
+    public void setNodeData(int index, NodeData nodeData) {
+        int slot = nodes.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) return;
+
+        nodeData.copyTransformTo(transformScratch);
+        nodes.setTransform(slot, transformScratch);
+        nodes.setModel(slot, nodeData.getModel());
+    }
+
+    /*
+    model key of an object, null for the default model or if there is no such object
+     */
+    public String getModel(int index) {
+        int slot = nodes.slotOf(index);
+        return slot == NodeTable.NO_SLOT ? null : nodes.getModel(slot);
+    }
+
+    /*
+    sets the model key of an existing object, does nothing if there is no such object
+     */
+    public void setModel(int index, String model) {
+        int slot = nodes.slotOf(index);
+        if (slot != NodeTable.NO_SLOT) nodes.setModel(slot, model);
+    }
+
+    /*
+    copies the transform of an object into out (NodeData.TRANSFORM_SIZE floats). returns false if there is no such object
+     */
+    public boolean getTransform(int index, float[] out) {
+        int slot = nodes.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) return false;
+
+        nodes.getTransform(slot, out);
+        return true;
+    }
+
+    /*
+    sets the transform of an object, adding it if it does not exist yet
+     */
+    public void setTransform(int index, float[] transform) {
+        nodes.setTransform(nodes.put(index), transform);
+    }
+
+    public boolean removeNode(int index) {
+        return nodes.remove(index);
+    }
+
+    public boolean hasNode(int index) {
+        return nodes.contains(index);
+    }
+
+    /*
+    the table holding all objects. not a getter, so that firebase does not serialize it
+     */
+    public NodeTable nodes() {
+        return nodes;
+    }
+
+    /*
+    key under which the node with the given index is stored in nodeDataMap (and in firebase)
+     */
+    public static String keyOf(int index) {
+        return INDEX_PREFIX + index;
+    }
+
+    /*
+    inverse of keyOf
+     */
+    public static int indexOf(String key) {
+        return Integer.parseInt(key.substring(INDEX_PREFIX.length()));
+    }
+
+    /*
+    creates the map firebase stores the objects as
+     */
+    public Map<String, NodeData> getNodeDataMap() {
+        Map<String, NodeData> nodeDataMap = new HashMap<>();
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+
+            nodes.getTransform(slot, transformScratch);
+            NodeData nodeData = new NodeData();
+            nodeData.setTransform(transformScratch);
+            nodeData.setModel(nodes.getModel(slot));
+            nodeDataMap.put(keyOf(index), nodeData);
+        }
+        return nodeDataMap;
+    }
+
+    /*
+    replaces all objects by the ones firebase has read
+     */
+    public void setNodeDataMap(Map<String, NodeData> nodeDataMap) {
+        nodes.clear();
+        if (nodeDataMap == null) return;
+
+        for (Map.Entry<String, NodeData> entry : nodeDataMap.entrySet()) {
+            if (entry.getValue() == null) continue;
+
+            entry.getValue().copyTransformTo(transformScratch);
+            int slot = nodes.put(indexOf(entry.getKey()));
+            nodes.setTransform(slot, transformScratch);
+            nodes.setModel(slot, entry.getValue().getModel());
+        }
+    }
+
+    public String getCloudAnchorId() {
+        return cloudAnchorId;
+    }
+
+    public void setCloudAnchorId(String cloudAnchorId) {
+        this.cloudAnchorId = cloudAnchorId;
+    }
+}
@@ -0,0 +1,71 @@
+package com.android.vrproject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Maps scenes to and from the plain values firebase reads and writes (Map, String, Long, Double),
+in the same layout as firebase's class mapping of SceneData: {cloudAnchorId, index, nodeDataMap}.
+Unlike the class mapping it uses no reflection and writes the objects straight into the NodeTable,
+see NodeDataMapper. It only reads its arguments, so it can decode on any thread.
+ */
+public final class SceneDataMapper {
+
+    public static final String KEY_CLOUD_ANCHOR_ID = "cloudAnchorId";
+    public static final String KEY_INDEX = "index";
+    public static final String KEY_NODE_DATA_MAP = "nodeDataMap";
+
+    private SceneDataMapper() {
+
+    }
+
+    /*
+    the scene stored as value, or null if value is not a scene, e.g. because there is no such scene
+     */
+    public static SceneData fromValue(Object value) {
+        if (!(value instanceof Map)) return null;
+        Map<?, ?> scene = (Map<?, ?>) value;
+
+        SceneData sceneData = new SceneData();
+        Object cloudAnchorId = scene.get(KEY_CLOUD_ANCHOR_ID);
+        sceneData.setCloudAnchorId(cloudAnchorId instanceof String ? (String) cloudAnchorId : null);
+        Object index = scene.get(KEY_INDEX);
+        sceneData.setIndex(index instanceof Number ? ((Number) index).intValue() : 0);
+
+        Object nodeDataMap = scene.get(KEY_NODE_DATA_MAP);
+        if (!(nodeDataMap instanceof Map)) return sceneData;
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) nodeDataMap).entrySet()) {
+            // like setNodeDataMap, objects without a value are left out
+            if (entry.getValue() == null) continue;
+
+            String model = NodeDataMapper.readTransform(entry.getValue(), transform);
+            int nodeIndex = SceneData.indexOf(entry.getKey().toString());
+            sceneData.setTransform(nodeIndex, transform);
+            sceneData.setModel(nodeIndex, model);
+        }
+        return sceneData;
+    }
+
+    /*
+    the value firebase stores the scene as
+     */
+    public static Map<String, Object> toValue(SceneData sceneData) {
+        Map<String, Object> value = new HashMap<>();
+        if (sceneData.getCloudAnchorId() != null) value.put(KEY_CLOUD_ANCHOR_ID, sceneData.getCloudAnchorId());
+        value.put(KEY_INDEX, (long) sceneData.getIndex());
+
+        Map<String, Object> nodeDataMap = new HashMap<>();
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        NodeTable nodes = sceneData.nodes();
+        for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+            int index = nodes.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+
+            nodes.getTransform(slot, transform);
+            nodeDataMap.put(SceneData.keyOf(index), NodeDataMapper.toValue(transform, nodes.getModel(slot)));
+        }
+        value.put(KEY_NODE_DATA_MAP, nodeDataMap);
+        return value;
+    }
+}
@@ -0,0 +1,125 @@
+package com.android.vrproject;
+
+import java.util.Arrays;
+
+/*
+Keeps track of the scene state that has been applied to the local nodes.
+Compares an incoming SceneData against it and only reports the objects that were added, removed or changed,
+so that a remote change only touches the nodes it concerns.
+ */
+public class SceneReconciler {
+
+    /*
+    receives the operations found by reconcile.
+    transforms are NodeData.TRANSFORM_SIZE floats and only valid during the call.
+    implementations must not call back into the reconciler from these methods.
+     */
+    public interface Target {
+        void onNodeAdded(int index, float[] transform);
+
+        void onNodeRemoved(int index);
+
+        void onNodeUpdated(int index, float[] transform);
+    }
+
+    /* applied transform of every object, plus the reconcile pass in which its slot was last seen */
+    private final NodeTable applied = new NodeTable();
+    private int[] passBySlot = new int[16];
+    private final float[] scratch = new float[NodeData.TRANSFORM_SIZE];
+    private int pass = 0;
+
+    private long addedCount = 0;
+    private long removedCount = 0;
+    private long updatedCount = 0;
+
+    /*
+    diffs sceneData against the applied state, reports every difference to target and takes sceneData as the new applied state.
+     */
+    public void reconcile(SceneData sceneData, Target target) {
+        pass++;
+
+        int incoming = 0;
+        if (sceneData != null) {
+            NodeTable nodes = sceneData.nodes();
+            for (int slot = 0; slot < nodes.getSlotLimit(); slot++) {
+                int index = nodes.indexAt(slot);
+                if (index == NodeTable.NO_INDEX) continue;
+
+                incoming++;
+                nodes.getTransform(slot, scratch);
+
+                int appliedSlot = applied.slotOf(index);
+                if (appliedSlot == NodeTable.NO_SLOT) {
+                    appliedSlot = applied.put(index);
+                    applied.setTransform(appliedSlot, scratch);
+                    markSeen(appliedSlot);
+
+                    addedCount++;
+                    target.onNodeAdded(index, scratch);
+                    continue;
+                }
+
+                markSeen(appliedSlot);
+                if (applied.setTransformIfChanged(appliedSlot, scratch)) {
+                    updatedCount++;
+                    target.onNodeUpdated(index, scratch);
+                }
+            }
+        }
+
+        // every incoming object has an applied entry now, so there is nothing to remove unless there are more entries
+        if (applied.size() == incoming) return;
+
+        for (int slot = 0; slot < applied.getSlotLimit(); slot++) {
+            int index = applied.indexAt(slot);
+            if (index == NodeTable.NO_INDEX || passBySlot[slot] == pass) continue;
+
+            applied.remove(index);
+
+            removedCount++;
+            target.onNodeRemoved(index);
+        }
+    }
+
+    /*
+    records a local change of one object as applied, so that its echo from the database is not reported as an update
+     */
+    public void markApplied(int index, float[] transform) {
+        int slot = applied.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) {
+            slot = applied.put(index);
+            markSeen(slot);
+        }
+        applied.setTransform(slot, transform);
+    }
+
+    /*
+    forgets the applied state, the next reconcile reports every object as added
+     */
+    public void reset() {
+        applied.clear();
+    }
+
+    public int getAppliedCount() {
+        return applied.size();
+    }
+
+    public long getAddedCount() {
+        return addedCount;
+    }
+
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    public long getUpdatedCount() {
+        return updatedCount;
+    }
+
+    private void markSeen(int slot) {
+        if (slot >= passBySlot.length) {
+            passBySlot = Arrays.copyOf(passBySlot, Math.max(passBySlot.length * 2, slot + 1));
+        }
+        passBySlot[slot] = pass;
+    }
+}
@@ -0,0 +1,65 @@
+package com.android.vrproject;
+
+import java.util.Map;
+
+/*
+The database operations scenes are synced with, so that the sync logic does not depend on a specific backend.
+FirebaseManager implements it with the Firebase Realtime Database, InMemorySceneStore without any service.
+
+Paths are relative to the root of the store and separated by '/', e.g. "anchor;142/nodeBlobs/ID_3".
+Values are plain Java types as Firebase returns them: Map<String, Object> for nodes with children,
+String, Long, Double and Boolean for leaves, and null for nothing. Writing null deletes a path.
+All listeners are called asynchronously.
+ */
+public interface SceneStore {
+
+    interface CounterListener {
+        /* value is the counter after the increment, or null if error is set */
+        void onComplete(Long value, Exception error);
+    }
+
+    interface CompletionListener {
+        /* error is null if the write succeeded */
+        void onComplete(Exception error);
+    }
+
+    interface ValueListener {
+        void onValue(Object value);
+
+        void onError(Exception error);
+    }
+
+    interface Subscription {
+        /* stops the listener, it is not called anymore afterwards */
+        void cancel();
+    }
+
+    /*
+    atomically adds delta to the number at path, which counts as initialValue if it does not exist yet
+     */
+    void increment(String path, long delta, long initialValue, CounterListener listener);
+
+    void set(String path, Object value, CompletionListener listener);
+
+    /*
+    writes all paths of updates in one atomic operation
+     */
+    void update(Map<String, Object> updates, CompletionListener listener);
+
+    /*
+    reads the value at path once
+     */
+    void read(String path, ValueListener listener);
+
+    /*
+    reads at most limit children of path, ordered by key, starting after the key startAfter or at the first one if it
+    is null. The value is a Map in key order, or null if there are no more children. Keys are compared as strings,
+    like Firebase does for keys that are not integers.
+     */
+    void readRange(String path, String startAfter, int limit, ValueListener listener);
+
+    /*
+    calls listener with the value at path now and after every change below path
+     */
+    Subscription subscribe(String path, ValueListener listener);
+}
@@ -0,0 +1,286 @@
+package com.android.vrproject;
+
+import java.util.Arrays;
+
+/*
+Smooths the transforms of remote objects, which arrive only a few times per second.
+
+Every object keeps a short history of the transforms it received, with the local time they arrived.
+Objects are not shown at the latest transform but at the transform of delayMillis ago, interpolated between the
+two samples around that time: positions and scales linearly, rotations by slerp. That way there is usually a
+sample ahead to move towards. If the next sample is late, the motion of the last two samples is continued
+for at most maxExtrapolationMillis. After that the object is put at its last sample and is at rest until the next one.
+
+Only objects that are moving are updated, see update. Neither push for known objects nor update allocate,
+the history of all objects is kept in flat arrays addressed by the slots of a NodeTable.
+Times can be in any clock, as long as push and update use the same one.
+ */
+public class TransformInterpolator {
+
+    /*
+    receives the interpolated transforms, which are only valid during the call
+     */
+    public interface Target {
+        void onInterpolated(int index, float[] transform);
+    }
+
+    private static final int T = NodeData.TRANSFORM_SIZE;
+
+    /* above this dot product the rotations are so close that slerp falls back to a normalized lerp */
+    private static final float SLERP_THRESHOLD = 0.9995f;
+
+    private final int historySize;
+    private final long delayMillis;
+    private final long maxExtrapolationMillis;
+
+    /* slots of the objects, the transform of a slot is the last output of the object */
+    private final NodeTable nodes = new NodeTable();
+
+    /* ring buffer of historySize samples per slot */
+    private long[] times;
+    private float[] samples;
+    private int[] newest;   // position of the newest sample in the ring of a slot
+    private int[] counts;   // number of samples in the ring of a slot
+
+    /* slots that still move */
+    private int[] activeSlots;
+    private int activeCount = 0;
+    private boolean[] active;
+
+    private final float[] out = new float[T];
+
+    /*
+    historySize samples per object, shown delayMillis behind the time of update
+     */
+    public TransformInterpolator(int historySize, long delayMillis, long maxExtrapolationMillis) {
+        if (historySize < 2) throw new IllegalArgumentException("historySize must be at least 2");
+
+        this.historySize = historySize;
+        this.delayMillis = delayMillis;
+        this.maxExtrapolationMillis = maxExtrapolationMillis;
+        allocate(16);
+    }
+
+    /*
+    adds a transform of index that arrived at timeMillis. Samples older than the newest one are dropped.
+     */
+    public void push(int index, long timeMillis, float[] transform) {
+        int slot = nodes.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) {
+            slot = nodes.put(index);
+            if (slot >= counts.length) allocate(nodes.getSlotLimit() * 2);
+            counts[slot] = 0;
+            nodes.setTransform(slot, transform);
+        }
+
+        if (counts[slot] > 0) {
+            long newestTime = times[slot * historySize + newest[slot]];
+            if (timeMillis < newestTime) return;
+
+            // an object at rest starts moving from where it is, reaching the new sample after delayMillis
+            long restMillis = timeMillis - delayMillis;
+            if (!active[slot] && restMillis > newestTime) {
+                nodes.getTransform(slot, out);
+                addSample(slot, restMillis, out);
+            }
+        }
+        addSample(slot, timeMillis, transform);
+
+        if (!active[slot]) {
+            active[slot] = true;
+            activeSlots[activeCount++] = slot;
+        }
+    }
+
+    /*
+    starts index over at transform, without blending from its earlier samples, e.g. for new objects
+     */
+    public void reset(int index, long timeMillis, float[] transform) {
+        remove(index);
+        push(index, timeMillis, transform);
+    }
+
+    /*
+    forgets index, e.g. because it was removed or is moved locally now
+     */
+    public void remove(int index) {
+        int slot = nodes.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) return;
+
+        deactivate(slot);
+        nodes.remove(index);
+    }
+
+    public void clear() {
+        for (int i = 0; i < activeCount; i++) {
+            active[activeSlots[i]] = false;
+        }
+        activeCount = 0;
+        nodes.clear();
+    }
+
+    /*
+    reports the transform of every moving object at nowMillis to target. Objects that reached their last sample
+    are reported once more with exactly that sample, and then not anymore until they receive a new one.
+     */
+    public void update(long nowMillis, Target target) {
+        long renderMillis = nowMillis - delayMillis;
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int slot = activeSlots[i];
+            boolean moving = sample(slot, renderMillis, out);
+            nodes.setTransform(slot, out);
+            target.onInterpolated(nodes.indexAt(slot), out);
+            if (!moving) {
+                // the slots after i have been updated already, the last one can take the place of this one
+                active[slot] = false;
+                activeSlots[i] = activeSlots[--activeCount];
+            }
+        }
+    }
+
+    /*
+    number of objects that are still moving
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /*
+    the transform index was last shown at. returns false if index is unknown.
+     */
+    public boolean getTransform(int index, float[] out) {
+        int slot = nodes.slotOf(index);
+        if (slot == NodeTable.NO_SLOT) return false;
+
+        nodes.getTransform(slot, out);
+        return true;
+    }
+
+    private void addSample(int slot, long timeMillis, float[] transform) {
+        int count = counts[slot];
+        int position = count == 0 ? 0 : (newest[slot] + 1) % historySize;
+        times[slot * historySize + position] = timeMillis;
+        System.arraycopy(transform, 0, samples, (slot * historySize + position) * T, T);
+        newest[slot] = position;
+        counts[slot] = Math.min(count + 1, historySize);
+    }
+
+    /*
+    writes the transform of slot at renderMillis to out, returns false once the slot is at its last sample
+     */
+    private boolean sample(int slot, long renderMillis, float[] out) {
+        int base = slot * historySize;
+        int count = counts[slot];
+        int newestPosition = newest[slot];
+        long newestTime = times[base + newestPosition];
+
+        if (renderMillis >= newestTime) {
+            long ahead = renderMillis - newestTime;
+            if (count < 2 || ahead >= maxExtrapolationMillis) {
+                System.arraycopy(samples, (base + newestPosition) * T, out, 0, T);
+                return false;
+            }
+
+            // continue the motion between the last two samples
+            int previous = (newestPosition - 1 + historySize) % historySize;
+            long span = newestTime - times[base + previous];
+            if (span <= 0) {
+                System.arraycopy(samples, (base + newestPosition) * T, out, 0, T);
+                return true;
+            }
+            blend(base + previous, base + newestPosition, 1 + (float) ahead / span, out);
+            return true;
+        }
+
+        // walk back from the newest sample to the first one that is not after renderMillis
+        int later = newestPosition;
+        for (int i = 1; i < count; i++) {
+            int earlier = (later - 1 + historySize) % historySize;
+            long earlierTime = times[base + earlier];
+            if (earlierTime <= renderMillis) {
+                long span = times[base + later] - earlierTime;
+                float t = span <= 0 ? 1 : (float) (renderMillis - earlierTime) / span;
+                blend(base + earlier, base + later, t, out);
+                return true;
+            }
+            later = earlier;
+        }
+
+        // older than the whole history, hold the oldest sample
+        System.arraycopy(samples, (base + later) * T, out, 0, T);
+        return true;
+    }
+
+    /*
+    blends the samples at ring positions a and b, t = 0 is a and t = 1 is b. t > 1 extrapolates.
+     */
+    private void blend(int a, int b, float t, float[] out) {
+        int offsetA = a * T;
+        int offsetB = b * T;
+        for (int i = 0; i < 6; i++) {
+            float from = samples[offsetA + i];
+            out[i] = from + (samples[offsetB + i] - from) * t;
+        }
+        slerp(samples, offsetA + 6, offsetB + 6, t, out, 6);
+    }
+
+    /*
+    spherical interpolation between the quaternions at from and to along the shorter arc, normalized
+     */
+    static void slerp(float[] q, int from, int to, float t, float[] out, int offset) {
+        float ax = q[from], ay = q[from + 1], az = q[from + 2], aw = q[from + 3];
+        float bx = q[to], by = q[to + 1], bz = q[to + 2], bw = q[to + 3];
+
+        float dot = ax * bx + ay * by + az * bz + aw * bw;
+        if (dot < 0) {
+            bx = -bx; by = -by; bz = -bz; bw = -bw;
+            dot = -dot;
+        }
+
+        float wa;
+        float wb;
+        if (dot > SLERP_THRESHOLD) {
+            wa = 1 - t;
+            wb = t;
+        } else {
+            double theta = Math.acos(Math.min(dot, 1));
+            double sin = Math.sin(theta);
+            wa = (float) (Math.sin((1 - t) * theta) / sin);
+            wb = (float) (Math.sin(t * theta) / sin);
+        }
+
+        float x = wa * ax + wb * bx;
+        float y = wa * ay + wb * by;
+        float z = wa * az + wb * bz;
+        float w = wa * aw + wb * bw;
+        float norm = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (norm == 0) norm = 1;
+        out[offset] = x / norm;
+        out[offset + 1] = y / norm;
+        out[offset + 2] = z / norm;
+        out[offset + 3] = w / norm;
+    }
+
+    private void deactivate(int slot) {
+        if (!active[slot]) return;
+
+        active[slot] = false;
+        for (int i = 0; i < activeCount; i++) {
+            if (activeSlots[i] == slot) {
+                activeSlots[i] = activeSlots[--activeCount];
+                return;
+            }
+        }
+    }
+
+    private void allocate(int slots) {
+        if (times != null && slots * historySize <= times.length) return;
+
+        times = times == null ? new long[slots * historySize] : Arrays.copyOf(times, slots * historySize);
+        samples = samples == null ? new float[slots * historySize * T] : Arrays.copyOf(samples, slots * historySize * T);
+        newest = newest == null ? new int[slots] : Arrays.copyOf(newest, slots);
+        counts = counts == null ? new int[slots] : Arrays.copyOf(counts, slots);
+        active = active == null ? new boolean[slots] : Arrays.copyOf(active, slots);
+        activeSlots = activeSlots == null ? new int[slots] : Arrays.copyOf(activeSlots, slots);
+    }
+}
@@ -0,0 +1,22 @@
+package com.android.vrproject;
+
+/*
+Three floats, used for the position and scale of a NodeData.
+Has the same public fields as the Sceneform Vector3 it replaces, so firebase stores it the same way.
+ */
+public class Vec3 {
+
+    public float x;
+    public float y;
+    public float z;
+
+    public Vec3() {
+
+    }
+
+    public Vec3(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+}
@@ -0,0 +1,47 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AnchorCells}.
+ */
+public class AnchorCellsTest {
+
+    @Test
+    public void nearest_isTheClosestAnchor() {
+        AnchorCells cells = new AnchorCells();
+        int east = cells.add("ua-east", 10, 0, 0);
+        int north = cells.add("ua-north", 0, 0, -10);
+
+        assertEquals(AnchorCells.MAIN, cells.nearest(1, 0, 1));
+        assertEquals(east, cells.nearest(6, 1, 0));
+        assertEquals(north, cells.nearest(2, 0, -7));
+        assertEquals(64f, cells.distanceSquared(east, 2, 0, 0), 0f);
+    }
+
+    @Test
+    public void addAll_readsTheStoredCellsOnce() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("ua-1", AnchorCells.toValue(1, 2, 3));
+        value.put("ua-2", AnchorCells.toValue(-4, 0, 0));
+        AnchorCells cells = new AnchorCells();
+
+        assertEquals(2, cells.addAll(value));
+        assertEquals(0, cells.addAll(value));
+
+        int cell = cells.indexOf("ua-1");
+        assertEquals(3, cells.size());
+        assertEquals("ua-1", cells.getCloudAnchorId(cell));
+        assertEquals(2f, cells.getOffsetY(cell), 0f);
+        assertEquals(AnchorCells.NO_CELL, cells.indexOf("ua-3"));
+
+        cells.clear();
+        assertEquals(1, cells.size());
+        assertNull(cells.getCloudAnchorId(AnchorCells.MAIN));
+    }
+}
@@ -0,0 +1,177 @@
+package com.android.vrproject;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class InMemorySceneStoreTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private InMemorySceneStore store = new InMemorySceneStore(2, 2, 50, 7);
+
+    @After
+    public void shutdown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void set_isReadBackNormalized() throws InterruptedException {
+        Map<String, Object> scene = new HashMap<>();
+        scene.put("index", 3);
+        scene.put("cloudAnchorId", "ua-1");
+        store.set("anchor;1", scene, null);
+
+        AtomicReference<Object> read = new AtomicReference<>();
+        store.read("anchor;1/index", new Recorder(read));
+        awaitIdle();
+
+        assertEquals(3L, read.get());
+        assertEquals("ua-1", store.getValue("/anchor;1/cloudAnchorId/"));
+    }
+
+    @Test
+    public void setNull_removesEmptyParents() throws InterruptedException {
+        store.set("a/b/c", "x", null);
+        store.set("a/b/c", null, null);
+        awaitIdle();
+
+        assertNull(store.getValue("a"));
+    }
+
+    @Test
+    public void increment_isAtomic() throws InterruptedException {
+        List<Long> values = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            store.increment("counter", 2, 141, (value, error) -> values.add(value));
+        }
+        awaitIdle();
+
+        assertEquals(341L, store.getValue("counter"));
+        assertEquals(100, values.size());
+        assertEquals(100, new HashSet<>(values).size());
+    }
+
+    @Test
+    public void increment_failsOnNonNumber() throws InterruptedException {
+        store.set("counter", "text", null);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        store.increment("counter", 1, 0, (value, error) -> failure.set(error));
+        awaitIdle();
+
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void subscribe_receivesChangesInOrder() throws InterruptedException {
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        store.subscribe("anchor;1/index", new Recorder(received));
+        awaitIdle();
+        for (int i = 0; i < 50; i++) {
+            store.set("anchor;1/index", i, null);
+        }
+        awaitIdle();
+
+        assertNull(received.get(0));
+        for (int i = 0; i < 50; i++) {
+            assertEquals((long) i, received.get(i + 1));
+        }
+    }
+
+    @Test
+    public void subscribe_onlyNotifiedOnOverlappingChanges() throws InterruptedException {
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        store.set("anchor;1/nodeBlobs/ID_0", "a", null);
+        awaitIdle();
+        store.subscribe("anchor;1", new Recorder(received));
+        awaitIdle();
+
+        store.set("anchor;2/index", 1, null);
+        store.set("anchor;1/nodeBlobs/ID_0", "a", null);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("anchor;1/nodeBlobs/ID_1", "b");
+        updates.put("anchor;1/index", 2);
+        store.update(updates, null);
+        awaitIdle();
+
+        // the initial value and one notification for the multi-path update
+        assertEquals(2, received.size());
+        Map<?, ?> scene = (Map<?, ?>) received.get(1);
+        assertEquals(2L, scene.get("index"));
+        assertEquals(2, ((Map<?, ?>) scene.get("nodeBlobs")).size());
+    }
+
+    @Test
+    public void cancel_stopsNotifications() throws InterruptedException {
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        SceneStore.Subscription subscription = store.subscribe("x", new Recorder(received));
+        awaitIdle();
+        subscription.cancel();
+        store.set("x", 1, null);
+        awaitIdle();
+
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void readRange_pagesThroughTheChildrenInKeyOrder() throws InterruptedException {
+        Map<String, Object> nodes = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            nodes.put("ID_" + i, (long) i);
+        }
+        store.set("scene/nodes", nodes, null);
+
+        AtomicReference<Object> first = new AtomicReference<>();
+        AtomicReference<Object> second = new AtomicReference<>();
+        AtomicReference<Object> after = new AtomicReference<>("not read");
+        store.readRange("scene/nodes", null, 3, new Recorder(first));
+        store.readRange("scene/nodes", "ID_2", 3, new Recorder(second));
+        store.readRange("scene/nodes", "ID_4", 3, new Recorder(after));
+        awaitIdle();
+
+        assertEquals(Arrays.asList("ID_0", "ID_1", "ID_2"), new ArrayList<>(((Map<?, ?>) first.get()).keySet()));
+        assertEquals(Arrays.asList("ID_3", "ID_4"), new ArrayList<>(((Map<?, ?>) second.get()).keySet()));
+        assertEquals(3L, ((Map<?, ?>) second.get()).get("ID_3"));
+        assertNull(after.get());
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        assertTrue(store.awaitIdle(TIMEOUT_MS));
+    }
+
+    private static class Recorder implements SceneStore.ValueListener {
+        private final List<Object> values;
+        private final AtomicReference<Object> last;
+
+        Recorder(List<Object> values) {
+            this.values = values;
+            this.last = null;
+        }
+
+        Recorder(AtomicReference<Object> last) {
+            this.values = null;
+            this.last = last;
+        }
+
+        @Override
+        public void onValue(Object value) {
+            if (values != null) values.add(value);
+            if (last != null) last.set(value);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            fail(error.toString());
+        }
+    }
+}
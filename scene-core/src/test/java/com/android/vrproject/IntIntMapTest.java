@@ -0,0 +1,80 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntIntMapTest {
+
+    private final IntIntMap map = new IntIntMap(-1);
+
+    @Test
+    public void putAndGet() {
+        map.put(3, 30);
+        map.put(3, 31);
+
+        assertEquals(31, map.get(3));
+        assertEquals(-1, map.get(4));
+        assertEquals(-1, map.get(-3));
+        assertTrue(map.containsKey(3));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void remove_keepsOtherKeysReachable() {
+        for (int key = 0; key < 64; key += 16) {
+            map.put(key, key);
+        }
+
+        assertEquals(16, map.remove(16));
+        assertEquals(-1, map.remove(16));
+
+        assertEquals(0, map.get(0));
+        assertEquals(32, map.get(32));
+        assertEquals(48, map.get(48));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void randomOperations_matchAHashMap() {
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? -1 : removed, map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 2000; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? -1 : value, map.get(key));
+        }
+    }
+
+    @Test
+    public void clear_removesEverything() {
+        for (int key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_rejectsNegativeKeys() {
+        map.put(-1, 0);
+    }
+}
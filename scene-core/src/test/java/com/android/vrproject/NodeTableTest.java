@@ -0,0 +1,140 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NodeTableTest {
+
+    private final NodeTable table = new NodeTable(2);
+
+    @Test
+    public void put_addsTheIdentityTransform() {
+        int slot = table.put(7);
+
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        table.getTransform(slot, transform);
+        assertArrayEquals(new float[] {0, 0, 0, 1, 1, 1, 0, 0, 0, 1}, transform, 0);
+        assertNull(table.getModel(slot));
+        assertEquals(7, table.indexAt(slot));
+        assertEquals(slot, table.slotOf(7));
+        assertEquals(slot, table.put(7));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void remove_freesTheSlotForTheNextPut() {
+        table.put(0);
+        int removedSlot = table.put(1);
+        table.setModel(removedSlot, "chair");
+        table.put(2);
+
+        assertTrue(table.remove(1));
+        assertFalse(table.remove(1));
+        int reused = table.put(3);
+
+        assertEquals(removedSlot, reused);
+        assertNull(table.getModel(reused));
+        assertEquals(NodeTable.NO_SLOT, table.slotOf(1));
+        assertEquals(3, table.size());
+        assertEquals(3, table.getSlotLimit());
+    }
+
+    @Test
+    public void removeAndPutAgain_keepsOtherObjects() {
+        for (int index = 0; index < 100; index++) {
+            table.setPosition(table.put(index), index, 0, 0);
+        }
+        for (int index = 0; index < 100; index += 2) {
+            table.remove(index);
+        }
+        for (int index = 0; index < 100; index += 4) {
+            table.setPosition(table.put(index), -index, 0, 0);
+        }
+
+        for (int index = 0; index < 100; index++) {
+            int slot = table.slotOf(index);
+            if (index % 2 == 1) {
+                assertEquals(index, table.getPositionX(slot), 0);
+            } else if (index % 4 == 0) {
+                assertEquals(-index, table.getPositionX(slot), 0);
+            } else {
+                assertEquals(NodeTable.NO_SLOT, slot);
+            }
+        }
+        assertEquals(75, table.size());
+    }
+
+    @Test
+    public void iteration_visitsEveryObjectOnce() {
+        table.put(5);
+        table.put(6);
+        table.put(7);
+        table.remove(6);
+
+        Set<Integer> visited = new HashSet<>();
+        for (int slot = 0; slot < table.getSlotLimit(); slot++) {
+            int index = table.indexAt(slot);
+            if (index == NodeTable.NO_INDEX) continue;
+            assertTrue(visited.add(index));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(5, 7)), visited);
+    }
+
+    @Test
+    public void hugeIndex_doesNotAllocateByIndex() {
+        int slot = table.put(2_000_000_000);
+
+        assertEquals(slot, table.slotOf(2_000_000_000));
+        assertEquals(NodeTable.NO_SLOT, table.slotOf(1_999_999_999));
+    }
+
+    @Test
+    public void clear_removesEverything() {
+        table.put(1);
+        table.put(2);
+
+        table.clear();
+
+        assertEquals(0, table.size());
+        assertEquals(0, table.getSlotLimit());
+        assertFalse(table.contains(1));
+        assertEquals(0, table.put(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_rejectsNegativeIndices() {
+        table.put(-1);
+    }
+
+    @Test
+    public void setTransformIfChanged_reportsChanges() {
+        int slot = table.put(0);
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        table.getTransform(slot, transform);
+
+        assertFalse(table.setTransformIfChanged(slot, transform));
+        transform[8] = 0.5f;
+        assertTrue(table.setTransformIfChanged(slot, transform));
+        assertFalse(table.setTransformIfChanged(slot, transform));
+    }
+
+    @Test
+    public void copy_isIndependentOfTheOriginal() {
+        int slot = table.put(7);
+        table.setModel(slot, "chair");
+
+        NodeTable copy = new NodeTable(table);
+        table.setModel(slot, "table");
+        table.remove(7);
+        copy.put(8);
+
+        assertEquals("chair", copy.getModel(copy.slotOf(7)));
+        assertEquals(2, copy.size());
+        assertEquals(NodeTable.NO_SLOT, table.slotOf(8));
+    }
+}
@@ -0,0 +1,206 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip tests for {@link SceneCodec}.
+ */
+public class SceneCodecTest {
+
+    private static final float POSITION_TOLERANCE = 0.0005f;
+    private static final float ROTATION_TOLERANCE = 0.002f;
+
+    @Test
+    public void scene_roundTripIsLossless() {
+        SceneData sceneData = randomScene(50, new Random(1));
+        SceneCodec codec = new SceneCodec();
+
+        SceneData decoded = codec.decodeScene(codec.encodeScene(sceneData));
+
+        assertSameScene(sceneData, decoded, 0f, 0f);
+    }
+
+    @Test
+    public void scene_quantizedRoundTripIsWithinTolerance() {
+        SceneData sceneData = randomScene(50, new Random(2));
+        SceneCodec codec = new SceneCodec(true, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER);
+
+        SceneData decoded = codec.decodeScene(codec.encodeScene(sceneData));
+
+        assertSameScene(sceneData, decoded, POSITION_TOLERANCE, ROTATION_TOLERANCE);
+    }
+
+    @Test
+    public void scene_quantizedIsSmaller() {
+        SceneData sceneData = randomScene(100, new Random(3));
+
+        int raw = new SceneCodec().encodeScene(sceneData).length;
+        int quantized = new SceneCodec(true, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER).encodeScene(sceneData).length;
+
+        assertTrue("quantized " + quantized + " vs raw " + raw, quantized < raw * 0.7);
+    }
+
+    @Test
+    public void scene_isSmallerThanTheObjectMapping() {
+        SceneData sceneData = randomScene(100, new Random(4));
+
+        int blob = new SceneCodec().encodeSceneToString(sceneData).length();
+        StringBuilder json = new StringBuilder();
+        appendJson(json, SceneDataMapper.toValue(sceneData));
+
+        assertTrue("blob " + blob + " vs json " + json.length(), blob < json.length());
+    }
+
+    @Test
+    public void scene_emptySceneWithoutCloudAnchorId() {
+        SceneData sceneData = new SceneData();
+        SceneCodec codec = new SceneCodec();
+
+        SceneData decoded = codec.decodeScene(codec.encodeSceneToString(sceneData));
+
+        assertNull(decoded.getCloudAnchorId());
+        assertEquals(0, decoded.getIndex());
+        assertTrue(decoded.getNodeDataMap().isEmpty());
+    }
+
+    @Test
+    public void node_roundTripThroughBase64() {
+        NodeData nodeData = randomNode(new Random(4));
+        SceneCodec codec = new SceneCodec(true, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER);
+
+        NodeData decoded = codec.decodeNode(codec.encodeNodeToString(nodeData));
+
+        assertSameNode(nodeData, decoded, POSITION_TOLERANCE, ROTATION_TOLERANCE);
+    }
+
+    @Test
+    public void node_zeroRotationIsDecodedAsIdentity() {
+        float[] out = new float[4];
+
+        SceneCodec.unpackRotation(SceneCodec.packRotation(0, 0, 0, 0), out, 0);
+
+        assertArrayEquals(new float[] {0, 0, 0, 1}, out, ROTATION_TOLERANCE);
+    }
+
+    @Test
+    public void rotation_negatedQuaternionIsTheSameRotation() {
+        float[] out = new float[4];
+        float s = (float) Math.sqrt(0.5);
+
+        SceneCodec.unpackRotation(SceneCodec.packRotation(0, -s, 0, -s), out, 0);
+
+        assertArrayEquals(new float[] {0, s, 0, s}, out, ROTATION_TOLERANCE);
+    }
+
+    @Test
+    public void base64_matchesReferenceEncoding() {
+        assertEquals("", SceneCodec.toBase64(new byte[0]));
+        assertEquals("Zg==", SceneCodec.toBase64("f".getBytes()));
+        assertEquals("Zm8=", SceneCodec.toBase64("fo".getBytes()));
+        assertEquals("Zm9v", SceneCodec.toBase64("foo".getBytes()));
+        assertEquals("Zm9vYmFy", SceneCodec.toBase64("foobar".getBytes()));
+        assertArrayEquals("foob".getBytes(), SceneCodec.fromBase64("Zm9vYg=="));
+    }
+
+    @Test
+    public void scene_modelsRoundTrip() {
+        SceneData sceneData = randomScene(3, new Random(5));
+        sceneData.setModel(1, "chair");
+        SceneCodec codec = new SceneCodec(true, SceneCodec.DEFAULT_POSITION_UNITS_PER_METER);
+
+        SceneData decoded = codec.decodeScene(codec.encodeScene(sceneData));
+
+        assertNull(decoded.getModel(0));
+        assertEquals("chair", decoded.getModel(1));
+        assertEquals("chair", codec.decodeNode(codec.encodeNode(sceneData.getNodeData(1))).getModel());
+    }
+
+    @Test
+    public void decode_readsVersion1WithoutModels() {
+        SceneData sceneData = randomScene(3, new Random(6));
+        byte[] data = new SceneCodec().encodeScene(sceneData);
+        data[0] = 1;
+
+        assertSameScene(sceneData, new SceneCodec().decodeScene(data), 0f, 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownVersion() {
+        byte[] data = new SceneCodec().encodeScene(new SceneData());
+        data[0] = (byte) (SceneCodec.VERSION + 1);
+
+        new SceneCodec().decodeScene(data);
+    }
+
+    static SceneData randomScene(int nodeCount, Random random) {
+        SceneData sceneData = new SceneData();
+        sceneData.setCloudAnchorId("ua-" + Long.toHexString(random.nextLong()));
+        for (int i = 0; i < nodeCount; i++) {
+            sceneData.add(randomNode(random));
+        }
+        return sceneData;
+    }
+
+    static NodeData randomNode(Random random) {
+        return new NodeData(
+                new Vec3(random.nextFloat() * 10 - 5, random.nextFloat() * 2, random.nextFloat() * 10 - 5),
+                new Vec3(0.2f + random.nextFloat() * 4, 0.2f + random.nextFloat() * 4, 0.2f + random.nextFloat() * 4),
+                randomRotation(random));
+    }
+
+    /* normalized, like the rotations of Sceneform nodes */
+    static Quat randomRotation(Random random) {
+        float x = random.nextFloat() * 2 - 1, y = random.nextFloat() * 2 - 1, z = random.nextFloat() * 2 - 1, w = random.nextFloat() * 2 - 1;
+        float norm = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        return new Quat(x / norm, y / norm, z / norm, w / norm);
+    }
+
+    /*
+    the JSON firebase sends the plain objects of the object mapping as
+     */
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) json.append(',');
+                json.append('"').append(entry.getKey()).append("\":");
+                appendJson(json, entry.getValue());
+                first = false;
+            }
+            json.append('}');
+        } else if (value instanceof String) {
+            json.append('"').append(value).append('"');
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static void assertSameScene(SceneData expected, SceneData actual, float positionTolerance, float rotationTolerance) {
+        assertEquals(expected.getCloudAnchorId(), actual.getCloudAnchorId());
+        assertEquals(expected.getIndex(), actual.getIndex());
+        assertEquals(expected.getNodeDataMap().keySet(), actual.getNodeDataMap().keySet());
+        for (String key : expected.getNodeDataMap().keySet()) {
+            assertSameNode(expected.getNodeDataMap().get(key), actual.getNodeDataMap().get(key), positionTolerance, rotationTolerance);
+        }
+    }
+
+    private static void assertSameNode(NodeData expected, NodeData actual, float positionTolerance, float rotationTolerance) {
+        float[] e = new float[NodeData.TRANSFORM_SIZE];
+        float[] a = new float[NodeData.TRANSFORM_SIZE];
+        expected.copyTransformTo(e);
+        actual.copyTransformTo(a);
+
+        for (int i = 0; i < 3; i++) assertEquals(e[i], a[i], positionTolerance);
+        for (int i = 3; i < 6; i++) assertEquals(e[i], a[i], 0f);
+
+        // q and -q are the same rotation
+        float sign = e[6] * a[6] + e[7] * a[7] + e[8] * a[8] + e[9] * a[9] < 0 ? -1 : 1;
+        for (int i = 6; i < 10; i++) assertEquals(e[i], sign * a[i], rotationTolerance);
+    }
+}
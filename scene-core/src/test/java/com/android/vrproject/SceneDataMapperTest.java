@@ -0,0 +1,66 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SceneDataMapper} and {@link NodeDataMapper}.
+ */
+public class SceneDataMapperTest {
+
+    @Test
+    public void scene_roundTripIsLossless() {
+        SceneData sceneData = new SceneData();
+        sceneData.setCloudAnchorId("ua-1");
+        sceneData.setTransform(sceneData.addNew("chair"), new float[] {1.5f, -2, 0.1f, 1, 2, 3, 0.5f, -0.5f, 0.5f, 0.5f});
+        sceneData.addNew();
+        sceneData.setIndex(7);
+
+        SceneData decoded = SceneDataMapper.fromValue(SceneDataMapper.toValue(sceneData));
+
+        assertEquals("ua-1", decoded.getCloudAnchorId());
+        assertEquals(7, decoded.getIndex());
+        assertEquals(2, decoded.nodes().size());
+        assertEquals("chair", decoded.getModel(0));
+        assertNull(decoded.getModel(1));
+        float[] expected = new float[NodeData.TRANSFORM_SIZE];
+        float[] actual = new float[NodeData.TRANSFORM_SIZE];
+        for (int index = 0; index < 2; index++) {
+            sceneData.getTransform(index, expected);
+            decoded.getTransform(index, actual);
+            assertArrayEquals(expected, actual, 0f);
+        }
+    }
+
+    @Test
+    public void node_readsMissingValuesLikeTheClassMapping() {
+        Map<String, Object> rotation = new HashMap<>();
+        rotation.put("x", 1L);
+        Map<String, Object> node = new HashMap<>();
+        node.put("rotation", rotation);
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+
+        String model = NodeDataMapper.readTransform(node, transform);
+
+        // no position and scale, a rotation without w has the default w of Quat
+        assertNull(model);
+        assertArrayEquals(new float[] {0, 0, 0, 0, 0, 0, 1, 0, 0, 1}, transform, 0f);
+    }
+
+    @Test
+    public void scene_ofNoValueIsNull() {
+        assertNull(SceneDataMapper.fromValue(null));
+        assertNull(SceneDataMapper.fromValue("text"));
+
+        Map<String, Object> scene = new HashMap<>();
+        scene.put("index", 3L);
+        SceneData sceneData = SceneDataMapper.fromValue(scene);
+        assertNull(sceneData.getCloudAnchorId());
+        assertEquals(3, sceneData.getIndex());
+        assertEquals(0, sceneData.nodes().size());
+    }
+}
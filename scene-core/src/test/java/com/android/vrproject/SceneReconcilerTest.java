@@ -0,0 +1,146 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SceneReconcilerTest {
+
+    private final SceneReconciler reconciler = new SceneReconciler();
+    private final Recorder recorder = new Recorder();
+
+    @Test
+    public void firstReconcile_addsEveryObject() {
+        reconciler.reconcile(scene(0, 1, 2), recorder);
+
+        assertEquals("added 0, added 1, added 2", recorder.toString());
+        assertEquals(3, reconciler.getAppliedCount());
+    }
+
+    @Test
+    public void unchangedScene_reportsNothing() {
+        reconciler.reconcile(scene(0, 1), recorder);
+        recorder.operations.clear();
+
+        reconciler.reconcile(scene(0, 1), recorder);
+
+        assertTrue(recorder.operations.isEmpty());
+    }
+
+    @Test
+    public void changes_reportOnlyTheObjectsTheyConcern() {
+        reconciler.reconcile(scene(0, 1, 2), recorder);
+        recorder.operations.clear();
+
+        SceneData changed = scene(0, 2, 3);
+        move(changed, 2, 5);
+        reconciler.reconcile(changed, recorder);
+
+        assertEquals("updated 2, added 3, removed 1", recorder.toString());
+        assertEquals(5, recorder.updatedTransform[0], 0);
+        assertEquals(1, reconciler.getRemovedCount());
+        assertEquals(1, reconciler.getUpdatedCount());
+        assertEquals(4, reconciler.getAddedCount());
+    }
+
+    @Test
+    public void nullScene_removesEveryObject() {
+        reconciler.reconcile(scene(0, 1), recorder);
+        recorder.operations.clear();
+
+        reconciler.reconcile(null, recorder);
+
+        assertEquals("removed 0, removed 1", recorder.toString());
+        assertEquals(0, reconciler.getAppliedCount());
+    }
+
+    @Test
+    public void markApplied_suppressesTheEchoOfALocalChange() {
+        reconciler.reconcile(scene(0), recorder);
+        recorder.operations.clear();
+
+        SceneData local = scene(0, 1);
+        move(local, 0, 5);
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        local.getTransform(0, transform);
+        reconciler.markApplied(0, transform);
+        local.getTransform(1, transform);
+        reconciler.markApplied(1, transform);
+        reconciler.reconcile(local, recorder);
+
+        assertTrue(recorder.operations.isEmpty());
+    }
+
+    @Test
+    public void markApplied_objectMissingFromTheNextScene_isRemoved() {
+        reconciler.reconcile(scene(0), recorder);
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        scene(1).getTransform(1, transform);
+        reconciler.markApplied(1, transform);
+        recorder.operations.clear();
+
+        reconciler.reconcile(scene(0), recorder);
+
+        assertEquals("removed 1", recorder.toString());
+    }
+
+    @Test
+    public void reset_addsEveryObjectAgain() {
+        reconciler.reconcile(scene(0, 1), recorder);
+        recorder.operations.clear();
+
+        reconciler.reset();
+        reconciler.reconcile(scene(0, 1), recorder);
+
+        assertEquals("added 0, added 1", recorder.toString());
+    }
+
+    private static SceneData scene(int... indices) {
+        SceneData scene = new SceneData();
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        transform[3] = 1;
+        transform[4] = 1;
+        transform[5] = 1;
+        transform[9] = 1;
+        for (int index : indices) {
+            scene.setTransform(index, transform);
+        }
+        return scene;
+    }
+
+    private static void move(SceneData scene, int index, float x) {
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        scene.getTransform(index, transform);
+        transform[0] = x;
+        scene.setTransform(index, transform);
+    }
+
+    private static class Recorder implements SceneReconciler.Target {
+        final List<String> operations = new ArrayList<>();
+        float[] updatedTransform;
+
+        @Override
+        public void onNodeAdded(int index, float[] transform) {
+            operations.add("added " + index);
+        }
+
+        @Override
+        public void onNodeRemoved(int index) {
+            operations.add("removed " + index);
+        }
+
+        @Override
+        public void onNodeUpdated(int index, float[] transform) {
+            operations.add("updated " + index);
+            updatedTransform = transform.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.join(", ", operations);
+        }
+    }
+}
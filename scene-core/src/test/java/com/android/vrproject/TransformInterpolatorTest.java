@@ -0,0 +1,141 @@
+package com.android.vrproject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransformInterpolatorTest {
+
+    private static final float TOLERANCE = 1e-4f;
+    private static final long DELAY = 100;
+    private static final long MAX_EXTRAPOLATION = 50;
+
+    private final TransformInterpolator interpolator = new TransformInterpolator(4, DELAY, MAX_EXTRAPOLATION);
+    private final Recorder recorder = new Recorder();
+
+    @Test
+    public void singleSample_isShownOnceAndThenAtRest() {
+        interpolator.push(3, 0, transform(1, 0, 0, 0));
+
+        interpolator.update(DELAY, recorder);
+        interpolator.update(DELAY + 16, recorder);
+
+        assertEquals(1, recorder.indices.size());
+        assertEquals(3, (int) recorder.indices.get(0));
+        assertEquals(1, recorder.last()[0], TOLERANCE);
+        assertEquals(0, interpolator.getActiveCount());
+    }
+
+    @Test
+    public void betweenSamples_positionIsLerpedAndRotationSlerped() {
+        interpolator.push(0, 0, transform(0, 0, 0, 0));
+        interpolator.push(0, 200, transform(2, 4, 0, 90));
+
+        interpolator.update(100 + DELAY, recorder);
+
+        float[] halfway = recorder.last();
+        assertEquals(1, halfway[0], TOLERANCE);
+        assertEquals(2, halfway[1], TOLERANCE);
+        assertRotationAboutY(45, halfway);
+    }
+
+    @Test
+    public void lateSample_isExtrapolatedWithinTheLimitAndThenSettles() {
+        interpolator.push(0, 0, transform(0, 0, 0, 0));
+        interpolator.push(0, 100, transform(1, 0, 0, 0));
+
+        interpolator.update(100 + DELAY + 20, recorder);
+        assertEquals(1.2f, recorder.last()[0], TOLERANCE);
+        assertEquals(1, interpolator.getActiveCount());
+
+        interpolator.update(100 + DELAY + MAX_EXTRAPOLATION, recorder);
+        assertEquals(1, recorder.last()[0], TOLERANCE);
+        assertEquals(0, interpolator.getActiveCount());
+    }
+
+    @Test
+    public void objectAtRest_startsMovingFromWhereItIs() {
+        interpolator.push(0, 0, transform(0, 0, 0, 0));
+        interpolator.update(DELAY, recorder);
+        assertEquals(0, interpolator.getActiveCount());
+
+        // a sample long after the last one does not make the object jump
+        interpolator.push(0, 5000, transform(1, 0, 0, 0));
+        interpolator.update(5000, recorder);
+        assertEquals(0, recorder.last()[0], TOLERANCE);
+        interpolator.update(5000 + DELAY / 2, recorder);
+        assertEquals(0.5f, recorder.last()[0], TOLERANCE);
+        interpolator.update(5000 + DELAY, recorder);
+        assertEquals(1, recorder.last()[0], TOLERANCE);
+    }
+
+    @Test
+    public void olderSample_isDropped() {
+        interpolator.push(0, 100, transform(1, 0, 0, 0));
+        interpolator.push(0, 50, transform(5, 0, 0, 0));
+
+        interpolator.update(1000, recorder);
+
+        assertEquals(1, recorder.last()[0], TOLERANCE);
+    }
+
+    @Test
+    public void remove_stopsUpdates() {
+        interpolator.push(0, 0, transform(0, 0, 0, 0));
+        interpolator.push(0, 100, transform(1, 0, 0, 0));
+        interpolator.push(1, 0, transform(0, 0, 0, 0));
+        interpolator.remove(0);
+
+        interpolator.update(DELAY, recorder);
+
+        assertEquals(1, recorder.indices.size());
+        assertEquals(1, (int) recorder.indices.get(0));
+        assertFalse(interpolator.getTransform(0, new float[NodeData.TRANSFORM_SIZE]));
+    }
+
+    @Test
+    public void manyObjects_growTheHistory() {
+        for (int index = 0; index < 100; index++) {
+            interpolator.push(index, 0, transform(index, 0, 0, 0));
+            interpolator.push(index, 100, transform(index + 1, 0, 0, 0));
+        }
+
+        interpolator.update(50 + DELAY, recorder);
+
+        assertEquals(100, recorder.indices.size());
+        float[] transform = new float[NodeData.TRANSFORM_SIZE];
+        assertTrue(interpolator.getTransform(42, transform));
+        assertEquals(42.5f, transform[0], TOLERANCE);
+    }
+
+    /* transform at x, y, z with unit scale, rotated by degrees about the y axis */
+    private static float[] transform(float x, float y, float z, float degrees) {
+        double half = Math.toRadians(degrees) / 2;
+        return new float[]{x, y, z, 1, 1, 1, 0, (float) Math.sin(half), 0, (float) Math.cos(half)};
+    }
+
+    private static void assertRotationAboutY(float degrees, float[] transform) {
+        float[] expected = transform(0, 0, 0, degrees);
+        for (int i = 6; i < 10; i++) {
+            assertEquals(expected[i], transform[i], TOLERANCE);
+        }
+    }
+
+    private static class Recorder implements TransformInterpolator.Target {
+        final List<Integer> indices = new ArrayList<>();
+        final List<float[]> transforms = new ArrayList<>();
+
+        @Override
+        public void onInterpolated(int index, float[] transform) {
+            indices.add(index);
+            transforms.add(transform.clone());
+        }
+
+        float[] last() {
+            return transforms.get(transforms.size() - 1);
+        }
+    }
+}